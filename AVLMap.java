@@ -0,0 +1,264 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * AVLMap
+ *
+ * An AVL tree from keys of any type to values of any type, ordered by the keys'
+ * natural ordering or by a Comparator. Same insert/delete/search/split/join
+ * semantics (and rebalance counts) as AVLTree, without AVLTree's reserved key -1.
+ * null keys are not allowed. null values are, but then search can't tell them from a missing key- use contains.
+ *
+ */
+public class AVLMap<K, V> extends AbstractAVLMap<AVLMap.Node<K, V>>
+{
+    @SuppressWarnings("rawtypes")
+    private static final Node NIL = new Node<>(null, null);
+
+    static
+    {
+        NIL.height = -1;
+        NIL.size = 0;
+    }
+
+    private final Comparator<? super K> comparator;
+
+    //constructor for empty map ordered by the keys' natural ordering (K must implement Comparable)
+    @SuppressWarnings("unchecked")
+    public AVLMap()
+    {
+        this((Comparator<? super K>) Comparator.naturalOrder());
+    }
+
+    //constructor for empty map ordered by comparator
+    @SuppressWarnings("unchecked")
+    public AVLMap(Comparator<? super K> comparator)
+    {
+        super((Node<K, V>) NIL);
+        if (comparator == null)
+            throw new NullPointerException("comparator");
+        this.comparator = comparator;
+    }
+
+    //Returns the comparator that orders the keys
+    public Comparator<? super K> comparator()
+    {
+        return this.comparator;
+    }
+
+    /**
+     * public V search(K k)
+     *
+     * returns the value of an item with key k if it exists in the tree
+     * otherwise, returns null
+     */
+    public V search(K k)
+    {
+        return lookup(k).value;
+    }
+
+    /**
+     * public boolean contains(K k)
+     *
+     * returns true if and only if k is in the tree
+     */
+    public boolean contains(K k)
+    {
+        return lookup(k) != this.nil;
+    }
+
+    /**
+     * public V get(K k, V defaultValue)
+     *
+     * returns the value of key k if it exists in the tree, otherwise defaultValue
+     */
+    public V get(K k, V defaultValue)
+    {
+        Node<K, V> node = lookup(k);
+        return (node == this.nil) ? defaultValue : node.value;
+    }
+
+    //iterative search for the node with key k, or the sentinel if k is not in the tree
+    private Node<K, V> lookup(K k)
+    {
+        if (k == null)
+            throw new NullPointerException("key");
+        Node<K, V> node = this.root;
+        while (node != this.nil)
+        {
+            int cmp = this.comparator.compare(k, node.key);
+            if (cmp == 0)
+                return node;
+            node = (cmp < 0) ? node.left : node.right;
+        }
+        return this.nil;
+    }
+
+    /**
+     * public int insert(K k, V v)
+     *
+     * inserts an item with key k and value v to the tree.
+     * returns the number of rebalancing operations (counted as in AVLTree.insert),
+     * or -1 if an item with key k already exists in the tree.
+     */
+    public int insert(K k, V v)
+    {
+        if (k == null)
+            throw new NullPointerException("key");
+
+        //finding the node which the new node should be under
+        Node<K, V> insertAfter = this.nil;
+        Node<K, V> node = this.root;
+        int cmp = 0;
+        while (node != this.nil)
+        {
+            cmp = this.comparator.compare(k, node.key);
+            if (cmp == 0) //already in tree
+                return -1;
+            insertAfter = node;
+            node = (cmp < 0) ? node.left : node.right;
+        }
+        return insertLeaf(insertAfter, new Node<>(k, v), cmp < 0);
+    }
+
+    /**
+     * public int delete(K k)
+     *
+     * deletes an item with key k from the tree if it is there.
+     * returns the number of rebalancing operations (counted as in AVLTree.delete),
+     * or -1 if an item with key k was not found in the tree.
+     */
+    public int delete(K k)
+    {
+        Node<K, V> node = lookup(k);
+        if (node == this.nil)
+            return -1;
+        return deleteNode(node);
+    }
+
+    /**
+     * public V min()
+     *
+     * Returns the value of the item with the smallest key in the tree,
+     * or null if the tree is empty.
+     */
+    public V min()
+    {
+        return this.min.value;
+    }
+
+    /**
+     * public V max()
+     *
+     * Returns the value of the item with the largest key in the tree,
+     * or null if the tree is empty.
+     */
+    public V max()
+    {
+        return this.max.value;
+    }
+
+    //Returns the smallest key in the tree, or null if the tree is empty
+    public K minKey()
+    {
+        return this.min.key;
+    }
+
+    //Returns the largest key in the tree, or null if the tree is empty
+    public K maxKey()
+    {
+        return this.max.key;
+    }
+
+    /**
+     * public List<K> keys()
+     *
+     * Returns a list of all keys in the tree, sorted.
+     */
+    public List<K> keys()
+    {
+        List<K> keys = new ArrayList<>(this.size());
+        for (Node<K, V> node = this.min; node != this.nil; node = nextInOrder(node))
+            keys.add(node.key);
+        return keys;
+    }
+
+    /**
+     * public List<V> values()
+     *
+     * Returns a list of all values in the tree, sorted by their keys.
+     */
+    public List<V> values()
+    {
+        List<V> values = new ArrayList<>(this.size());
+        for (Node<K, V> node = this.min; node != this.nil; node = nextInOrder(node))
+            values.add(node.value);
+        return values;
+    }
+
+    /**
+     * public AVLMap<K, V>[] split(K x)
+     *
+     * splits the tree into 2 trees according to the key x.
+     * Returns an array [t1, t2] with two trees (with this tree's comparator). keys(t1) < x < keys(t2).
+     * x itself is dropped and this tree is left empty.
+     * precondition: contains(x)
+     */
+    public AVLMap<K, V>[] split(K x)
+    {
+        Node<K, V> node = lookup(x);
+        if (node == this.nil)
+            throw new NoSuchElementException("split key " + x + " is not in the tree");
+        AVLMap<K, V> small = new AVLMap<>(this.comparator);
+        AVLMap<K, V> big = new AVLMap<>(this.comparator);
+        splitAt(node, small, big);
+        return pair(small, big);
+    }
+
+    //the array [small, big]- created with wildcards, since there is no new AVLMap<K, V>[]. it only holds small and big
+    @SuppressWarnings("unchecked")
+    private static <K, V> AVLMap<K, V>[] pair(AVLMap<K, V> small, AVLMap<K, V> big)
+    {
+        return (AVLMap<K, V>[]) new AVLMap<?, ?>[] {small, big};
+    }
+
+    /**
+     * public int join(K x, V v, AVLMap<K, V> t)
+     *
+     * joins t and an item with key x and value v with the tree.
+     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+     * precondition: keys(x,t) < keys() or keys(x,t) > keys(), both trees ordered by the same comparator.
+     * postcondition: t is empty
+     */
+    public int join(K x, V v, AVLMap<K, V> t)
+    {
+        if (x == null)
+            throw new NullPointerException("key");
+        boolean thisIsBigger;
+        if (!this.empty())
+            thisIsBigger = this.comparator.compare(x, this.root.key) < 0;
+        else
+            thisIsBigger = !t.empty() && this.comparator.compare(x, t.root.key) > 0;
+        return joinAt(new Node<>(x, v), t, thisIsBigger);
+    }
+
+    /**
+     * Node
+     *
+     * A node of an AVLMap: a key, its value and the links of AbstractAVLMap.Node.
+     */
+    static final class Node<K, V> extends AbstractAVLMap.Node<Node<K, V>>
+    {
+        final K key;
+        V value;
+
+        Node(K key, V value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
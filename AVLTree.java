@@ -1,7 +1,18 @@
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  *
@@ -17,21 +28,19 @@ import java.util.List;
  *
  */
 
-public class AVLTree {
+public class AVLTree implements Iterable<AVLTree.IAVLNode> {
     IAVLNode root;
     IAVLNode min, max;
+    int modCount; //number of structural modifications- lets iterators detect changes under them
+    AVLTreeMetrics metrics; //null unless enableMetrics()- then every operation is recorded in it
 
-    //all valid/ invalid cases of node's rank differences.
-    final int[] valid11 = {1,1};
-    final int[] valid21 = {2,1};
-    final int[] valid12 = {1,2};
-    final int[] invalid01 = {0,1};
-    final int[] invalid10 = {1,0};
-    final int[] invalid02 = {0,2};
-    final int[] invalid20 = {2,0};
-    final int[] invalid22 = {2,2};
-    final int[] invalid31 = {3,1};
-    final int[] invalid13 = {1,3};
+    //what the running insert/ delete did, read by AVLTreeMetrics. plain fields, counted with metrics on or off
+    //(opDepth only with metrics on)
+    int opPromotions, opDemotions, opRotations, opDoubleRotations, opPathLength, opDepth;
+    SubtreeAggregate aggregate; //null unless the tree was made with one- then every node is an AggregateNode
+    Balance balance = Balance.AVL; //the rebalancing rule of inserts and deletes- see setBalance
+    boolean fingerSearch; //searches start from finger- see setFingerSearch
+    AVLNode finger; //the node the last finger search ended on (null- start from the root)
 
 
     //constructor for tree with first node
@@ -50,6 +59,20 @@ public class AVLTree {
         this.max = null;
     }
 
+    //constructor for an empty tree that keeps aggregate for every subtree- see aggregate(lo, hi)
+    public AVLTree(SubtreeAggregate aggregate)
+    {
+        this();
+        this.aggregate = aggregate;
+    }
+
+    //constructor for a tree with all the given items. keys must be sorted in ascending order, built in O(n)
+    public AVLTree(int[] keys, String[] infos)
+    {
+        this();
+        putAllSorted(keys, infos);
+    }
+
     /**
      * public boolean empty()
      *
@@ -68,22 +91,221 @@ public class AVLTree {
      */
     public String search(int k)
     {
-        if (this.empty())
+        AVLNode node = lookup(k);
+        if (node == null)
             return null;
-        return searchRec(this.root, k);
+        return node.info;
+    }
+
+    /**
+     * public boolean contains(int k)
+     *
+     * returns true if and only if an item with key k exists in the tree
+     */
+    public boolean contains(int k)
+    {
+        return lookup(k) != null;
+    }
+
+    /**
+     * public String get(int k, String defaultValue)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns defaultValue
+     */
+    public String get(int k, String defaultValue)
+    {
+        AVLNode node = lookup(k);
+        if (node == null)
+            return defaultValue;
+        return node.info;
     }
 
-    //recursive func for searching node- as we learned in class
-    private String searchRec(IAVLNode node, int k)
+    //iterative search for the node with key k, or null if k is not in the tree.
+    //reads AVLNode's fields directly- no recursion and no calls through IAVLNode on the way down
+    private AVLNode lookup(int k)
     {
-        if (!node.isRealNode())
+        if (this.metrics != null)
+            return recordedLookup(k, this.metrics);
+        if (this.empty())
             return null;
-        if (node.getKey() == k)
-            return node.getValue();
-        if (k < node.getKey())
-            return searchRec(node.getLeft(), k);
-        else
-            return searchRec(node.getRight(), k);
+        if (this.fingerSearch)
+        {
+            AVLNode node = fingerPosition(k);
+            return (node.key == k) ? node : null;
+        }
+        AVLNode node = (AVLNode) this.root;
+        while (node != AVLNode.virtual)
+        {
+            if (k == node.key)
+                return node;
+            if (k < node.key)
+                node = node.left;
+            else
+                node = node.right;
+        }
+        return null;
+    }
+
+    //lookup that counts the nodes on the way down and records the search in metrics
+    private AVLNode recordedLookup(int k, AVLTreeMetrics metrics)
+    {
+        long start = System.nanoTime();
+        AVLNode node = this.empty() ? AVLNode.virtual : (AVLNode) this.root;
+        int depth = 0;
+        while (node != AVLNode.virtual && node.key != k)
+        {
+            depth++;
+            node = (k < node.key) ? node.left : node.right;
+        }
+        boolean found = node != AVLNode.virtual;
+        if (found)
+            depth++;
+        metrics.recordSearch(k, found, depth, System.nanoTime() - start);
+        return found ? node : null;
+    }
+
+    //returns the number of nodes a search for k compares it with- the same path insert/ delete go down.
+    //a walk of its own, so that the searches without metrics count nothing
+    int searchDepth(int k)
+    {
+        AVLNode node = this.empty() ? AVLNode.virtual : (AVLNode) this.root;
+        int depth = 0;
+        while (node != AVLNode.virtual)
+        {
+            depth++;
+            if (k == node.key)
+                break;
+            node = (k < node.key) ? node.left : node.right;
+        }
+        return depth;
+    }
+
+    /**
+     * public AVLTreeMetrics enableMetrics()
+     *
+     * starts recording every operation of the tree, and returns the metrics it is recorded in
+     * (the same ones if they are on already). the trees split makes start without metrics.
+     */
+    public AVLTreeMetrics enableMetrics()
+    {
+        if (this.metrics == null)
+            this.metrics = new AVLTreeMetrics(this);
+        return this.metrics;
+    }
+
+    /**
+     * public void disableMetrics()
+     *
+     * stops recording operations. the metrics keep what they recorded.
+     */
+    public void disableMetrics()
+    {
+        this.metrics = null;
+    }
+
+    //returns the tree's metrics, or null if they are off
+    public AVLTreeMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
+    /**
+     * public enum Balance
+     *
+     * The rebalancing rule of a tree, in the rank-difference model (the rank is the height field).
+     * AVL- every node is 1,1/ 1,2/ 2,1, so the rank is the height.
+     * WAVL- weak AVL: every rank difference is 1 or 2, so 2,2 nodes are allowed- but leaves are 1,1.
+     * An insert rebalances exactly as in AVL (a tree that only had inserts is an AVL tree), and a delete
+     * does at most 2 rotations, with O(1) amortized promotions/ demotions, where AVL can rotate all the way
+     * up. The rank stays under 2 log2(n), against 1.44 log2(n) for AVL.
+     */
+    public enum Balance { AVL, WAVL }
+
+    /**
+     * public void setBalance(Balance balance)
+     *
+     * switches the tree's rebalancing rule. An AVL tree is already a valid WAVL tree. A WAVL tree may have
+     * 2,2 nodes, so switching it to AVL rebuilds it perfectly balanced- O(n).
+     * the trees split makes keep the rule. A WAVL tree can't be joined into an AVL tree.
+     */
+    public void setBalance(Balance balance)
+    {
+        if (balance == this.balance)
+            return;
+        if (balance == Balance.AVL && !this.empty())
+        {
+            AVLNode[] nodes = new AVLNode[this.size()];
+            int count = 0;
+            for (AVLNode node = firstNode(); node != null; node = nextInOrder(node))
+                nodes[count++] = node;
+            buildFrom(nodes, count);
+        }
+        this.balance = balance;
+    }
+
+    //returns the tree's rebalancing rule
+    public Balance getBalance()
+    {
+        return this.balance;
+    }
+
+    /**
+     * public void setFingerSearch(boolean on)
+     *
+     * with finger search on, search/ contains/ get, insert and delete start from the node the previous one ended on
+     * (the finger) instead of the root: they climb through parents to the lowest ancestor whose subtree's key range
+     * has k, and go down from there. For keys near the previous one this is O(log d) for rank distance d- unless
+     * a boundary high in the tree lies between them, when it is the O(log n) of a search from the root.
+     * Random keys pay for the climb on top of the descent, so it is off by default. Searches write the finger,
+     * so a tree read by several threads at once should keep it off.
+     * Keys beyond max/ min don't need it- insert puts them under max/ min in O(1), and delete finds max/ min
+     * in O(1), in both modes. the trees split makes keep the mode.
+     */
+    public void setFingerSearch(boolean on)
+    {
+        this.fingerSearch = on;
+        this.finger = null;
+    }
+
+    //returns true if finger search is on
+    public boolean isFingerSearch()
+    {
+        return this.fingerSearch;
+    }
+
+    //returns the node with key k, or the node which has to be k's parent, searching from the finger- and moves the finger there.
+    //precondition: the tree is not empty
+    private AVLNode fingerPosition(int k)
+    {
+        AVLNode node = this.finger;
+        if (node == null)
+            node = (AVLNode) this.root;
+        else if (k > node.key) //climbing while the subtree's upper bound (the nearest ancestor node is left of) is not above k
+        {
+            while (node.parent != null && node.parent.key <= k)
+                node = node.parent;
+        }
+        else if (k < node.key) //the same for the lower bound
+        {
+            while (node.parent != null && node.parent.key >= k)
+                node = node.parent;
+        }
+        node = (AVLNode) TreePosition(node, k);
+        this.finger = node;
+        return node;
+    }
+
+    //returns the node with key k, or the node which has to be k's parent- k beyond max/ min goes under max/ min in O(1)
+    private AVLNode insertPosition(int k)
+    {
+        if (k > this.max.getKey()) //max has no right child
+            return (AVLNode) this.max;
+        if (k < this.min.getKey()) //min has no left child
+            return (AVLNode) this.min;
+        if (this.fingerSearch)
+            return fingerPosition(k);
+        return (AVLNode) TreePosition(this.root, k);
     }
 
 
@@ -97,21 +319,45 @@ public class AVLTree {
      * returns -1 if an item with key k already exists in the tree.
      */
     public int insert(int k, String i)
+    {
+        return insert(k, i, (this.aggregate == null) ? 0 : this.aggregate.value(k, i));
+    }
+
+    //insert with the item's payload for the subtree aggregate given (a tree without an aggregate ignores it)-
+    //for aggregates whose payload isn't in the info, like IntervalAVLTree's interval ends
+    int insert(int k, String i, long value)
+    {
+        AVLTreeMetrics metrics = this.metrics;
+        if (metrics == null)
+            return insertItem(k, i, value);
+        long allocated = metrics.begin(k);
+        long start = System.nanoTime();
+        int result = insertItem(k, i, value);
+        metrics.recordUpdate(AVLTreeMetrics.Operation.INSERT, k, result, System.nanoTime() - start, allocated);
+        return result;
+    }
+
+    private int insertItem(int k, String i, long value)
     {
         //inserting for an empty tree- no need to rebalance, no rebalancing operations
         if (this.empty()) {
-            this.root = new AVLNode(k, i, AVLNode.virtual, AVLNode.virtual, null);
+            this.modCount++;
+            this.root = newNode(k, i, this.aggregate, value);
             this.min = this.root;
             this.max = this.root;
             return 0;
         }
         else {
-            IAVLNode insertAfter = TreePosition(this.root, k); //node which new node should be after
+            IAVLNode insertAfter = insertPosition(k); //node which new node should be after
             if (insertAfter.getKey() == k) // if node already in tree
                 return -1;
+            this.modCount++;
 
             //creating a node to insert the tree
-            IAVLNode newNode = new AVLNode(k, i, AVLNode.virtual, AVLNode.virtual, insertAfter);
+            IAVLNode newNode = newNode(k, i, this.aggregate, value);
+            newNode.setParent(insertAfter);
+            if (this.fingerSearch)
+                this.finger = (AVLNode) newNode;
 
             //newNode needs to be right child
             if (k > insertAfter.getKey()) {
@@ -130,6 +376,8 @@ public class AVLTree {
                 if (k < this.min.getKey())
                     this.min = newNode;
             }
+            if (this.balance == Balance.WAVL)
+                return rebalanceWeakInsert((AVLNode) insertAfter);
             return rebalance(insertAfter);
         }
     }
@@ -141,15 +389,22 @@ public class AVLTree {
 
         //initializing counter to count rebalancing operations
         int rebalanceCounter = 0;
+        int walked = 0; //nodes walked up so far, for opPathLength
 
         //setting node's variables
         node.calcAndSetCurrentDiff();
         node.calcAndSetSize();
 
-        while ( node != null && !isValidDiff(node))
+        //walking all the way up to the root- a valid node may still have an invalid parent (after join/ deleteBinary)
+        //and all sizes on the path have to be maintained anyway
+        //valid nodes (1-1, 1-2, 2-1) match none of the cases below
+        while (node != null)
         {
+            walked++;
+            int counted = rebalanceCounter;
+
             //case 0-1, promote
-            if (Arrays.equals(node.getDiff(), invalid01))
+            if (hasDiff(node, 0, 1))
             {
                 promote(node);
 
@@ -159,7 +414,7 @@ public class AVLTree {
                 rebalanceCounter++; //1 promote
             }
             //case 1-0, promote
-            else if (Arrays.equals(node.getDiff(), invalid10))
+            else if (hasDiff(node, 1, 0))
             {
                 promote(node);
 
@@ -170,7 +425,7 @@ public class AVLTree {
             }
             //single rotation
             //case 0-2 with left 1-2
-            else if (Arrays.equals(node.getDiff(), invalid02) && Arrays.equals(node.getLeft().getDiff(), valid12))
+            else if (hasDiff(node, 0, 2) && hasDiff(node.getLeft(), 1, 2))
             {
                 rightRotation(node);
                 demote(node);
@@ -186,7 +441,7 @@ public class AVLTree {
             }
 
             //case 2-0 with right 2-1
-            else if (Arrays.equals(node.getDiff(), invalid20) && Arrays.equals(node.getRight().getDiff(), valid21))
+            else if (hasDiff(node, 2, 0) && hasDiff(node.getRight(), 2, 1))
             {
                 leftRotation(node);
                 demote(node);
@@ -203,13 +458,14 @@ public class AVLTree {
 
             //double rotation
             //case 0-2 with left child 2-1
-            else if (Arrays.equals(node.getDiff(), invalid02) && Arrays.equals(node.getLeft().getDiff(), valid21))
+            else if (hasDiff(node, 0, 2) && hasDiff(node.getLeft(), 2, 1))
             {
                 leftRotation(node.getLeft());
                 rightRotation(node);
                 demote(node);
-                node.getParent().getLeft().setHeight(node.getParent().getLeft().getHeight()-1);
-                node.getParent().setHeight(node.getParent().getHeight()+1);
+                demote(node.getParent().getLeft());
+                promote(node.getParent());
+                this.opDoubleRotations++;
 
                 node.calcAndSetCurrentDiff();
                 node.calcAndSetSize();
@@ -225,13 +481,14 @@ public class AVLTree {
             }
 
             //case 2-0 with right child 1-2
-            else if (Arrays.equals(node.getDiff(), invalid20) && Arrays.equals(node.getRight().getDiff(), valid12))
+            else if (hasDiff(node, 2, 0) && hasDiff(node.getRight(), 1, 2))
             {
                 rightRotation(node.getRight());
                 leftRotation(node);
-                demote(node); 
-                node.getParent().getRight().setHeight(node.getParent().getRight().getHeight()-1); 
-                node.getParent().setHeight(node.getParent().getHeight()+1); 
+                demote(node);
+                demote(node.getParent().getRight());
+                promote(node.getParent());
+                this.opDoubleRotations++;
 
                 node.calcAndSetCurrentDiff();
                 node.calcAndSetSize();
@@ -248,7 +505,7 @@ public class AVLTree {
 
             //demote
             //case 2-2
-            else if (Arrays.equals(node.getDiff(), invalid22))
+            else if (hasDiff(node, 2, 2))
             {
                 demote(node);
 
@@ -260,7 +517,7 @@ public class AVLTree {
 
             //single rotation
             //case 3-1 with right child 1-1
-            else if (Arrays.equals(node.getDiff(), invalid31) && Arrays.equals((node.getRight().getDiff()), valid11))
+            else if (hasDiff(node, 3, 1) && hasDiff(node.getRight(), 1, 1))
             {
                 leftRotation(node);
                 demote(node);
@@ -276,7 +533,7 @@ public class AVLTree {
             }
 
             //case 1-3 with left child 1-1
-            else if (Arrays.equals(node.getDiff(), invalid13) && Arrays.equals((node.getLeft().getDiff()), valid11))
+            else if (hasDiff(node, 1, 3) && hasDiff(node.getLeft(), 1, 1))
             {
                 rightRotation(node);
                 demote(node);
@@ -292,7 +549,7 @@ public class AVLTree {
             }
 
             //case 3-1 with child 2-1
-            else if (Arrays.equals(node.getDiff(), invalid31) && Arrays.equals((node.getRight().getDiff()), valid21))
+            else if (hasDiff(node, 3, 1) && hasDiff(node.getRight(), 2, 1))
             {
                 leftRotation(node);
                 demote(node);
@@ -308,7 +565,7 @@ public class AVLTree {
             }
 
             //case 1-3 with left child 1-2
-            else if (Arrays.equals(node.getDiff(), invalid13) && Arrays.equals((node.getLeft().getDiff()), valid12))
+            else if (hasDiff(node, 1, 3) && hasDiff(node.getLeft(), 1, 2))
             {
                 rightRotation(node);
                 demote(node);
@@ -325,7 +582,7 @@ public class AVLTree {
 
             //double rotations
             // case 3-1 with child 12
-            else if (Arrays.equals(node.getDiff(), invalid31) && Arrays.equals((node.getRight().getDiff()), valid12))
+            else if (hasDiff(node, 3, 1) && hasDiff(node.getRight(), 1, 2))
             {
                 rightRotation(node.getRight());
                 leftRotation(node);
@@ -333,6 +590,7 @@ public class AVLTree {
                 demote(node);
                 demote(node.getParent().getRight());
                 promote(node.getParent());
+                this.opDoubleRotations++;
 
                 node.calcAndSetCurrentDiff();
                 node.calcAndSetSize();
@@ -347,7 +605,7 @@ public class AVLTree {
             }
 
             // case 1-3 with child 2-1
-            else if (Arrays.equals(node.getDiff(), invalid13) && Arrays.equals((node.getLeft().getDiff()), valid21))
+            else if (hasDiff(node, 1, 3) && hasDiff(node.getLeft(), 2, 1))
             {
                 leftRotation(node.getLeft());
                 rightRotation(node);
@@ -355,6 +613,7 @@ public class AVLTree {
                 demote(node);
                 demote(node.getParent().getLeft());
                 promote(node.getParent());
+                this.opDoubleRotations++;
 
                 node.calcAndSetCurrentDiff();
                 node.calcAndSetSize();
@@ -369,7 +628,7 @@ public class AVLTree {
             }
 
             //case 0-2 with left child 1-1
-            else if (Arrays.equals(node.getDiff(), invalid02) && Arrays.equals(node.getLeft().getDiff(), valid11))
+            else if (hasDiff(node, 0, 2) && hasDiff(node.getLeft(), 1, 1))
             {
                 rightRotation(node);
                 promote(node.getParent());
@@ -384,7 +643,7 @@ public class AVLTree {
             }
 
             //case 2-0 with right child 1-1
-            else if (Arrays.equals(node.getDiff(), invalid20) && Arrays.equals(node.getRight().getDiff(), valid11))
+            else if (hasDiff(node, 2, 0) && hasDiff(node.getRight(), 1, 1))
             {
                 leftRotation(node);
                 promote(node.getParent());
@@ -398,35 +657,201 @@ public class AVLTree {
                 rebalanceCounter += 2; //1 promote, 1 rotation
             }
 
+            if (rebalanceCounter != counted)
+                this.opPathLength = walked;
 
             node.calcAndSetSize();
 
             node = node.getParent();
 
-            if (node == null) //rebalanced until root- no need to maintain size
-                return rebalanceCounter;
-            else {
+            if (node != null)
+                node.calcAndSetCurrentDiff();
+        }
+        return rebalanceCounter;
+    }
+
+    //rebalancing after a delete, by the tree's rule. node- where the first rank difference may have changed
+    private int rebalanceAfterDelete(IAVLNode node)
+    {
+        if (this.balance == Balance.WAVL)
+            return rebalanceWeakDelete((AVLNode) node);
+        return rebalance(node);
+    }
+
+    //WAVL rebalancing after an insert under node- the AVL insert cases: a promotion for every 0,1 node going up,
+    //then at most one (double) rotation on a 0,2 node. stops at the first node without a 0 difference
+    //(a 2,2 node above stays as it is). sizes are maintained up to the root. counted as in rebalance
+    private int rebalanceWeakInsert(AVLNode node)
+    {
+        int rebalanceCounter = 0;
+        int walked = 0;
+        while (node != null)
+        {
+            walked++;
+            node.calcAndSetCurrentDiff();
+            if (node.leftDiff != 0 && node.rightDiff != 0) //nothing to fix from here up
+                break;
+            boolean fromLeft = node.leftDiff == 0;
+            int siblingDiff = fromLeft ? node.rightDiff : node.leftDiff;
+            this.opPathLength = walked;
+
+            //case 0-1/ 1-0, promote
+            if (siblingDiff == 1)
+            {
+                promote(node);
+                node.calcAndSetCurrentDiff();
+                node.calcAndSetSize();
+                rebalanceCounter++;
+                node = node.parent;
+                continue;
+            }
+
+            //case 0-2/ 2-0. child was promoted on the way up, so it is 1,2 or 2,1
+            AVLNode child = fromLeft ? node.left : node.right;
+            child.calcAndSetCurrentDiff();
+            AVLNode top;
+            if ((fromLeft ? child.rightDiff : child.leftDiff) == 2) //inner difference 2- single rotation, 1 demote
+            {
+                rotateTowards(node, fromLeft);
+                demote(node);
+                rebalanceCounter += 2;
+                top = child;
+            }
+            else //inner child is the higher one- double rotation, 2 demote 1 promote
+            {
+                AVLNode inner = fromLeft ? child.right : child.left;
+                rotateTowards(child, !fromLeft);
+                rotateTowards(node, fromLeft);
+                demote(node);
+                demote(child);
+                promote(inner);
+                this.opDoubleRotations++;
+                rebalanceCounter += 5;
+                updateRotated(child);
+                top = inner;
+            }
+            updateRotated(node);
+            updateRotated(top);
+            node = top.parent;
+            break;
+        }
+        maintainSizeAfterRebalance(node);
+        return rebalanceCounter;
+    }
+
+    //WAVL rebalancing after a delete, from node- the parent of the node that was removed (or moved).
+    //a 2,2 leaf is demoted. a node with a 3 difference is demoted if its other child is a 2-child, demoted with that
+    //child if it is a 2,2 1-child- and both continue up. otherwise one single or double rotation ends it.
+    //sizes are maintained up to the root. returns the number of rotations (a double counts 2) and rank changes
+    private int rebalanceWeakDelete(AVLNode node)
+    {
+        int rebalanceCounter = 0;
+        int walked = 0;
+        while (node != null)
+        {
+            walked++;
+            node.calcAndSetCurrentDiff();
+            boolean leftIs3 = node.leftDiff == 3;
+            boolean leaf = node.left == AVLNode.virtual && node.right == AVLNode.virtual;
+            if (!(leaf && node.leftDiff == 2) && !leftIs3 && node.rightDiff != 3) //nothing to fix from here up
+                break;
+            this.opPathLength = walked;
+
+            //a 2,2 leaf, or a 3 difference with a 2-child sibling- demote
+            int siblingDiff = leftIs3 ? node.rightDiff : node.leftDiff;
+            if (leaf || siblingDiff == 2)
+            {
+                demote(node);
+                node.calcAndSetCurrentDiff();
+                node.calcAndSetSize();
+                rebalanceCounter++;
+                node = node.parent;
+                continue;
+            }
+
+            //the sibling is a 1-child
+            AVLNode sibling = leftIs3 ? node.right : node.left;
+            sibling.calcAndSetCurrentDiff();
+            if (sibling.leftDiff == 2 && sibling.rightDiff == 2) //2,2 sibling- demote both
+            {
+                demote(node);
+                demote(sibling);
+                sibling.calcAndSetCurrentDiff();
                 node.calcAndSetCurrentDiff();
+                node.calcAndSetSize();
+                rebalanceCounter += 2;
+                node = node.parent;
+                continue;
             }
 
+            AVLNode top;
+            if ((leftIs3 ? sibling.rightDiff : sibling.leftDiff) == 1) //outer child is a 1-child- single rotation
+            {
+                rotateTowards(node, !leftIs3);
+                promote(sibling);
+                demote(node);
+                rebalanceCounter += 3;
+                if (node.left == AVLNode.virtual && node.right == AVLNode.virtual) //node would be a 2,2 leaf
+                {
+                    demote(node);
+                    rebalanceCounter++;
+                }
+                top = sibling;
+            }
+            else //inner child is the 1-child- double rotation
+            {
+                AVLNode inner = leftIs3 ? sibling.left : sibling.right;
+                rotateTowards(sibling, leftIs3);
+                rotateTowards(node, !leftIs3);
+                promote(inner);
+                promote(inner);
+                demote(sibling);
+                demote(node);
+                demote(node);
+                this.opDoubleRotations++;
+                rebalanceCounter += 7;
+                updateRotated(sibling);
+                top = inner;
+            }
+            updateRotated(node);
+            updateRotated(top);
+            node = top.parent;
+            break;
         }
         maintainSizeAfterRebalance(node);
         return rebalanceCounter;
     }
 
+    //rotating node with its left child (a right rotation) if left, else with its right child
+    private void rotateTowards(AVLNode node, boolean left)
+    {
+        if (left)
+            rightRotation(node);
+        else
+            leftRotation(node);
+    }
+
+    //setting the diffs and size of a node that a rotation moved (its children are already up to date)
+    private static void updateRotated(AVLNode node)
+    {
+        node.calcAndSetCurrentDiff();
+        node.calcAndSetSize();
+    }
+
     //searcing node with key k. returns the node with the key or the node which has to be k's parent (if k is not in tree)
     public IAVLNode TreePosition(IAVLNode x, int k) //x = root at first
     {
-        IAVLNode y = null;
-        while (x.isRealNode())
+        AVLNode node = (AVLNode) x;
+        AVLNode y = null;
+        while (node != AVLNode.virtual)
         {
-            y = x;
-            if (k == x.getKey())
-                return x;
-            else if (k < x.getKey())
-                x = x.getLeft();
+            y = node;
+            if (k == node.key)
+                return node;
+            else if (k < node.key)
+                node = node.left;
             else
-                x = x.getRight();
+                node = node.right;
         }
         return y;
     }
@@ -434,26 +859,34 @@ public class AVLTree {
     //promoting a node- setting it's height up by one
     public void promote (IAVLNode node)
     {
+        this.opPromotions++;
         node.setHeight(node.getHeight()+1);
     }
 
     //demoting a node- setting its height down by one
     public void demote (IAVLNode node)
     {
+        this.opDemotions++;
         node.setHeight(node.getHeight()-1);
     }
 
-    //returns true if node's rank differences are valid
+    //returns true if node's rank differences are valid (1-1, 1-2 or 2-1)
     public boolean isValidDiff(IAVLNode node)
     {
-        if (!node.getDiff().equals(valid11) || !node.getDiff().equals(valid21) || !node.getDiff().equals(valid12))
-            return false;
-        return true;
+        return hasDiff(node, 1, 1) || hasDiff(node, 1, 2) || hasDiff(node, 2, 1);
+    }
+
+    //returns true if node's rank differences are left-right. reads the node's fields, no int[] is created
+    private static boolean hasDiff(IAVLNode node, int left, int right)
+    {
+        AVLNode n = (AVLNode) node;
+        return n.leftDiff == left && n.rightDiff == right;
     }
 
     //making right rotation on node
     public void rightRotation(IAVLNode node)
     {
+        this.opRotations++;
         IAVLNode originalNodeParent = node.getParent();
         IAVLNode originalLeftChild = node.getLeft();
         IAVLNode originalLeftChildRightChild = node.getLeft().getRight();
@@ -480,6 +913,7 @@ public class AVLTree {
     //making left rotation on node
     public void leftRotation(IAVLNode node)
     {
+        this.opRotations++;
         IAVLNode originalNodeParent = node.getParent();
         IAVLNode originalRightChild = node.getRight();
         IAVLNode originalRightChildLeftChild = node.getRight().getLeft();
@@ -516,37 +950,53 @@ public class AVLTree {
      * demotion/rotation - counted as one rebalnce operation, double-rotation is counted as 2.
      * returns -1 if an item with key k was not found in the tree.
      */
-    public int delete(int k) //deletes the node and send to rebalance
+    public int delete(int k)
+    {
+        AVLTreeMetrics metrics = this.metrics;
+        if (metrics == null)
+            return deleteItem(k);
+        long allocated = metrics.begin(k);
+        long start = System.nanoTime();
+        int result = deleteItem(k);
+        metrics.recordUpdate(AVLTreeMetrics.Operation.DELETE, k, result, System.nanoTime() - start, allocated);
+        return result;
+    }
+
+    private int deleteItem(int k) //deletes the node and send to rebalance
     {
         int rebalanceCounter = -1;
         if (this.empty())
             return rebalanceCounter;
-        IAVLNode nodeToDelete = TreePosition(this.root, k); //return the node if if exists, or its predecessor
+        IAVLNode nodeToDelete; //the node if it exists, or its predecessor
+        if (k == this.min.getKey())
+            nodeToDelete = this.min;
+        else if (k == this.max.getKey())
+            nodeToDelete = this.max;
+        else if (this.fingerSearch)
+            nodeToDelete = fingerPosition(k);
+        else
+            nodeToDelete = TreePosition(this.root, k);
         if (nodeToDelete.getKey() != k) //k is not in the tree
             return rebalanceCounter;
+        this.modCount++;
+
+        //if k is min/ max- its neighbour becomes the new min/ max (null if k is the only key)
+        IAVLNode newMin = (nodeToDelete == this.min) ? nextInOrder((AVLNode) nodeToDelete) : this.min;
+        IAVLNode newMax = (nodeToDelete == this.max) ? prevInOrder((AVLNode) nodeToDelete) : this.max;
 
         //will rebalance after deletion- deleteLeaf/ deleteUnary/ deleteBinary
         IAVLNode parent = nodeToDelete.getParent();
+        if (this.fingerSearch)
+            this.finger = (AVLNode) parent; //stays in the tree (null for the root- the next search starts from the root)
         if (!nodeToDelete.getLeft().isRealNode() && !nodeToDelete.getRight().isRealNode()) // if nodeToDelete is leaf
-            rebalanceCounter = rebalance(deleteLeaf(nodeToDelete, parent));
+            rebalanceCounter = rebalanceAfterDelete(deleteLeaf(nodeToDelete, parent));
         else if (!nodeToDelete.getLeft().isRealNode() || !nodeToDelete.getRight().isRealNode()) //if nodeToDelete is unary
-            rebalanceCounter = rebalance(deleteUnary(nodeToDelete, parent));
+            rebalanceCounter = rebalanceAfterDelete(deleteUnary(nodeToDelete, parent));
         else //if nodeToDelete is binary
-            rebalanceCounter = rebalance(deleteBinary(nodeToDelete, parent));
-
-        if (empty()) //the only node in tree deleted
-        {
-            this.min = null;
-            this.max = null;
-            return rebalanceCounter;
-        }
-
-        //if k was min/ max- finding the new min/max
-        if (k == this.max.getKey())
-            this.max = findMax(this.root);
-        else if (k == this.min.getKey())
-            this.min = findMin(this.root);
+            rebalanceCounter = rebalanceAfterDelete(deleteBinary(nodeToDelete, parent));
 
+        this.min = newMin;
+        this.max = newMax;
         return rebalanceCounter;
 
     }
@@ -622,57 +1072,52 @@ public class AVLTree {
         }
     }
 
-    //deletes nodeToDelete and returns its parent
+    //deletes nodeToDelete by moving its successor (the leftmost node of its right subtree) into its place.
+    //the successor node itself is relinked- nothing is copied or allocated. returns the node to rebalance from
     public IAVLNode deleteBinary(IAVLNode nodeToDelete, IAVLNode parent)
     {
-        IAVLNode suc = successor(nodeToDelete); //finding the successor for nodeToDelete
+        AVLNode node = (AVLNode) nodeToDelete;
+        AVLNode suc = nextInOrder(node); //has no left child for sure
+        AVLNode rebalanceFrom;
 
-        boolean wasNodeToDeleteChild = false;
-        IAVLNode nodeOfSuc;
-        //new node for suc - to replace with nodeToDelete
-        if (suc.getParent().getKey() == nodeToDelete.getKey())  //nodeToDelete's successor is its child- suc is right child for sure
+        if (suc.parent == node) //nodeToDelete's successor is its child- suc is right child for sure, and keeps its right subtree
+            rebalanceFrom = suc;
+        else //nodeToDelete's successor is not its child
         {
-            nodeOfSuc = new AVLNode(suc.getKey(), suc.getValue(), nodeToDelete.getLeft(), suc.getRight(), parent);
-            wasNodeToDeleteChild = true;
+            //suc's right child (maybe virtual) takes suc's place.
+            //rebalance from suc's parent because its the first node that rank diff may changed
+            rebalanceFrom = suc.parent;
+            rebalanceFrom.left = suc.right;
+            if (suc.right != AVLNode.virtual)
+                suc.right.parent = rebalanceFrom;
+
+            suc.right = node.right;
+            suc.right.parent = suc;
         }
-        else //nodeToDelete's successor is not its child
-            nodeOfSuc = new AVLNode(suc.getKey(), suc.getValue(), nodeToDelete.getLeft(), nodeToDelete.getRight(), parent);
-
-        //setting nodeOfSuc's height
-        nodeOfSuc.setHeight(Math.max(nodeOfSuc.getLeft().getHeight(), nodeOfSuc.getRight().getHeight())+1);
-
-        IAVLNode sucParent = suc.getParent();
-
-        //successor has no left child for sure.
-        if (!suc.getLeft().isRealNode() && !suc.getRight().isRealNode()) //suc is a leaf
-            deleteLeaf(suc, sucParent);
-        else //suc is unary
-            deleteUnary(suc, sucParent);
-
-        nodeToDelete.setParent(null);
-        nodeToDelete.setLeft(null);
-        nodeToDelete.setRight(null);
-
-        if (nodeOfSuc.getRight().isRealNode()) //nodeOfSuc's right child is not virtual
-            nodeOfSuc.getRight().setParent(nodeOfSuc);
-        if (nodeOfSuc.getLeft().isRealNode()) //nodeOfSuc's left child is not virtual
-            nodeOfSuc.getLeft().setParent(nodeOfSuc);
+        suc.left = node.left;
+        suc.left.parent = suc;
+
+        //suc takes nodeToDelete's place under parent
+        suc.parent = node.parent;
+        if (parent == null) //suc is root
+            this.root = suc;
+        else if (parent.getLeft() == node)
+            parent.setLeft(suc);
+        else
+            parent.setRight(suc);
 
-        if (nodeOfSuc.getParent() != null) //nodeOfSuc is not root
+        //setting suc's height from its new children (rebalance fixes its diffs and size).
+        //a WAVL tree keeps nodeToDelete's rank there instead- its rebalance expects one rank difference of 3 at most,
+        //and may stop below suc, so suc's diffs are set here
+        if (this.balance == Balance.WAVL)
         {
-            if (isLeftChild(nodeOfSuc)) //nodeOfSuc is left child
-                nodeOfSuc.getParent().setLeft(nodeOfSuc);
-            else //nodeOfSuc is right child
-                nodeOfSuc.getParent().setRight(nodeOfSuc);
+            suc.height = node.height;
+            suc.calcAndSetCurrentDiff();
         }
-        else //nodeOfSuc is root
-            this.root = nodeOfSuc;
-
-
-        if (wasNodeToDeleteChild) //suc's parent was nodeToDelete itself (always rebalancing from suc's parent)
-            return nodeOfSuc;
-        //rebalance from suc's parent because its the first node that rank diff may changed
-        return sucParent;
+        else
+            calcAndSetHeight(suc);
+        discard(node);
+        return rebalanceFrom;
     }
 
     //returns node's successor
@@ -703,380 +1148,1333 @@ public class AVLTree {
     }
 
     /**
-     * public String min()
+     * public int putAllSorted(int[] keys, String[] infos)
      *
-     * Returns the info of the item with the smallest key in the tree,
-     * or null if the tree is empty
+     * inserts the items (keys[j], infos[j]) to the tree.
+     * keys must be sorted in strictly ascending order.
+     * keys that already exist in the tree are skipped (like insert).
+     * Instead of inserting one by one, merges the items with the tree's nodes and builds
+     * a perfectly balanced tree bottom-up- O(n + m) with no rebalancing.
+     * returns the number of items that were added.
+     * throws IllegalArgumentException if the arrays differ in length or keys are not sorted.
      */
-    public String min()
+    public int putAllSorted(int[] keys, String[] infos)
     {
-        if (this.empty()) //tree is empty
-            return null;
-        return this.min.getValue();
+        if (keys.length != infos.length)
+            throw new IllegalArgumentException("keys and infos differ in length");
+        for (int j = 1; j < keys.length; j++)
+            if (keys[j - 1] >= keys[j])
+                throw new IllegalArgumentException("keys are not sorted in ascending order at index " + j);
+        if (keys.length == 0)
+            return 0;
+
+        //merging the tree's nodes (reused as they are) with new nodes for the given items
+        AVLNode[] nodes = new AVLNode[this.size() + keys.length];
+        int count = 0;
+        int j = 0;
+        for (AVLNode node = firstNode(); node != null; node = nextInOrder(node))
+        {
+            while (j < keys.length && keys[j] < node.key)
+            {
+                nodes[count++] = newNode(keys[j], infos[j], this.aggregate);
+                j++;
+            }
+            if (j < keys.length && keys[j] == node.key) //already in tree
+                j++;
+            nodes[count++] = node;
+        }
+        for (; j < keys.length; j++)
+            nodes[count++] = newNode(keys[j], infos[j], this.aggregate);
+
+        int added = count - this.size();
+        buildFrom(nodes, count);
+        return added;
     }
 
-    /**
-     * public String max()
-     *
-     * Returns the info of the item with the largest key in the tree,
-     * or null if the tree is empty
-     */
-    public String max()
+    //making this tree the perfectly balanced tree of nodes[0..count) (sorted by key)
+    void buildFrom(AVLNode[] nodes, int count)
     {
-        if (this.empty()) //tree is empty
-            return null;
-        return this.max.getValue();
+        this.modCount++;
+        if (count == 0)
+        {
+            this.finger = null;
+            this.root = null;
+            this.min = null;
+            this.max = null;
+            return;
+        }
+        this.root = linkBalanced(nodes, 0, count, null);
+        this.min = nodes[0];
+        this.max = nodes[count - 1];
     }
 
+    //making this tree the perfectly balanced tree of the next count nodes of nodes (sorted by key).
+    //the nodes are linked as they come- O(count), and no array of them is made
+    void buildFrom(Iterator<AVLNode> nodes, int count)
+    {
+        AVLNode node = linkBalanced(nodes, count);
+        if (node == AVLNode.virtual)
+            setRoot(node, null, null);
+        else
+            setRoot(node, leftmost(node), rightmost(node));
+    }
 
-    
-    /**
-     * public int[] keysToArray()
-     *
-     * Returns a sorted array which contains all keys in the tree,
-     * or an empty array if the tree is empty.
-     */
-    public int[] keysToArray()
+    //links the next count nodes into a balanced subtree, returns its root. same shape as linkBalanced over an array
+    private static AVLNode linkBalanced(Iterator<AVLNode> nodes, int count)
     {
-        List<IAVLNode> nodeList = inOrder(this.root); 
-        int[] keys = new int[this.size()];
-        int i=0;
-        for (IAVLNode node : nodeList)
-        {
-            keys[i] = node.getKey(); //inserting node's keys to array
-            i++;
-        }
-        return keys;
+        if (count == 0)
+            return AVLNode.virtual;
+        int leftCount = count >>> 1;
+        AVLNode left = linkBalanced(nodes, leftCount);
+        AVLNode node = nodes.next();
+        return makeNode(left, node, linkBalanced(nodes, count - leftCount - 1));
     }
-    
-    //returns an IAVLNode list which contains all nodes sorted by their keys   
-    public List<IAVLNode> inOrder(IAVLNode node)
+
+    //linking nodes[from..to) into a balanced subtree under parent, returns its root.
+    //the middle node is the root, so sibling subtrees differ in size by at most one- and in height by at most one
+    private static AVLNode linkBalanced(AVLNode[] nodes, int from, int to, AVLNode parent)
     {
-        if (node == null || !node.isRealNode())
-            return new ArrayList<>();
-        List<IAVLNode> list = new LinkedList<>();
-        list.addAll(inOrder(node.getLeft()));
-        list.add(node);
-        list.addAll(inOrder(node.getRight()));
-        return list;
+        if (from >= to)
+            return AVLNode.virtual;
+        int mid = (from + to) >>> 1;
+        AVLNode node = nodes[mid];
+        node.parent = parent;
+        node.left = linkBalanced(nodes, from, mid, node);
+        node.right = linkBalanced(nodes, mid + 1, to, node);
+
+        //setting node's variables from its children
+        node.height = Math.max(node.left.height, node.right.height) + 1;
+        node.calcAndSetCurrentDiff();
+        node.calcAndSetSize();
+        return node;
     }
 
     /**
-     * public String[] infoToArray()
+     * public int insertAll(int[] keys, String[] infos)
      *
-     * Returns an array which contains all info in the tree,
-     * sorted by their respective keys,
-     * or an empty array if the tree is empty.
+     * inserts the items (keys[j], infos[j]) to the tree, in any order.
+     * keys that already exist in the tree (or repeat in the batch) are skipped, like insert.
+     * The batch is sorted and merged into the tree by divide and conquer over split/join:
+     * O(m log(n/m + 1)) for m items instead of m separate descents and rebalances.
+     * returns the number of items that were added.
      */
-    public String[] infoToArray()
+    public int insertAll(int[] keys, String[] infos)
     {
-        List<IAVLNode> nodeList = inOrder(this.root);
-        String[] infos = new String[this.size()];
-        int i=0;
-        for (IAVLNode node : nodeList)
+        if (keys.length != infos.length)
+            throw new IllegalArgumentException("keys and infos differ in length");
+        int[] positions = sortedFirstPositions(keys);
+        int[] sortedKeys = new int[positions.length];
+        String[] sortedInfos = new String[positions.length];
+        for (int j = 0; j < positions.length; j++)
         {
-            infos[i] = node.getValue(); //inserting node's values to array
-            i++;
+            sortedKeys[j] = keys[positions[j]];
+            sortedInfos[j] = infos[positions[j]];
         }
-        return infos;
+
+        int oldSize = this.size();
+        resetRoot(unionSorted(rootNode(), sortedKeys, sortedInfos, 0, sortedKeys.length, new Split(), this.aggregate));
+        return this.size() - oldSize;
     }
 
     /**
-     * public int size()
-     *
-     * Returns the number of nodes in the tree.
+     * public int deleteAll(int[] keys)
      *
-     * precondition: none
-     * postcondition: none
+     * deletes the items with the given keys (in any order) from the tree, if they are there.
+     * Like insertAll, works by divide and conquer over split/join.
+     * returns the number of items that were deleted.
      */
-    public int size()
+    public int deleteAll(int[] keys)
     {
-        if (this.empty()) //tree is empty
-            return 0;
-        return this.root.getSize();
+        int[] sortedKeys = keys.clone();
+        Arrays.sort(sortedKeys);
+
+        int oldSize = this.size();
+        resetRoot(differenceSorted(rootNode(), sortedKeys, 0, sortedKeys.length, new Split()));
+        return oldSize - this.size();
     }
 
     /**
-     * public int getRoot()
+     * public void union(AVLTree t)
      *
-     * Returns the root AVL node, or null if the tree is empty
+     * makes this tree the union of this and t. t is emptied- its nodes are moved into this tree.
+     * for keys in both trees, this tree's info is kept.
+     * splits this tree by t's root and recurses on both sides in parallel (ForkJoinPool.commonPool()),
+     * then joins the results: O(m log(n/m + 1)) work for sizes m <= n, polylogarithmic span.
+     */
+    public void union(AVLTree t)
+    {
+        union(t, ForkJoinPool.commonPool());
+    }
+
+    //union on the given pool
+    public void union(AVLTree t, ForkJoinPool pool)
+    {
+        setOperation(SetOp.UNION, t, pool);
+    }
+
+    /**
+     * public void intersection(AVLTree t)
      *
-     * precondition: none
-     * postcondition: none
+     * keeps only the items of this tree whose keys are also in t. t is emptied.
+     * same scheme and bounds as union.
      */
-    public IAVLNode getRoot()
+    public void intersection(AVLTree t)
     {
-        return this.root;
+        intersection(t, ForkJoinPool.commonPool());
+    }
+
+    //intersection on the given pool
+    public void intersection(AVLTree t, ForkJoinPool pool)
+    {
+        setOperation(SetOp.INTERSECTION, t, pool);
     }
 
     /**
-     * public string split(int x)
+     * public void difference(AVLTree t)
      *
-     * splits the tree into 2 trees according to the key x.
-     * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
-     * precondition: search(x) != null (i.e. you can also assume that the tree is not empty)
-     * postcondition: none
+     * removes from this tree the items whose keys are in t. t is emptied.
+     * same scheme and bounds as union.
      */
+    public void difference(AVLTree t)
+    {
+        difference(t, ForkJoinPool.commonPool());
+    }
 
-    public AVLTree[] split(int x)
+    //difference on the given pool
+    public void difference(AVLTree t, ForkJoinPool pool)
     {
-        IAVLNode node = TreePosition(this.root, x);
-        
-        AVLTree tSmall = tmpTree(node.getLeft()); //tSmall will contain all nodes with smaller keys. at first- contains node's left subtree 
-        AVLTree tBig = tmpTree(node.getRight()); //tBig will contain all nodes with larger keys. at first- contains node's right subtree 
+        setOperation(SetOp.DIFFERENCE, t, pool);
+    }
 
-        AVLTree tmpTree;
-        IAVLNode tmpNode;
-        IAVLNode parent = node.getParent();
+    private void setOperation(SetOp op, AVLTree t, ForkJoinPool pool)
+    {
+        if (t == this) //x op x
+        {
+            if (op == SetOp.DIFFERENCE)
+                resetRoot(AVLNode.virtual);
+            return;
+        }
+        checkMovable(t);
+        AVLNode other = t.rootNode();
+        t.resetRoot(AVLNode.virtual);
+        resetRoot(pool.invoke(new SetOperationTask(op, rootNode(), other)));
+    }
 
-        //going from node up until root
-        while (parent != null)
+    private enum SetOp { UNION, INTERSECTION, DIFFERENCE }
+
+    //subtrees smaller than this (both sizes together) are done sequentially
+    private static final int PARALLEL_GRAIN = 1 << 12;
+
+    //a op b on subtrees: splits a by b's root, recurses on both sides and joins the results on b's root (or a's node with its key)
+    private static AVLNode setOperation(SetOp op, AVLNode a, AVLNode b, Split parts)
+    {
+        if (a == AVLNode.virtual || b == AVLNode.virtual)
+            return setOperationBase(op, a, b);
+
+        AVLNode bLeft = b.left, bRight = b.right;
+        splitNodes(a, b.key, parts);
+        AVLNode aRight = parts.right, found = parts.found;
+
+        AVLNode left = setOperation(op, parts.left, bLeft, parts);
+        AVLNode right = setOperation(op, aRight, bRight, parts);
+        return combine(op, left, found, b, right, parts);
+    }
+
+    //a op b when one of them is empty
+    private static AVLNode setOperationBase(SetOp op, AVLNode a, AVLNode b)
+    {
+        switch (op)
         {
-            
-            if (!isLeftChild(node)) //join tSmall with tmpTree (subtree of node, included) , join on parent
-            {
-                tmpTree = tmpTree(parent.getLeft()); //creating a temporary tree to join with tSmall
-                tmpNode = new AVLNode(parent.getKey(), parent.getValue(), AVLNode.virtual, AVLNode.virtual, null); //creating a temporary node to join both trees on
+            case UNION:
+                return a == AVLNode.virtual ? b : a;
+            case INTERSECTION:
+                return AVLNode.virtual;
+            default:
+                return a;
+        }
+    }
 
-                tSmall.join(tmpNode, tmpTree);
-            }
-            else //join tBig with tmpTree (subtree of node, included) , join on parent
-            {
+    //joins the results of both sides. found- a's node with pivot's key (or null)
+    private static AVLNode combine(SetOp op, AVLNode left, AVLNode found, AVLNode pivot, AVLNode right, Split parts)
+    {
+        switch (op)
+        {
+            case UNION:
+                if (found == null)
+                    return joinNodes(left, pivot, right);
+                discard(pivot);
+                return joinNodes(left, found, right);
+            case INTERSECTION:
+                discard(pivot);
+                if (found == null)
+                    return joinTwo(left, right, parts);
+                return joinNodes(left, found, right);
+            default:
+                discard(pivot);
+                if (found != null)
+                    discard(found);
+                return joinTwo(left, right, parts);
+        }
+    }
 
-                tmpTree = tmpTree(parent.getRight());  //creating a temporary tree to join with tBig
-                tmpNode = new AVLNode(parent.getKey(), parent.getValue(), AVLNode.virtual, AVLNode.virtual, null); //creating a temporary node to join both trees on
-                tBig.join(tmpNode, tmpTree);
-            }
-            node = parent;
-            parent = node.getParent();
+    //disconnecting a node that was dropped from the tree
+    private static void discard(AVLNode node)
+    {
+        node.setParent(null);
+        node.setLeft(null);
+        node.setRight(null);
+    }
+
+    //parallel version of setOperation- both sides run as separate tasks while the subtrees are big.
+    //every task owns the nodes of its two subtrees, so tasks never touch the same node
+    private static final class SetOperationTask extends RecursiveTask<AVLNode>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final SetOp op;
+        private final AVLNode a, b;
+
+        SetOperationTask(SetOp op, AVLNode a, AVLNode b)
+        {
+            this.op = op;
+            this.a = a;
+            this.b = b;
         }
 
-        //setting both tree's min, max
-        tSmall.min = findMin(tSmall.getRoot());
-        tSmall.max = findMax(tSmall.getRoot());
-        tBig.min = findMin(tBig.getRoot());
-        tBig.max = findMax(tBig.getRoot());
-        return new AVLTree[] {tSmall, tBig};
+        protected AVLNode compute()
+        {
+            Split parts = new Split();
+            if (a == AVLNode.virtual || b == AVLNode.virtual || a.size + b.size <= PARALLEL_GRAIN)
+                return setOperation(op, a, b, parts);
+
+            AVLNode bLeft = b.left, bRight = b.right;
+            splitNodes(a, b.key, parts);
+            AVLNode found = parts.found;
+            SetOperationTask leftTask = new SetOperationTask(op, parts.left, bLeft);
+            SetOperationTask rightTask = new SetOperationTask(op, parts.right, bRight);
+
+            leftTask.fork();
+            AVLNode right = rightTask.compute();
+            AVLNode left = leftTask.join();
+            return combine(op, left, found, b, right, parts);
+        }
+    }
+
+    //returns the batch positions sorted by key, keeping only the first position of each key
+    private static int[] sortedFirstPositions(int[] keys)
+    {
+        long[] packed = new long[keys.length]; //key in the high half, position in the low half
+        for (int j = 0; j < keys.length; j++)
+            packed[j] = ((long) keys[j] << 32) | j;
+        Arrays.sort(packed);
+
+        int[] positions = new int[keys.length];
+        int count = 0;
+        for (long item : packed)
+        {
+            int position = (int) item;
+            if (count == 0 || keys[positions[count - 1]] != keys[position])
+                positions[count++] = position;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    //returns the root as an AVLNode (virtual for an empty tree)
+    private AVLNode rootNode()
+    {
+        if (this.empty())
+            return AVLNode.virtual;
+        return (AVLNode) this.root;
+    }
+
+    //making node (a subtree root or virtual) the root of the tree, and finding the new min/ max
+    private void resetRoot(AVLNode node)
+    {
+        if (node == AVLNode.virtual)
+            setRoot(node, null, null);
+        else
+            setRoot(node, leftmost(node), rightmost(node));
+    }
+
+    //returns the rightmost node of node's subtree
+    private static AVLNode rightmost(AVLNode node)
+    {
+        while (node.right != AVLNode.virtual)
+            node = node.right;
+        return node;
+    }
+
+    //the union of subtree t with the sorted items [from, to), returns the new subtree root.
+    //splits t by the middle item and recurses on both sides- an item whose key is in t is skipped
+    private static AVLNode unionSorted(AVLNode t, int[] keys, String[] infos, int from, int to, Split parts,
+                                       SubtreeAggregate aggregate)
+    {
+        if (from >= to)
+            return t;
+        if (t == AVLNode.virtual)
+            return newBalanced(keys, infos, from, to, aggregate);
+
+        int mid = (from + to) >>> 1;
+        splitNodes(t, keys[mid], parts);
+        AVLNode smaller = parts.left, found = parts.found, bigger = parts.right;
+
+        AVLNode left = unionSorted(smaller, keys, infos, from, mid, parts, aggregate);
+        AVLNode right = unionSorted(bigger, keys, infos, mid + 1, to, parts, aggregate);
+        if (found == null)
+            found = newNode(keys[mid], infos[mid], aggregate);
+        return joinNodes(left, found, right);
+    }
+
+    //subtree t without the sorted keys [from, to), returns the new subtree root
+    private static AVLNode differenceSorted(AVLNode t, int[] keys, int from, int to, Split parts)
+    {
+        if (from >= to || t == AVLNode.virtual)
+            return t;
+
+        int mid = (from + to) >>> 1;
+        splitNodes(t, keys[mid], parts);
+        AVLNode smaller = parts.left, found = parts.found, bigger = parts.right;
+
+        AVLNode left = differenceSorted(smaller, keys, from, mid, parts);
+        AVLNode right = differenceSorted(bigger, keys, mid + 1, to, parts);
+        if (found != null)
+            discard(found);
+        return joinTwo(left, right, parts);
+    }
+
+    //a new balanced subtree of the sorted items [from, to)
+    private static AVLNode newBalanced(int[] keys, String[] infos, int from, int to, SubtreeAggregate aggregate)
+    {
+        if (from >= to)
+            return AVLNode.virtual;
+        int mid = (from + to) >>> 1;
+        AVLNode node = newNode(keys[mid], infos[mid], aggregate);
+        return makeNode(newBalanced(keys, infos, from, mid, aggregate), node, newBalanced(keys, infos, mid + 1, to, aggregate));
+    }
+
+    //a new node with no children and no parent- an AggregateNode if aggregate is not null
+    static AVLNode newNode(int k, String i, SubtreeAggregate aggregate)
+    {
+        return newNode(k, i, aggregate, (aggregate == null) ? 0 : aggregate.value(k, i));
+    }
+
+    //newNode with the item's payload given
+    static AVLNode newNode(int k, String i, SubtreeAggregate aggregate, long value)
+    {
+        if (aggregate == null)
+            return new AVLNode(k, i, AVLNode.virtual, AVLNode.virtual, null);
+        return new AggregateNode(k, i, aggregate, value);
+    }
+
+    //checks that t's nodes can move into this tree- they must keep the same aggregate, and can't bring
+    //WAVL ranks into an AVL tree (an empty t has no nodes)
+    private void checkMovable(AVLTree t)
+    {
+        if (t.empty())
+            return;
+        if (t.aggregate != this.aggregate)
+            throw new IllegalArgumentException("the trees keep different subtree aggregates");
+        if (t.balance == Balance.WAVL && this.balance == Balance.AVL)
+            throw new IllegalArgumentException("a WAVL tree can't be moved into an AVL tree");
+    }
+
+    //the result of splitNodes. one instance is reused along a whole batch operation
+    static final class Split
+    {
+        AVLNode left, found, right;
+    }
+
+    //splits subtree t by key k into parts: the subtree of smaller keys, the node with key k (or null) and the subtree of bigger keys.
+    //reuses t's nodes as join pivots on the way back up- O(log n), no allocation.
+    //(the parent pointers of the parts' roots are left stale- the caller links them or resets them)
+    static void splitNodes(AVLNode t, int k, Split parts)
+    {
+        if (t == AVLNode.virtual)
+        {
+            parts.left = AVLNode.virtual;
+            parts.found = null;
+            parts.right = AVLNode.virtual;
+            return;
+        }
+        AVLNode left = t.left, right = t.right;
+        if (k == t.key)
+        {
+            parts.left = left;
+            parts.found = t;
+            parts.right = right;
+        }
+        else if (k < t.key)
+        {
+            splitNodes(left, k, parts);
+            parts.right = joinNodes(parts.right, t, right);
+        }
+        else
+        {
+            splitNodes(right, k, parts);
+            parts.left = joinNodes(left, t, parts.left);
+        }
+    }
+
+    //joins the subtrees left < k < right into one balanced subtree, returns its root.
+    //walks down the spine of the higher subtree to the height of the lower one and rotates on the way back- O(|rank difference| + 1)
+    static AVLNode joinNodes(AVLNode left, AVLNode k, AVLNode right)
+    {
+        if (left.height > right.height + 1)
+            return joinRight(left, k, right);
+        if (right.height > left.height + 1)
+            return joinLeft(left, k, right);
+        return makeNode(left, k, right);
+    }
+
+    //join when left is higher- goes down left's right spine
+    private static AVLNode joinRight(AVLNode left, AVLNode k, AVLNode right)
+    {
+        AVLNode c = left.right;
+        if (c.height <= right.height + 1)
+        {
+            AVLNode t = makeNode(c, k, right);
+            if (t.height <= left.left.height + 1)
+                return makeNode(left.left, left, t);
+            return rotateLeftNode(makeNode(left.left, left, rotateRightNode(t))); //double rotation
+        }
+        AVLNode t = joinRight(c, k, right);
+        if (t.height < left.left.height - 1) //c was a WAVL 2,2 node- the joined subtree came out lower than c
+            return joinNodes(left.left, left, t);
+        makeNode(left.left, left, t);
+        if (t.height <= left.left.height + 1)
+            return left;
+        return rotateLeftNode(left);
+    }
 
+    //join when right is higher- goes down right's left spine
+    private static AVLNode joinLeft(AVLNode left, AVLNode k, AVLNode right)
+    {
+        AVLNode c = right.left;
+        if (c.height <= left.height + 1)
+        {
+            AVLNode t = makeNode(left, k, c);
+            if (t.height <= right.right.height + 1)
+                return makeNode(t, right, right.right);
+            return rotateRightNode(makeNode(rotateLeftNode(t), right, right.right)); //double rotation
+        }
+        AVLNode t = joinLeft(left, k, c);
+        if (t.height < right.right.height - 1) //c was a WAVL 2,2 node- the joined subtree came out lower than c
+            return joinNodes(t, right, right.right);
+        makeNode(t, right, right.right);
+        if (t.height <= right.right.height + 1)
+            return right;
+        return rotateRightNode(right);
+    }
+
+    //joins left < right without a middle node- the last node of left becomes the pivot
+    static AVLNode joinTwo(AVLNode left, AVLNode right, Split parts)
+    {
+        if (left == AVLNode.virtual)
+            return right;
+        if (right == AVLNode.virtual)
+            return left;
+        AVLNode rest = removeLast(left, parts);
+        return joinNodes(rest, parts.found, right);
+    }
+
+    //returns subtree t without its last node, which is stored in parts.found
+    private static AVLNode removeLast(AVLNode t, Split parts)
+    {
+        if (t.right == AVLNode.virtual)
+        {
+            parts.found = t;
+            return t.left;
+        }
+        AVLNode rest = removeLast(t.right, parts);
+        return joinNodes(t.left, t, rest);
+    }
+
+    //left rotation on subtree root node (without touching the tree's root), returns the new subtree root
+    private static AVLNode rotateLeftNode(AVLNode node)
+    {
+        AVLNode right = node.right;
+        makeNode(node.left, node, right.left);
+        return makeNode(node, right, right.right);
+    }
+
+    //right rotation on subtree root node (without touching the tree's root), returns the new subtree root
+    private static AVLNode rotateRightNode(AVLNode node)
+    {
+        AVLNode left = node.left;
+        makeNode(left.right, node, node.right);
+        return makeNode(left.left, left, node);
+    }
+
+    //linking left and right as node's children and setting node's height, rank differences and size from them
+    static AVLNode makeNode(AVLNode left, AVLNode node, AVLNode right)
+    {
+        node.left = left;
+        node.right = right;
+        if (left != AVLNode.virtual)
+            left.parent = node;
+        if (right != AVLNode.virtual)
+            right.parent = node;
+        node.height = Math.max(left.height, right.height) + 1;
+        node.calcAndSetCurrentDiff();
+        node.calcAndSetSize();
+        return node;
     }
 
     /**
-     * public join(IAVLNode x, AVLTree t)
+     * public String min()
      *
-     * joins t and x with the tree.
-     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
-     * precondition: keys(x,t) < keys() or keys(x,t) > keys(). t/tree might be empty (rank = -1).
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     */
+    public String min()
+    {
+        if (this.empty()) //tree is empty
+            return null;
+        return this.min.getValue();
+    }
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     */
+    public String max()
+    {
+        if (this.empty()) //tree is empty
+            return null;
+        return this.max.getValue();
+    }
+
+
+    
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     */
+    public int[] keysToArray()
+    {
+        int[] keys = new int[this.size()];
+        AVLNode node = firstNode();
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = node.key; //inserting node's keys to array
+            node = nextInOrder(node);
+        }
+        return keys;
+    }
+    
+    //returns an IAVLNode list which contains all nodes (of node's subtree) sorted by their keys   
+    public List<IAVLNode> inOrder(IAVLNode node)
+    {
+        if (node == null || !node.isRealNode())
+            return new ArrayList<>();
+        List<IAVLNode> list = new ArrayList<>(node.getSize());
+        AVLNode current = leftmost((AVLNode) node);
+        for (int i = node.getSize(); i > 0; i--)
+        {
+            list.add(current);
+            current = nextInOrder(current);
+        }
+        return list;
+    }
+
+    //returns the node with the smallest key in the tree, or null if the tree is empty
+    private AVLNode firstNode()
+    {
+        if (this.empty())
+            return null;
+        return leftmost((AVLNode) this.root);
+    }
+
+    //returns the leftmost node of node's subtree
+    private static AVLNode leftmost(AVLNode node)
+    {
+        while (node.left != AVLNode.virtual)
+            node = node.left;
+        return node;
+    }
+
+    //returns the next node in-order (using parent pointers), or null if node is the last one.
+    //walking a whole tree this way touches every edge twice- O(n) with no stack and no allocation
+    private static AVLNode nextInOrder(AVLNode node)
+    {
+        if (node.right != AVLNode.virtual)
+            return leftmost(node.right);
+
+        AVLNode parent = node.parent;
+        while (parent != null && node == parent.right)
+        {
+            node = parent;
+            parent = node.parent;
+        }
+        return parent;
+    }
+
+    /**
+     * public String[] infoToArray()
+     *
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     */
+    public String[] infoToArray()
+    {
+        String[] infos = new String[this.size()];
+        AVLNode node = firstNode();
+        for (int i = 0; i < infos.length; i++)
+        {
+            infos[i] = node.info; //inserting node's values to array
+            node = nextInOrder(node);
+        }
+        return infos;
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of nodes in the tree.
+     *
+     * precondition: none
      * postcondition: none
      */
-    public int join(IAVLNode x, AVLTree t)
+    public int size()
     {
-        //joinCost is the complexity of the operation- returned value
-        int joinCost = Math.abs(this.getTreeRank() - t.getTreeRank()) + 1;
+        if (this.empty()) //tree is empty
+            return 0;
+        return this.root.getSize();
+    }
 
-        //both trees are empty- same as insert x to this
-        if (this.empty() && t.empty())
+    /**
+     * public int select(int i)
+     *
+     * Returns the key of the i-th smallest item (i counts from 0),
+     * or -1 if i is out of range [0, size()).
+     * O(log n)- descends by the subtree sizes.
+     */
+    public int select(int i)
+    {
+        if (i < 0 || i >= this.size())
+            return -1;
+        AVLNode node = (AVLNode) this.root;
+        while (true)
         {
-            insert(x.getKey(), x.getValue());
+            int leftSize = node.left.size;
+            if (i == leftSize)
+                return node.key;
+            if (i < leftSize)
+                node = node.left;
+            else
+            {
+                i -= leftSize + 1; //skipping the left subtree and node itself
+                node = node.right;
+            }
+        }
+    }
 
-            //calculating all of x's variables
-            calcAndSetHeight(this.root);
-            this.root.calcAndSetCurrentDiff();
-            this.root.calcAndSetSize();
+    /**
+     * public int rank(int k)
+     *
+     * Returns the number of keys in the tree that are smaller than k
+     * (k itself doesn't have to be in the tree).
+     * O(log n)- descends by the subtree sizes.
+     */
+    public int rank(int k)
+    {
+        return countBelow(k, false);
+    }
 
-            return joinCost;
+    /**
+     * public int countInRange(int lo, int hi)
+     *
+     * Returns the number of keys x in the tree with lo <= x <= hi,
+     * or 0 if lo > hi.
+     * O(log n)
+     */
+    public int countInRange(int lo, int hi)
+    {
+        if (lo > hi)
+            return 0;
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    //returns the number of keys smaller than k (or smaller/ equal to k if inclusive)
+    private int countBelow(int k, boolean inclusive)
+    {
+        if (this.empty())
+            return 0;
+        int count = 0;
+        AVLNode node = (AVLNode) this.root;
+        while (node != AVLNode.virtual)
+        {
+            if (k < node.key || (k == node.key && !inclusive))
+                node = node.left;
+            else
+            {
+                count += node.left.size + 1; //node and its left subtree are all below k
+                node = node.right;
+            }
         }
+        return count;
+    }
 
-        //only one tree is empty- join x to this (if this was empty before- turning this to be t) 
-        else if (t.empty() || this.empty())
+    /**
+     * public long aggregate(int lo, int hi)
+     *
+     * Returns the tree's subtree aggregate of the items with lo <= key <= hi, combined in ascending key order
+     * (the aggregate's identity if there are none). One descent to the node where the bounds part ways
+     * and one down each bound, combining whole subtrees on the way- O(log n).
+     * precondition: the tree was made with a SubtreeAggregate
+     */
+    public long aggregate(int lo, int hi)
+    {
+        SubtreeAggregate f = requireAggregate();
+        if (lo > hi || this.empty())
+            return f.identity();
+
+        //going down while the whole range is on one side of the node
+        AVLNode node = (AVLNode) this.root;
+        while (node != AVLNode.virtual && (node.key < lo || node.key > hi))
+            node = (node.key < lo) ? node.right : node.left;
+        if (node == AVLNode.virtual)
+            return f.identity();
+
+        //the left subtree's keys >= lo. every node on the way with key >= lo comes, with its right subtree,
+        //before the ones found after it- so it is combined in front
+        long left = f.identity();
+        for (AVLNode n = node.left; n != AVLNode.virtual; )
         {
-            if (this.empty())
+            if (n.key >= lo)
             {
-                this.root = t.getRoot();
-                this.max = t.max;
-                this.min = t.min;
+                left = f.combine(f.combine(((AggregateNode) n).value, aggregateOf(n.right, f)), left);
+                n = n.left;
             }
+            else
+                n = n.right;
+        }
 
-            //x will be this.min/max (because of the precondition). Will only add it to the tree and rebalance 
-            //x is smaller than all of this's nodes
-            if (x.getKey() < this.root.getKey())
+        //the right subtree's keys <= hi, symmetrically combined behind
+        long right = f.identity();
+        for (AVLNode n = node.right; n != AVLNode.virtual; )
+        {
+            if (n.key <= hi)
             {
-                this.min = findMin(this.root);
-                IAVLNode node = this.min;
+                right = f.combine(right, f.combine(aggregateOf(n.left, f), ((AggregateNode) n).value));
+                n = n.right;
+            }
+            else
+                n = n.left;
+        }
+        return f.combine(f.combine(left, ((AggregateNode) node).value), right);
+    }
 
-                x.setRight(node);
+    /**
+     * public long aggregate()
+     *
+     * Returns the tree's subtree aggregate of all its items- the root's, O(1).
+     * precondition: the tree was made with a SubtreeAggregate
+     */
+    public long aggregate()
+    {
+        SubtreeAggregate f = requireAggregate();
+        return this.empty() ? f.identity() : ((AggregateNode) this.root).aggregate;
+    }
 
-                if (x.getRight().getParent() != null) //x won't be root after join
-                {
-                    x.getRight().getParent().setLeft(x);
-                    x.setParent(x.getRight().getParent());
-                }
+    //returns the tree's SubtreeAggregate
+    private SubtreeAggregate requireAggregate()
+    {
+        if (this.aggregate == null)
+            throw new IllegalStateException("the tree keeps no subtree aggregate");
+        return this.aggregate;
+    }
 
-                else if (node == this.root) //node was root and now it is x's child- x is root
-                    this.root = x;
+    //the aggregate of node's subtree (identity for virtual)
+    private static long aggregateOf(AVLNode node, SubtreeAggregate f)
+    {
+        return (node == AVLNode.virtual) ? f.identity() : ((AggregateNode) node).aggregate;
+    }
 
-                x.getRight().setParent(x);
+    //returns the SubtreeAggregate the tree keeps, or null
+    public SubtreeAggregate getAggregate()
+    {
+        return this.aggregate;
+    }
 
-                //calculating all of x's variables before rebalancing
-                calcAndSetHeight(x);
-                x.calcAndSetCurrentDiff();
-                x.calcAndSetSize();
+    /**
+     * public IAVLNode floor(int k)
+     *
+     * Returns the node with the largest key <= k, or null if there is none.
+     */
+    public IAVLNode floor(int k)
+    {
+        return nearest(k, true, true);
+    }
 
-                rebalance(x);
+    /**
+     * public IAVLNode ceiling(int k)
+     *
+     * Returns the node with the smallest key >= k, or null if there is none.
+     */
+    public IAVLNode ceiling(int k)
+    {
+        return nearest(k, false, true);
+    }
 
-            }
+    /**
+     * public IAVLNode lower(int k)
+     *
+     * Returns the node with the largest key < k, or null if there is none.
+     */
+    public IAVLNode lower(int k)
+    {
+        return nearest(k, true, false);
+    }
 
-            //x is bigger than all of this's nodes
-            else if (x.getKey() > this.root.getKey())
-            {
-                this.max = findMax(this.root);
-                IAVLNode node = this.max;
-                x.setLeft(node);
+    /**
+     * public IAVLNode higher(int k)
+     *
+     * Returns the node with the smallest key > k, or null if there is none.
+     */
+    public IAVLNode higher(int k)
+    {
+        return nearest(k, false, false);
+    }
 
-                if (x.getLeft().getParent() != null) //x won't be root after join
+    //one descent from the root. below- looking for the closest key under k (else above it). inclusive- k itself counts
+    private AVLNode nearest(int k, boolean below, boolean inclusive)
+    {
+        if (this.empty())
+            return null;
+        AVLNode best = null;
+        AVLNode node = (AVLNode) this.root;
+        while (node != AVLNode.virtual)
+        {
+            if (k == node.key && inclusive)
+                return node;
+            if (below)
+            {
+                if (node.key < k) //node is a candidate, a closer one can only be on its right
                 {
-                    x.getLeft().getParent().setRight(x);
-                    x.setParent(x.getLeft().getParent());
+                    best = node;
+                    node = node.right;
                 }
+                else
+                    node = node.left;
+            }
+            else
+            {
+                if (node.key > k) //node is a candidate, a closer one can only be on its left
+                {
+                    best = node;
+                    node = node.left;
+                }
+                else
+                    node = node.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * public Iterator<IAVLNode> iterator()
+     *
+     * Returns an iterator over all nodes in ascending key order.
+     * The nodes are visited lazily- no copy of the tree is made.
+     * Throws ConcurrentModificationException if the tree is modified during the iteration.
+     */
+    public Iterator<IAVLNode> iterator()
+    {
+        return new RangeIterator(firstNode(), Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * public Iterator<IAVLNode> iterator(int lo, int hi)
+     *
+     * Returns an iterator over the nodes with lo <= key <= hi in ascending key order.
+     * O(log n) to start, O(1) amortized per node.
+     */
+    public Iterator<IAVLNode> iterator(int lo, int hi)
+    {
+        return new RangeIterator(nearest(lo, false, true), hi, false);
+    }
 
-                else if (node == this.root) //node was root and now it is x's child- x is root
-                    this.root = x;
+    /**
+     * public Iterator<IAVLNode> descendingIterator()
+     *
+     * Returns an iterator over all nodes in descending key order.
+     */
+    public Iterator<IAVLNode> descendingIterator()
+    {
+        return descendingIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
 
-                x.getLeft().setParent(x);
+    /**
+     * public Iterator<IAVLNode> descendingIterator(int lo, int hi)
+     *
+     * Returns an iterator over the nodes with lo <= key <= hi in descending key order.
+     */
+    public Iterator<IAVLNode> descendingIterator(int lo, int hi)
+    {
+        return new RangeIterator(nearest(hi, true, true), lo, true);
+    }
 
-                //calculating all of x's variables before rebalancing
-                calcAndSetHeight(x);
-                x.calcAndSetCurrentDiff();
-                x.calcAndSetSize();
+    /**
+     * public IntStream keys(int lo, int hi)
+     *
+     * Returns a sequential stream of the keys in [lo, hi], in ascending order.
+     * The stream can be made parallel- its spliterator splits by rank.
+     */
+    public IntStream keys(int lo, int hi)
+    {
+        return StreamSupport.intStream(new KeySpliterator(rank(lo), lo > hi ? rank(lo) : countBelow(hi, true)), false);
+    }
 
-                rebalance(x);
+    /**
+     * public Stream<IAVLNode> nodes(int lo, int hi)
+     *
+     * Returns a sequential stream of the nodes with keys in [lo, hi], in ascending key order.
+     */
+    public Stream<IAVLNode> nodes(int lo, int hi)
+    {
+        return StreamSupport.stream(new NodeSpliterator(rank(lo), lo > hi ? rank(lo) : countBelow(hi, true)), false);
+    }
+
+    //returns the node at position i (counting from 0) in key order. precondition: 0 <= i < size()
+    private AVLNode selectNode(int i)
+    {
+        AVLNode node = (AVLNode) this.root;
+        while (i != node.left.size)
+        {
+            if (i < node.left.size)
+                node = node.left;
+            else
+            {
+                i -= node.left.size + 1;
+                node = node.right;
             }
+        }
+        return node;
+    }
 
-            return joinCost;
+    //returns the previous node in-order (using parent pointers), or null if node is the first one
+    private static AVLNode prevInOrder(AVLNode node)
+    {
+        if (node.left != AVLNode.virtual)
+        {
+            node = node.left;
+            while (node.right != AVLNode.virtual)
+                node = node.right;
+            return node;
+        }
+
+        AVLNode parent = node.parent;
+        while (parent != null && node == parent.left)
+        {
+            node = parent;
+            parent = node.parent;
         }
+        return parent;
+    }
 
-        //both trees are not empty
-        AVLTree tRight, tLeft;
+    //lazy in-order cursor. walks with nextInOrder/ prevInOrder until passing bound
+    private class RangeIterator implements Iterator<IAVLNode>
+    {
+        private AVLNode next;
+        private final int bound; //last key to return (hi when ascending, lo when descending)
+        private final boolean descending;
+        private final int expectedModCount = modCount;
 
-        //making new pointers to the tree that will be on the left and the tree that will be on the right
-        //this- the tree that will contain both of them after join- will have a new min/ max.
-        if (this.isBigger(t, x))
+        RangeIterator(AVLNode first, int bound, boolean descending)
         {
-            tRight = this;
-            tLeft = t;
-            this.min = findMin(t.getRoot()); //setting this new min
-            this.max = findMax(this.root);
+            this.next = first;
+            this.bound = bound;
+            this.descending = descending;
         }
-        else
+
+        public boolean hasNext()
         {
-            tRight = t;
-            tLeft = this;
-            this.max = findMax(t.getRoot()); //setting this new max
-            this.min = findMin(this.root);
+            if (this.next == null)
+                return false;
+            return this.descending ? this.next.key >= this.bound : this.next.key <= this.bound;
         }
 
-        //both trees has he same rank- need to set x as this.root, set pointer for x as the root (from and to x), and set his variables
-        //no need to rebalance
-        if (tRight.getTreeRank() == tLeft.getTreeRank())
+        public IAVLNode next()
         {
-            x.setLeft(tLeft.getRoot());
-            x.setRight(tRight.getRoot());
+            if (modCount != this.expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            AVLNode node = this.next;
+            this.next = this.descending ? prevInOrder(node) : nextInOrder(node);
+            return node;
+        }
+    }
 
-            x.getLeft().setParent(x);
-            x.getRight().setParent(x);
+    //spliterator over the nodes with ranks [index, end). splitting finds the middle node by rank in O(log n)
+    private abstract class RankSpliterator
+    {
+        AVLNode next;
+        int index, end;
+        final int expectedModCount = modCount;
 
-            //setting x's variables
-            calcAndSetHeight(x);
-            x.calcAndSetCurrentDiff();
-            x.calcAndSetSize();
+        RankSpliterator(int index, int end)
+        {
+            this.index = index;
+            this.end = end;
+            this.next = index < end ? selectNode(index) : null;
+        }
 
-            this.root = x;
+        //returns the node to emit and moves on, or null if the range is exhausted
+        AVLNode advance()
+        {
+            if (modCount != this.expectedModCount)
+                throw new ConcurrentModificationException();
+            if (this.index >= this.end)
+                return null;
+            AVLNode node = this.next;
+            this.index++;
+            this.next = this.index < this.end ? nextInOrder(node) : null;
+            return node;
         }
 
-        //right tree's rank is bigger than left tree's 
-        //will go down-left from tRight.root until getting to a node with tLeft's rank/ (tLeft's rank - 1)
-        else if (tRight.getTreeRank() > tLeft.getTreeRank())
+        //returns the middle rank of the remaining range, or -1 if it is too small to split
+        int middle()
         {
-            IAVLNode node = tRight.getRoot();
-            
-            IAVLNode parent = AVLNode.virtual; //in case first vertex on the left with rank <= k is a virtual leaf.  
-            
-            while (node.getHeight() > tLeft.getTreeRank())
-            {
-                parent = node;
-                node = node.getLeft();
-            }
-            
-            x.setLeft(tLeft.getRoot());
-            x.setRight(node);
+            int mid = (this.index + this.end) >>> 1;
+            return mid > this.index ? mid : -1;
+        }
 
-            parent.setLeft(x);
-            x.setParent(parent);
+        //gives up the ranks below mid to a split-off spliterator
+        void startAt(int mid)
+        {
+            this.index = mid;
+            this.next = selectNode(mid);
+        }
 
-            x.getLeft().setParent(x);
-            x.getRight().setParent(x);
+        public long estimateSize()
+        {
+            return this.end - this.index;
+        }
 
-            //setting x's variables before rebalancing 
-            calcAndSetHeight(x);
-            x.calcAndSetCurrentDiff();
-            x.calcAndSetSize();
+        public int characteristics()
+        {
+            return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL
+                    | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
 
-            this.root = tRight.getRoot(); //this root will be the original root of the higher tree (bigger rank) 
+    private class KeySpliterator extends RankSpliterator implements Spliterator.OfInt
+    {
+        KeySpliterator(int index, int end)
+        {
+            super(index, end);
+        }
 
-            rebalance(x);
+        public boolean tryAdvance(IntConsumer action)
+        {
+            AVLNode node = advance();
+            if (node == null)
+                return false;
+            action.accept(node.key);
+            return true;
         }
 
-        else if (tRight.getTreeRank() < tLeft.getTreeRank())
+        public KeySpliterator trySplit()
         {
-            IAVLNode node = tLeft.getRoot();
-            IAVLNode parent = AVLNode.virtual; //in case first vertex on the right with rank <= k is a virtual leaf
-            while (node.getHeight() > tRight.getTreeRank())
-            {
-                parent = node;
-                node = node.getRight();
-            }
-            x.setLeft(node);
-            x.setRight(tRight.getRoot());
+            int mid = middle();
+            if (mid < 0)
+                return null;
+            KeySpliterator low = new KeySpliterator(this.index, mid);
+            startAt(mid);
+            return low;
+        }
 
-            parent.setRight(x);
-            x.setParent(parent);
+        public Comparator<? super Integer> getComparator()
+        {
+            return null; //natural order
+        }
+    }
 
-            x.getRight().setParent(x);
-            x.getLeft().setParent(x);
+    private class NodeSpliterator extends RankSpliterator implements Spliterator<IAVLNode>
+    {
+        NodeSpliterator(int index, int end)
+        {
+            super(index, end);
+        }
 
-            //setting x's variables before rebalancing
-            calcAndSetHeight(x);
-            x.calcAndSetCurrentDiff();
-            x.calcAndSetSize();
+        public boolean tryAdvance(Consumer<? super IAVLNode> action)
+        {
+            AVLNode node = advance();
+            if (node == null)
+                return false;
+            action.accept(node);
+            return true;
+        }
 
-            this.root = tLeft.getRoot(); //this root will be the original root of the higher tree (bigger rank) 
-            rebalance(x);
+        public NodeSpliterator trySplit()
+        {
+            int mid = middle();
+            if (mid < 0)
+                return null;
+            NodeSpliterator low = new NodeSpliterator(this.index, mid);
+            startAt(mid);
+            return low;
         }
 
+        public Comparator<? super IAVLNode> getComparator()
+        {
+            return Comparator.comparingInt(IAVLNode::getKey);
+        }
+    }
 
-        return joinCost;
+    /**
+     * public int getRoot()
+     *
+     * Returns the root AVL node, or null if the tree is empty
+     *
+     * precondition: none
+     * postcondition: none
+     */
+    public IAVLNode getRoot()
+    {
+        return this.root;
     }
 
-    
-    //creating a temporary tree from a sub tree of this. used only in split. disconnecting subtree from its original tree 
-    public AVLTree tmpTree (IAVLNode rootNode)
+    /**
+     * public string split(int x)
+     *
+     * splits the tree into 2 trees according to the key x.
+     * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+     * precondition: search(x) != null (i.e. you can also assume that the tree is not empty)
+     * postcondition: none
+     */
+
+    public AVLTree[] split(int x)
+    {
+        AVLTreeMetrics metrics = this.metrics;
+        if (metrics == null)
+            return splitTree(x);
+        long allocated = metrics.begin(x);
+        long start = System.nanoTime();
+        AVLTree[] parts = splitTree(x);
+        metrics.recordUpdate(AVLTreeMetrics.Operation.SPLIT, x, 0, System.nanoTime() - start, allocated);
+        return parts;
+    }
+
+    private AVLTree[] splitTree(int x)
     {
-        AVLTree tmpTree = new AVLTree();
-        if (!rootNode.isRealNode()) { //trying to create a subtree from a virtual leaf. returning an empty tree.
-            return tmpTree;
+        this.modCount++;
+        AVLNode node = (AVLNode) TreePosition(this.root, x);
+
+        //min/ max of both trees are known before relinking anything
+        AVLNode smallMin = (node == this.min) ? null : (AVLNode) this.min;
+        AVLNode smallMax = prevInOrder(node);
+        AVLNode bigMin = nextInOrder(node);
+        AVLNode bigMax = (node == this.max) ? null : (AVLNode) this.max;
+
+        AVLNode small = node.left; //all nodes with smaller keys. at first- node's left subtree
+        AVLNode big = node.right; //all nodes with larger keys. at first- node's right subtree
+        AVLNode child = node;
+        AVLNode parent = node.parent;
+
+        //going from node up until root. every ancestor is joined (as the middle node) with its other subtree
+        //into small or big- no new nodes and no temporary trees. the join costs telescope to O(log n)
+        while (parent != null)
+        {
+            AVLNode grandParent = parent.parent; //read before the join relinks parent
+            if (child == parent.right) //parent and its left subtree are smaller than x
+                small = joinNodes(parent.left, parent, small);
+            else //parent and its right subtree are larger than x
+                big = joinNodes(big, parent, parent.right);
+            child = parent;
+            parent = grandParent;
         }
-        rootNode.setParent(null); //diconnecting rootNode from its original parent.
-        tmpTree.root = rootNode;
+        discard(node);
+
+        AVLTree tSmall = new AVLTree(this.aggregate);
+        tSmall.balance = this.balance;
+        tSmall.fingerSearch = this.fingerSearch;
+        tSmall.setRoot(small, smallMin, smallMax);
+        AVLTree tBig = new AVLTree(this.aggregate);
+        tBig.balance = this.balance;
+        tBig.fingerSearch = this.fingerSearch;
+        tBig.setRoot(big, bigMin, bigMax);
+        this.setRoot(AVLNode.virtual, null, null); //all nodes moved to tSmall/ tBig
+        return new AVLTree[] {tSmall, tBig};
+    }
 
-        //setting root's values
-        calcAndSetHeight(tmpTree.getRoot());
-        tmpTree.getRoot().calcAndSetCurrentDiff();
-        tmpTree.getRoot().calcAndSetSize();
-        
-        return tmpTree;
+    /**
+     * public join(IAVLNode x, AVLTree t)
+     *
+     * joins t and x with the tree.
+     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+     * precondition: keys(x,t) < keys() or keys(x,t) > keys(). t/tree might be empty (rank = -1).
+     * postcondition: t is empty (its nodes are now in the tree)
+     * if the tree keeps a subtree aggregate, t must keep the same one (or be empty), and a copy of x
+     * that keeps it is joined instead of a plain x.
+     */
+    public int join(IAVLNode x, AVLTree t)
+    {
+        AVLTreeMetrics metrics = this.metrics;
+        if (metrics == null)
+            return joinTree(x, t);
+        long allocated = metrics.begin(x.getKey());
+        long start = System.nanoTime();
+        int cost = joinTree(x, t);
+        metrics.recordUpdate(AVLTreeMetrics.Operation.JOIN, x.getKey(), cost, System.nanoTime() - start, allocated);
+        return cost;
+    }
+
+    private int joinTree(IAVLNode x, AVLTree t)
+    {
+        checkMovable(t);
+        if (this.aggregate != null && !(x instanceof AggregateNode && ((AggregateNode) x).function == this.aggregate))
+            x = newNode(x.getKey(), x.getValue(), this.aggregate);
+
+        //joinCost is the complexity of the operation- returned value
+        int joinCost = Math.abs(this.getTreeRank() - t.getTreeRank()) + 1;
+
+        //finding which of the trees holds the bigger keys
+        boolean thisIsBigger;
+        if (!this.empty())
+            thisIsBigger = x.getKey() < this.root.getKey();
+        else
+            thisIsBigger = !t.empty() && x.getKey() > t.root.getKey(); //this is empty- it is on the other side of t
+        AVLTree bigger = thisIsBigger ? this : t;
+        AVLTree smaller = thisIsBigger ? t : this;
+
+        //the joined tree's min/ max come from the original trees (or x if a tree is empty)
+        AVLNode pivot = (AVLNode) x;
+        AVLNode newMin = smaller.empty() ? pivot : (AVLNode) smaller.min;
+        AVLNode newMax = bigger.empty() ? pivot : (AVLNode) bigger.max;
+
+        AVLNode joined = joinNodes(smaller.rootNode(), pivot, bigger.rootNode());
+        t.setRoot(AVLNode.virtual, null, null);
+        this.setRoot(joined, newMin, newMax);
+        return joinCost;
+    }
 
+    //making node (a subtree root or virtual) the root of the tree, with the given min/ max nodes
+    private void setRoot(AVLNode node, AVLNode min, AVLNode max)
+    {
+        this.modCount++;
+        this.finger = null; //the finger may have moved to another tree (split/ join) or out of all trees
+        if (node == AVLNode.virtual)
+        {
+            this.root = null;
+            this.min = null;
+            this.max = null;
+            return;
+        }
+        node.parent = null;
+        this.root = node;
+        this.min = min;
+        this.max = max;
     }
     
-    
+
     //returns IAVLNode minimum node of the tree
     public IAVLNode findMin(IAVLNode node)
     {
@@ -1112,12 +2510,6 @@ public class AVLTree {
         node.setHeight(Math.max(node.getLeft().getHeight(), node.getRight().getHeight()) + 1);
     }
 
-    //returns true if x's key is smaller than all this's nodes keys (used only in join, based on its precondition).
-    public boolean isBigger(AVLTree t, IAVLNode x)
-    {
-        return (this.root.getKey() > x.getKey());
-    }
-
     //Returns tree's rank
     public int getTreeRank()
     {
@@ -1161,22 +2553,23 @@ public class AVLTree {
     public static class AVLNode implements IAVLNode{
         private int key, height;
         private String info;
-        private IAVLNode left, right, parent;
-        private int[] diff;
+        private AVLNode left, right, parent;
+        private int leftDiff, rightDiff; //rank differences from the left/ right child
         private int size;
-        public static IAVLNode virtual =  new AVLNode();
+        public static final AVLNode virtual =  new AVLNode();
 
         //constructor for a regular node
         public AVLNode(int key, String info, IAVLNode left, IAVLNode right, IAVLNode parent)
         {
             this.key = key;
             this.info = info;
-            this.left = left;
-            this.right = right;
-            this.parent = parent;
+            this.left = (AVLNode) left;
+            this.right = (AVLNode) right;
+            this.parent = (AVLNode) parent;
             this.height = 0;
-            this.diff = new int[] {1,1}; //rank differences from it's children
-            this.size = this.left.getSize() + this.right.getSize() + 1; //size of node's subtree (itself includes)
+            this.leftDiff = 1; //rank differences from it's children
+            this.rightDiff = 1;
+            this.size = this.left.size + this.right.size + 1; //size of node's subtree (itself includes)
         }
 
         //constructor for virtual node- used only once- static virtual for all AVLNode class.
@@ -1188,7 +2581,6 @@ public class AVLTree {
             this.right = null;
             this.parent = null;
             this.height = -1;
-            this.diff = null;
             this.size = 0;
         }
 
@@ -1202,25 +2594,25 @@ public class AVLTree {
         }
         public void setLeft(IAVLNode node)
         {
-            this.left = node;
+            this.left = (AVLNode) node;
         }
-        public IAVLNode getLeft()
+        public AVLNode getLeft()
         {
             return this.left;
         }
         public void setRight(IAVLNode node)
         {
-            this.right = node;
+            this.right = (AVLNode) node;
         }
-        public IAVLNode getRight()
+        public AVLNode getRight()
         {
             return this.right;
         }
         public void setParent(IAVLNode node)
         {
-            this.parent = node;
+            this.parent = (AVLNode) node;
         }
-        public IAVLNode getParent()
+        public AVLNode getParent()
         {
             return this.parent;
         }
@@ -1240,20 +2632,32 @@ public class AVLTree {
         }
         public void setDiff(int[] newDiff)
         {
-            this.diff = newDiff;
+            this.leftDiff = newDiff[0];
+            this.rightDiff = newDiff[1];
         }
+
+        //returns a new array with the rank differences {left, right} (null for the virtual node).
+        //rebalancing reads getLeftDiff/ getRightDiff instead, which don't allocate
         public int[] getDiff()
         {
-            return this.diff;
+            if (!this.isRealNode())
+                return null;
+            return new int[] {this.leftDiff, this.rightDiff};
+        }
+        public int getLeftDiff()
+        {
+            return this.leftDiff;
+        }
+        public int getRightDiff()
+        {
+            return this.rightDiff;
         }
 
         //calculating and setting this's current rank differences using its children ranks
         public void calcAndSetCurrentDiff()
         {
-            int[] currentDiff = new int[2];
-            currentDiff[0] = this.getHeight()-this.getLeft().getHeight();
-            currentDiff[1] = this.getHeight()-this.getRight().getHeight();
-            this.setDiff(currentDiff);
+            this.leftDiff = this.height - this.left.height;
+            this.rightDiff = this.height - this.right.height;
         }
 
         public int getSize()
@@ -1264,7 +2668,37 @@ public class AVLTree {
         //calculating and setting node's size from its children's sizes
         public void calcAndSetSize()
         {
-            this.size = this.left.getSize() + this.right.getSize() + 1;
+            this.size = this.left.size + this.right.size + 1;
+        }
+    }
+
+    /**
+     * public class AggregateNode
+     *
+     * A node of a tree made with a SubtreeAggregate. Besides the subtree size it keeps the aggregate
+     * of its subtree's items, and updates it in calcAndSetSize- which every rotation, rebalance, split
+     * and join already calls bottom-up wherever a size can change.
+     */
+    static final class AggregateNode extends AVLNode
+    {
+        final SubtreeAggregate function;
+        final long value; //the node's own item's payload
+        long aggregate; //of the node's subtree, in key order
+
+        AggregateNode(int key, String info, SubtreeAggregate function, long value)
+        {
+            super(key, info, AVLNode.virtual, AVLNode.virtual, null);
+            this.function = function;
+            this.value = value;
+            this.aggregate = value;
+        }
+
+        //calculating and setting node's size and aggregate from its children's
+        public void calcAndSetSize()
+        {
+            super.calcAndSetSize();
+            SubtreeAggregate f = this.function;
+            this.aggregate = f.combine(f.combine(aggregateOf(getLeft(), f), this.value), aggregateOf(getRight(), f));
         }
     }
 }
@@ -0,0 +1,341 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * AVLTreeFile
+ *
+ * A compact file format for an AVLTree, and the code that writes and loads it.
+ *
+ * The file is a header- the magic "AVLT", a format version byte and the item count
+ * (4 bytes, big-endian)- and then the items in ascending key order:
+ * the key as a varint (the first one zigzag-encoded, every other one as the delta from
+ * the key before it, which is at least 1) and the info as a varint length + 1
+ * (0 for a null info) followed by its UTF-8 bytes.
+ *
+ * write streams the tree in order, with no array of its keys or infos.
+ * read maps the file and links the decoded nodes into a balanced tree while they stream
+ * in- O(n), with no insert and no rebalancing. A file larger than one mapping (2 GB) is
+ * mapped one window at a time.
+ *
+ */
+public final class AVLTreeFile
+{
+    private static final byte[] MAGIC = {'A', 'V', 'L', 'T'};
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 4;
+    private static final int WINDOW = 1 << 30; //bytes of a file mapped at a time
+
+    private AVLTreeFile()
+    {
+    }
+
+    /**
+     * public static long write(AVLTree tree, Path file)
+     *
+     * writes tree to file (replacing it if it exists).
+     * returns the number of bytes written.
+     */
+    public static long write(AVLTree tree, Path file) throws IOException
+    {
+        try (OutputStream out = Files.newOutputStream(file))
+        {
+            return write(tree, out);
+        }
+    }
+
+    /**
+     * public static long write(AVLTree tree, OutputStream out)
+     *
+     * writes tree to out in the file format, without closing it.
+     * returns the number of bytes written.
+     */
+    public static long write(AVLTree tree, OutputStream out) throws IOException
+    {
+        CountingOutputStream counter = new CountingOutputStream(out);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(counter, 1 << 16));
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+        data.writeInt(tree.size());
+
+        boolean first = true;
+        long previous = 0;
+        for (AVLTree.IAVLNode node : tree)
+        {
+            long key = node.getKey();
+            if (first)
+                writeVarLong(data, (key << 1) ^ (key >> 63)); //zigzag- small negative keys stay short
+            else
+                writeVarLong(data, key - previous);
+            first = false;
+            previous = key;
+
+            String info = node.getValue();
+            if (info == null)
+                writeVarLong(data, 0);
+            else
+            {
+                byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(data, bytes.length + 1L);
+                data.write(bytes);
+            }
+        }
+        data.flush();
+        return counter.count; //not data.size()- it stops at Integer.MAX_VALUE
+    }
+
+    //counts the bytes that get to out, in a long
+    private static final class CountingOutputStream extends FilterOutputStream
+    {
+        long count;
+
+        CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        public void write(int b) throws IOException
+        {
+            this.out.write(b);
+            this.count++;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            this.out.write(b, off, len); //FilterOutputStream's would write byte by byte
+            this.count += len;
+        }
+    }
+
+    //7 bits per byte, low bits first, high bit set on every byte but the last
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * public static AVLTree read(Path file)
+     *
+     * returns a new balanced tree with the items in file, built in O(n).
+     * throws IOException if the file is not in the format, or is cut short.
+     */
+    public static AVLTree read(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            return read(new Input(channel), file.toString());
+        }
+    }
+
+    //reads a tree in the file format from buffer's position on. name is for the error messages
+    static AVLTree read(ByteBuffer buffer, String name) throws IOException
+    {
+        return read(new Input(buffer), name);
+    }
+
+    private static AVLTree read(Input input, String name) throws IOException
+    {
+        if (input.remaining() < HEADER_LENGTH)
+            throw new IOException(name + " is too short for an AVLTree file");
+        for (byte b : MAGIC)
+            if (input.get() != b)
+                throw new IOException(name + " is not an AVLTree file");
+        byte version = input.get();
+        if (version != VERSION)
+            throw new IOException(name + " has unknown format version " + version);
+        int count = input.getInt();
+        if (count < 0)
+            throw new IOException(name + " has a negative item count");
+
+        NodeReader nodes = new NodeReader(input, count);
+        AVLTree tree = new AVLTree();
+        try
+        {
+            tree.buildFrom(nodes, count);
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException(name + " ends in the middle of item " + nodes.read, e);
+        }
+        catch (IllegalStateException e)
+        {
+            throw new IOException(name + ": " + e.getMessage(), e);
+        }
+        catch (UncheckedIOException e) //mapping the next window failed
+        {
+            throw e.getCause();
+        }
+        return tree;
+    }
+
+    //the bytes of a file or a buffer. a file is mapped one window at a time- a mapping can't be larger than 2 GB-
+    //and the next window starts where the last one was read up to, so an item can cross a window's end
+    private static final class Input
+    {
+        private final FileChannel channel; //null if window is all there is
+        private final long length; //where the bytes end, counted like windowStart
+        private long windowStart; //the offset of window's position 0
+        private ByteBuffer window;
+
+        Input(FileChannel channel) throws IOException
+        {
+            this.channel = channel;
+            this.length = channel.size();
+            map(0);
+        }
+
+        Input(ByteBuffer buffer)
+        {
+            this.channel = null;
+            this.length = buffer.limit();
+            this.window = buffer;
+        }
+
+        long remaining()
+        {
+            return this.length - this.windowStart - this.window.position();
+        }
+
+        byte get()
+        {
+            if (!this.window.hasRemaining())
+                next();
+            return this.window.get();
+        }
+
+        int getInt()
+        {
+            if (this.window.remaining() < 4)
+                next();
+            return this.window.getInt();
+        }
+
+        void get(byte[] bytes, int offset, int n)
+        {
+            while (n > this.window.remaining())
+            {
+                int part = this.window.remaining();
+                this.window.get(bytes, offset, part);
+                offset += part;
+                n -= part;
+                next();
+            }
+            this.window.get(bytes, offset, n);
+        }
+
+        //moving the window to where the reading is. past the last byte, the read underflows like a buffer's
+        private void next()
+        {
+            long position = this.windowStart + this.window.position();
+            if (this.channel == null || position >= this.length)
+                throw new BufferUnderflowException();
+            try
+            {
+                map(position);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void map(long position) throws IOException
+        {
+            MappedByteBuffer window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, this.length - position));
+            this.windowStart = position;
+            this.window = window;
+        }
+    }
+
+    //decodes the items one at a time, as AVLTree.buildFrom asks for them
+    private static final class NodeReader implements Iterator<AVLTree.AVLNode>
+    {
+        private final Input input;
+        private final int count;
+        private int read;
+        private long previous;
+        private byte[] scratch = new byte[64]; //reused for the UTF-8 bytes of every info
+
+        NodeReader(Input input, int count)
+        {
+            this.input = input;
+            this.count = count;
+        }
+
+        public boolean hasNext()
+        {
+            return this.read < this.count;
+        }
+
+        public AVLTree.AVLNode next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            long key;
+            if (this.read == 0)
+            {
+                long zigzag = readVarLong();
+                key = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            else
+            {
+                long delta = readVarLong();
+                if (delta < 1)
+                    throw new IllegalStateException("keys are not ascending at item " + this.read);
+                key = this.previous + delta;
+            }
+            if (key < Integer.MIN_VALUE || key > Integer.MAX_VALUE)
+                throw new IllegalStateException("key out of int range at item " + this.read);
+            this.previous = key;
+
+            String info = null;
+            long length = readVarLong() - 1;
+            if (length >= 0)
+            {
+                if (length > Integer.MAX_VALUE - 8) //no byte[] holds it, whatever input.remaining() says
+                    throw new IllegalStateException("corrupt info length " + length + " at item " + this.read);
+                if (length > this.input.remaining())
+                    throw new BufferUnderflowException();
+                int n = (int) length;
+                if (this.scratch.length < n)
+                    this.scratch = new byte[Math.max(n, 2 * this.scratch.length)];
+                this.input.get(this.scratch, 0, n);
+                info = new String(this.scratch, 0, n, StandardCharsets.UTF_8);
+            }
+            this.read++;
+            return new AVLTree.AVLNode((int) key, info, AVLTree.AVLNode.virtual, AVLTree.AVLNode.virtual, null);
+        }
+
+        private long readVarLong()
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                byte b = this.input.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+            throw new IllegalStateException("varint longer than 64 bits at item " + this.read);
+        }
+    }
+}
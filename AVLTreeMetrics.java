@@ -0,0 +1,496 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ *
+ * AVLTreeMetrics
+ *
+ * What an AVLTree's operations did: counts, rebalancing (promotions, demotions, single and
+ * double rotations), histograms of rotations per operation, rebalance path length, search depth
+ * and latency, the height against the AVL bound, and optionally the bytes allocated per operation.
+ *
+ * Off by default- AVLTree.enableMetrics() attaches one to a tree. A tree without metrics pays
+ * one field read per operation. With metrics, every operation is timed and counted here, and
+ * reported to the listeners- for example to log the slow ones with what they did.
+ *
+ * The counts are safe to read from any thread (JMX included) while the tree is used;
+ * the height/ size gauges read the tree without a lock, so they are a recent value.
+ *
+ */
+public class AVLTreeMetrics implements AVLTreeMetricsMBean
+{
+    public enum Operation { SEARCH, INSERT, DELETE, SPLIT, JOIN }
+
+    /**
+     * public interface Listener
+     *
+     * Called after every operation of the tree, on the thread that ran it. The sample is reused-
+     * it is valid only during the call. A listener must not change the tree.
+     */
+    public interface Listener
+    {
+        void operationCompleted(Sample sample);
+    }
+
+    private static final int HISTOGRAM_BUCKETS = 64;
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private final AVLTree tree;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Sample> samples = ThreadLocal.withInitial(Sample::new);
+    private volatile boolean measureAllocations;
+    private volatile ObjectName registeredAs;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder deletes = new LongAdder();
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+    private final LongAdder demotions = new LongAdder();
+    private final LongAdder singleRotations = new LongAdder();
+    private final LongAdder doubleRotations = new LongAdder();
+    private final LongAdder rebalanceOperations = new LongAdder();
+    private final LongAdder joinCost = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder measuredOperations = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    private final AtomicLongArray rotationsPerOperation = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private final AtomicLongArray rebalancePathLength = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private final AtomicLongArray searchDepth = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private final AtomicLongArray latency = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    //made by AVLTree.enableMetrics
+    AVLTreeMetrics(AVLTree tree)
+    {
+        this.tree = tree;
+    }
+
+    //the per-thread allocation counter of the running JVM, or null if it has none
+    private static com.sun.management.ThreadMXBean allocationCounter()
+    {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+            if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled())
+                return counter;
+        }
+        return null;
+    }
+
+    public void addListener(Listener listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener)
+    {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * public ObjectName register(String name)
+     *
+     * registers these metrics with the platform MBean server as AVLTree:type=AVLTreeMetrics,name=name.
+     * returns the name they were registered under.
+     */
+    public ObjectName register(String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName("AVLTree:type=AVLTreeMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.registeredAs = objectName;
+        return objectName;
+    }
+
+    /**
+     * public void unregister()
+     *
+     * removes these metrics from the platform MBean server, if register put them there.
+     */
+    public void unregister() throws JMException
+    {
+        ObjectName objectName = this.registeredAs;
+        if (objectName == null)
+            return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName))
+            server.unregisterMBean(objectName);
+        this.registeredAs = null;
+    }
+
+    //called before an insert/ delete/ split/ join of key. clears the tree's per-operation counts and
+    //measures the search depth (before the timing starts), returns the thread's allocated bytes so far
+    //(-1 when they are not measured)
+    long begin(int key)
+    {
+        AVLTree tree = this.tree;
+        tree.opPromotions = 0;
+        tree.opDemotions = 0;
+        tree.opRotations = 0;
+        tree.opDoubleRotations = 0;
+        tree.opPathLength = 0;
+        tree.opDepth = tree.searchDepth(key);
+        return (this.measureAllocations && THREADS != null) ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    //called after an insert/ delete/ split/ join, with its result and the tree's per-operation counts
+    void recordUpdate(Operation operation, int key, int result, long nanos, long allocatedBefore)
+    {
+        AVLTree tree = this.tree;
+        long allocated = -1;
+        if (allocatedBefore >= 0)
+        {
+            allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            this.allocatedBytes.add(allocated);
+            this.measuredOperations.increment();
+        }
+
+        switch (operation)
+        {
+            case INSERT:
+                this.inserts.increment();
+                break;
+            case DELETE:
+                this.deletes.increment();
+                break;
+            case SPLIT:
+                this.splits.increment();
+                break;
+            case JOIN:
+                this.joins.increment();
+                this.joinCost.add(result);
+                break;
+            default:
+                break;
+        }
+
+        int doubles = tree.opDoubleRotations;
+        int singles = tree.opRotations - 2 * doubles;
+        if (operation == Operation.INSERT || operation == Operation.DELETE)
+        {
+            if (result > 0)
+                this.rebalanceOperations.add(result);
+            this.promotions.add(tree.opPromotions);
+            this.demotions.add(tree.opDemotions);
+            this.singleRotations.add(singles);
+            this.doubleRotations.add(doubles);
+            increment(this.rotationsPerOperation, tree.opRotations);
+            increment(this.rebalancePathLength, tree.opPathLength);
+            increment(this.searchDepth, tree.opDepth);
+        }
+        recordLatency(nanos);
+
+        if (this.listeners.isEmpty())
+            return;
+        Sample sample = this.samples.get();
+        sample.set(operation, key, result, nanos, tree.opDepth);
+        sample.promotions = tree.opPromotions;
+        sample.demotions = tree.opDemotions;
+        sample.singleRotations = singles;
+        sample.doubleRotations = doubles;
+        sample.pathLength = tree.opPathLength;
+        sample.allocatedBytes = allocated;
+        notifyListeners(sample);
+    }
+
+    //called after a search of key that compared it with depth nodes
+    void recordSearch(int key, boolean found, int depth, long nanos)
+    {
+        this.searches.increment();
+        increment(this.searchDepth, depth);
+        recordLatency(nanos);
+
+        if (this.listeners.isEmpty())
+            return;
+        Sample sample = this.samples.get();
+        sample.set(Operation.SEARCH, key, found ? 1 : 0, nanos, depth);
+        notifyListeners(sample);
+    }
+
+    private void recordLatency(long nanos)
+    {
+        increment(this.latency, 64 - Long.numberOfLeadingZeros(nanos)); //bucket of the highest bit
+        this.maxLatencyNanos.accumulate(nanos);
+    }
+
+    private void notifyListeners(Sample sample)
+    {
+        for (Listener listener : this.listeners)
+            listener.operationCompleted(sample);
+    }
+
+    private static void increment(AtomicLongArray histogram, int value)
+    {
+        histogram.incrementAndGet(Math.min(Math.max(value, 0), HISTOGRAM_BUCKETS - 1));
+    }
+
+    private static long[] toArray(AtomicLongArray histogram)
+    {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = histogram.get(i);
+        return counts;
+    }
+
+    private static void clear(AtomicLongArray histogram)
+    {
+        for (int i = 0; i < histogram.length(); i++)
+            histogram.set(i, 0);
+    }
+
+    public long getSearches()
+    {
+        return this.searches.sum();
+    }
+
+    public long getInserts()
+    {
+        return this.inserts.sum();
+    }
+
+    public long getDeletes()
+    {
+        return this.deletes.sum();
+    }
+
+    public long getSplits()
+    {
+        return this.splits.sum();
+    }
+
+    public long getJoins()
+    {
+        return this.joins.sum();
+    }
+
+    public long getPromotions()
+    {
+        return this.promotions.sum();
+    }
+
+    public long getDemotions()
+    {
+        return this.demotions.sum();
+    }
+
+    public long getSingleRotations()
+    {
+        return this.singleRotations.sum();
+    }
+
+    public long getDoubleRotations()
+    {
+        return this.doubleRotations.sum();
+    }
+
+    public long getRebalanceOperations()
+    {
+        return this.rebalanceOperations.sum();
+    }
+
+    public long getJoinCost()
+    {
+        return this.joinCost.sum();
+    }
+
+    public long[] getRotationsPerOperationHistogram()
+    {
+        return toArray(this.rotationsPerOperation);
+    }
+
+    public long[] getRebalancePathLengthHistogram()
+    {
+        return toArray(this.rebalancePathLength);
+    }
+
+    public long[] getSearchDepthHistogram()
+    {
+        return toArray(this.searchDepth);
+    }
+
+    public long[] getLatencyHistogram()
+    {
+        return toArray(this.latency);
+    }
+
+    public long getMaxLatencyNanos()
+    {
+        return this.maxLatencyNanos.get();
+    }
+
+    public int getSize()
+    {
+        return this.tree.size();
+    }
+
+    public int getHeight()
+    {
+        return this.tree.getTreeRank();
+    }
+
+    public double getHeightBound()
+    {
+        return heightBound(getSize());
+    }
+
+    public double getHeightToBound()
+    {
+        int size = getSize();
+        return (size == 0) ? 0 : getHeight() / heightBound(size);
+    }
+
+    //the largest height of an AVL tree with n nodes- 1.4405 * log2(n + 2) - 0.3277
+    static double heightBound(int n)
+    {
+        return 1.4405 * (Math.log(n + 2.0) / Math.log(2)) - 0.3277;
+    }
+
+    public boolean isMeasureAllocations()
+    {
+        return this.measureAllocations;
+    }
+
+    //measuring allocations costs a call into the JVM on every update- and needs a JVM that counts them
+    public void setMeasureAllocations(boolean measure)
+    {
+        if (measure && THREADS == null)
+            throw new UnsupportedOperationException("this JVM doesn't count the bytes each thread allocates");
+        this.measureAllocations = measure;
+    }
+
+    public long getAllocatedBytes()
+    {
+        return this.allocatedBytes.sum();
+    }
+
+    public double getAllocatedBytesPerOperation()
+    {
+        long operations = this.measuredOperations.sum();
+        return (operations == 0) ? 0 : (double) this.allocatedBytes.sum() / operations;
+    }
+
+    public void reset()
+    {
+        this.searches.reset();
+        this.inserts.reset();
+        this.deletes.reset();
+        this.splits.reset();
+        this.joins.reset();
+        this.promotions.reset();
+        this.demotions.reset();
+        this.singleRotations.reset();
+        this.doubleRotations.reset();
+        this.rebalanceOperations.reset();
+        this.joinCost.reset();
+        this.allocatedBytes.reset();
+        this.measuredOperations.reset();
+        this.maxLatencyNanos.reset();
+        clear(this.rotationsPerOperation);
+        clear(this.rebalancePathLength);
+        clear(this.searchDepth);
+        clear(this.latency);
+    }
+
+    /**
+     * public static final class Sample
+     *
+     * What one operation did, as passed to the listeners.
+     * result- insert's/ delete's/ join's result, 1/ 0 for a search that found/ missed its key, 0 for split.
+     * depth- the nodes compared with the key on the way down (searches, inserts and deletes).
+     * the rebalancing counts are of inserts and deletes, allocatedBytes is -1 unless measured.
+     */
+    public static final class Sample
+    {
+        private Operation operation;
+        private int key, result, depth;
+        private int promotions, demotions, singleRotations, doubleRotations, pathLength;
+        private long nanos, allocatedBytes;
+
+        private void set(Operation operation, int key, int result, long nanos, int depth)
+        {
+            this.operation = operation;
+            this.key = key;
+            this.result = result;
+            this.nanos = nanos;
+            this.depth = depth;
+            this.promotions = 0;
+            this.demotions = 0;
+            this.singleRotations = 0;
+            this.doubleRotations = 0;
+            this.pathLength = 0;
+            this.allocatedBytes = -1;
+        }
+
+        public Operation getOperation()
+        {
+            return this.operation;
+        }
+
+        public int getKey()
+        {
+            return this.key;
+        }
+
+        public int getResult()
+        {
+            return this.result;
+        }
+
+        public long getNanos()
+        {
+            return this.nanos;
+        }
+
+        public int getDepth()
+        {
+            return this.depth;
+        }
+
+        public int getPromotions()
+        {
+            return this.promotions;
+        }
+
+        public int getDemotions()
+        {
+            return this.demotions;
+        }
+
+        public int getSingleRotations()
+        {
+            return this.singleRotations;
+        }
+
+        public int getDoubleRotations()
+        {
+            return this.doubleRotations;
+        }
+
+        public int getPathLength()
+        {
+            return this.pathLength;
+        }
+
+        public long getAllocatedBytes()
+        {
+            return this.allocatedBytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.operation + " " + this.key + " -> " + this.result + " in " + this.nanos + "ns, depth " + this.depth
+                    + ", promotions " + this.promotions + ", demotions " + this.demotions
+                    + ", rotations " + this.singleRotations + "+" + this.doubleRotations + " double"
+                    + ", path " + this.pathLength + ", allocated " + this.allocatedBytes;
+        }
+    }
+}
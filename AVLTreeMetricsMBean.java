@@ -0,0 +1,53 @@
+/**
+ *
+ * AVLTreeMetricsMBean
+ *
+ * The JMX view of an AVLTreeMetrics- see AVLTreeMetrics.register.
+ * Histograms are arrays of counts, bucket i as described by each getter.
+ *
+ */
+public interface AVLTreeMetricsMBean
+{
+    //operation counts
+    long getSearches();
+    long getInserts();
+    long getDeletes();
+    long getSplits();
+    long getJoins();
+
+    //rebalancing done by inserts and deletes
+    long getPromotions();
+    long getDemotions();
+    long getSingleRotations();
+    long getDoubleRotations();
+    long getRebalanceOperations(); //the sum of insert's/ delete's results
+    long getJoinCost(); //the sum of join's results
+
+    //bucket i- operations with i rotations (a double rotation is 2), the last bucket has the rest
+    long[] getRotationsPerOperationHistogram();
+
+    //bucket i- inserts/ deletes whose rebalancing went i nodes up before its last step, the last bucket has the rest
+    long[] getRebalancePathLengthHistogram();
+
+    //bucket i- searches, inserts and deletes that compared k with i nodes, the last bucket has the rest
+    long[] getSearchDepthHistogram();
+
+    //bucket i- operations that took [2^(i-1), 2^i) nanoseconds (bucket 0- under 1)
+    long[] getLatencyHistogram();
+    long getMaxLatencyNanos();
+
+    //the tree's shape now
+    int getSize();
+    int getHeight();
+    double getHeightBound(); //the AVL bound 1.4405 * log2(n + 2) - 0.3277
+    double getHeightToBound(); //getHeight() / getHeightBound()
+
+    //heap bytes allocated by the thread during inserts/ deletes/ splits/ joins, while measureAllocations is on
+    boolean isMeasureAllocations();
+    void setMeasureAllocations(boolean measure);
+    long getAllocatedBytes();
+    double getAllocatedBytesPerOperation();
+
+    //sets every count and histogram back to zero
+    void reset();
+}
@@ -0,0 +1,484 @@
+/**
+ *
+ * AbstractAVLMap
+ *
+ * The key-independent part of AVLMap and LongAVLMap: linking, rebalancing,
+ * split and join of nodes, with the same cases and rebalance counts as AVLTree.
+ * Subclasses search by key and create the nodes.
+ *
+ * Instead of a magic key, every missing child (and the root's parent) is a
+ * sentinel node with height -1 and size 0, so any key can be stored.
+ * The sentinel is shared by all maps of a subclass and is never written.
+ *
+ */
+abstract class AbstractAVLMap<N extends AbstractAVLMap.Node<N>>
+{
+    final N nil;
+    N root, min, max;
+
+    AbstractAVLMap(N nil)
+    {
+        this.nil = nil;
+        this.root = nil;
+        this.min = nil;
+        this.max = nil;
+    }
+
+    /**
+     * public boolean empty()
+     *
+     * returns true if and only if the tree is empty
+     */
+    public boolean empty()
+    {
+        return this.root == this.nil;
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of nodes in the tree.
+     */
+    public int size()
+    {
+        return this.root.size;
+    }
+
+    //Returns tree's rank (-1 for an empty tree)
+    public int getTreeRank()
+    {
+        return this.root.height;
+    }
+
+    //linking node (a new leaf) as parentNode's left or right child, or as the root if parentNode is the sentinel.
+    //returns the number of rebalancing operations
+    int insertLeaf(N parentNode, N node, boolean asLeft)
+    {
+        node.left = this.nil;
+        node.right = this.nil;
+        node.parent = parentNode;
+        node.height = 0;
+        node.size = 1;
+        //inserting for an empty tree- no need to rebalance
+        if (parentNode == this.nil)
+        {
+            this.root = node;
+            this.min = node;
+            this.max = node;
+            return 0;
+        }
+
+        //a new left child of min is the new min (and a right child of max the new max)
+        if (asLeft)
+        {
+            parentNode.left = node;
+            if (parentNode == this.min)
+                this.min = node;
+        }
+        else
+        {
+            parentNode.right = node;
+            if (parentNode == this.max)
+                this.max = node;
+        }
+        return rebalance(parentNode);
+    }
+
+    //unlinking node from the tree. returns the number of rebalancing operations
+    int deleteNode(N node)
+    {
+        //if node is min/ max- its neighbour becomes the new min/ max
+        N newMin = (node == this.min) ? nextInOrder(node) : this.min;
+        N newMax = (node == this.max) ? prevInOrder(node) : this.max;
+
+        N parentNode = node.parent;
+        N rebalanceFrom;
+        if (node.left == this.nil || node.right == this.nil) //leaf or unary- the only child (maybe the sentinel) takes node's place
+        {
+            N child = (node.left != this.nil) ? node.left : node.right;
+            if (child != this.nil)
+                child.parent = parentNode;
+            replaceChild(parentNode, node, child);
+            rebalanceFrom = parentNode;
+        }
+        else //binary- the successor is relinked into node's place
+        {
+            N suc = leftmost(node.right);
+            if (suc.parent == node) //suc is node's right child and keeps its right subtree
+                rebalanceFrom = suc;
+            else
+            {
+                rebalanceFrom = suc.parent;
+                rebalanceFrom.left = suc.right;
+                if (suc.right != this.nil)
+                    suc.right.parent = rebalanceFrom;
+                suc.right = node.right;
+                suc.right.parent = suc;
+            }
+            suc.left = node.left;
+            suc.left.parent = suc;
+            suc.parent = parentNode;
+            replaceChild(parentNode, node, suc);
+            suc.height = Math.max(suc.left.height, suc.right.height) + 1;
+        }
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+
+        int rebalanceCounter = rebalance(rebalanceFrom);
+        this.min = newMin;
+        this.max = newMax;
+        return rebalanceCounter;
+    }
+
+    //fixing the rank differences from node up to the root (sizes are maintained all the way up).
+    //same cases and counts as AVLTree.rebalance. returns the number of rebalancing operations
+    int rebalance(N node)
+    {
+        int rebalanceCounter = 0;
+        while (node != this.nil)
+        {
+            N left = node.left, right = node.right;
+            int leftDiff = node.height - left.height;
+            int rightDiff = node.height - right.height;
+            N top = node; //root of node's subtree after fixing it
+
+            //case 0-1/ 1-0, promote
+            if ((leftDiff == 0 && rightDiff == 1) || (leftDiff == 1 && rightDiff == 0))
+            {
+                node.height++;
+                rebalanceCounter++;
+            }
+            //case 0-2, rotations with the left child
+            else if (leftDiff == 0 && rightDiff == 2)
+            {
+                int childLeftDiff = left.height - left.left.height, childRightDiff = left.height - left.right.height;
+                if (childLeftDiff == 1 && childRightDiff == 2) //1 rotation 1 demote
+                {
+                    top = rotateRight(node);
+                    rebalanceCounter += 2;
+                }
+                else if (childLeftDiff == 2 && childRightDiff == 1) //double rotation
+                {
+                    rotateLeft(left);
+                    top = rotateRight(node);
+                    rebalanceCounter += 5;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 1) //after join- 1 rotation 1 promote
+                {
+                    top = rotateRight(node);
+                    rebalanceCounter += 2;
+                }
+            }
+            //case 2-0, rotations with the right child
+            else if (leftDiff == 2 && rightDiff == 0)
+            {
+                int childLeftDiff = right.height - right.left.height, childRightDiff = right.height - right.right.height;
+                if (childLeftDiff == 2 && childRightDiff == 1)
+                {
+                    top = rotateLeft(node);
+                    rebalanceCounter += 2;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 2)
+                {
+                    rotateRight(right);
+                    top = rotateLeft(node);
+                    rebalanceCounter += 5;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 1)
+                {
+                    top = rotateLeft(node);
+                    rebalanceCounter += 2;
+                }
+            }
+            //case 2-2, demote
+            else if (leftDiff == 2 && rightDiff == 2)
+            {
+                node.height--;
+                rebalanceCounter++;
+            }
+            //case 3-1, rotations with the right child
+            else if (leftDiff == 3 && rightDiff == 1)
+            {
+                int childLeftDiff = right.height - right.left.height, childRightDiff = right.height - right.right.height;
+                if (childRightDiff == 1) //child 1-1 (1 rotation 1 demote 1 promote) or 2-1 (1 rotation 2 demote)
+                {
+                    top = rotateLeft(node);
+                    rebalanceCounter += 3;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 2) //double rotation
+                {
+                    rotateRight(right);
+                    top = rotateLeft(node);
+                    rebalanceCounter += 6;
+                }
+            }
+            //case 1-3, rotations with the left child
+            else if (leftDiff == 1 && rightDiff == 3)
+            {
+                int childLeftDiff = left.height - left.left.height, childRightDiff = left.height - left.right.height;
+                if (childLeftDiff == 1)
+                {
+                    top = rotateRight(node);
+                    rebalanceCounter += 3;
+                }
+                else if (childLeftDiff == 2 && childRightDiff == 1)
+                {
+                    rotateLeft(left);
+                    top = rotateRight(node);
+                    rebalanceCounter += 6;
+                }
+            }
+
+            top.size = top.left.size + top.right.size + 1;
+            node = top.parent;
+        }
+        return rebalanceCounter;
+    }
+
+    //making left rotation on node, returns the node that took its place
+    private N rotateLeft(N node)
+    {
+        N parentNode = node.parent;
+        N right = node.right;
+
+        node.right = right.left;
+        if (right.left != this.nil)
+            right.left.parent = node;
+        right.left = node;
+        node.parent = right;
+        right.parent = parentNode;
+        replaceChild(parentNode, node, right);
+
+        update(node);
+        update(right);
+        return right;
+    }
+
+    //making right rotation on node, returns the node that took its place
+    private N rotateRight(N node)
+    {
+        N parentNode = node.parent;
+        N left = node.left;
+
+        node.left = left.right;
+        if (left.right != this.nil)
+            left.right.parent = node;
+        left.right = node;
+        node.parent = left;
+        left.parent = parentNode;
+        replaceChild(parentNode, node, left);
+
+        update(node);
+        update(left);
+        return left;
+    }
+
+    //pointing parentNode (or the root, if parentNode is the sentinel) at replacement instead of child
+    private void replaceChild(N parentNode, N child, N replacement)
+    {
+        if (parentNode == this.nil)
+            this.root = replacement;
+        else if (parentNode.left == child)
+            parentNode.left = replacement;
+        else
+            parentNode.right = replacement;
+    }
+
+    //setting node's height and size from its children
+    private static <N extends Node<N>> void update(N node)
+    {
+        node.height = Math.max(node.left.height, node.right.height) + 1;
+        node.size = node.left.size + node.right.size + 1;
+    }
+
+    //splits the tree around node (which is dropped): small gets the nodes before it, big the nodes after it.
+    //this tree is left empty
+    void splitAt(N node, AbstractAVLMap<N> small, AbstractAVLMap<N> big)
+    {
+        //min/ max of both trees are known before relinking anything
+        N smallMin = (node == this.min) ? this.nil : this.min;
+        N smallMax = prevInOrder(node);
+        N bigMin = nextInOrder(node);
+        N bigMax = (node == this.max) ? this.nil : this.max;
+
+        N smallRoot = node.left;
+        N bigRoot = node.right;
+        N child = node;
+        N parentNode = node.parent;
+
+        //going from node up until root. every ancestor is joined (as the middle node) with its other subtree
+        while (parentNode != this.nil)
+        {
+            N grandParent = parentNode.parent;
+            if (child == parentNode.right)
+                smallRoot = joinNodes(parentNode.left, parentNode, smallRoot);
+            else
+                bigRoot = joinNodes(bigRoot, parentNode, parentNode.right);
+            child = parentNode;
+            parentNode = grandParent;
+        }
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+
+        small.setRoot(smallRoot, smallMin, smallMax);
+        big.setRoot(bigRoot, bigMin, bigMax);
+        this.setRoot(this.nil, this.nil, this.nil);
+    }
+
+    //joins t and pivot (a detached node) with the tree. thisIsBigger- keys(pivot, t) < keys().
+    //t is left empty. Returns the complexity of the operation (|tree.rank - t.rank| + 1)
+    int joinAt(N pivot, AbstractAVLMap<N> t, boolean thisIsBigger)
+    {
+        int joinCost = Math.abs(this.getTreeRank() - t.getTreeRank()) + 1;
+        N other = t.root, otherMin = t.min, otherMax = t.max;
+        t.setRoot(this.nil, this.nil, this.nil);
+
+        pivot.left = this.nil;
+        pivot.right = this.nil;
+        if (thisIsBigger)
+            this.setRoot(joinNodes(other, pivot, this.root), (other == this.nil) ? pivot : otherMin, this.empty() ? pivot : this.max);
+        else
+            this.setRoot(joinNodes(this.root, pivot, other), this.empty() ? pivot : this.min, (other == this.nil) ? pivot : otherMax);
+        return joinCost;
+    }
+
+    //making node (a subtree root or the sentinel) the root of the tree, with the given min/ max nodes
+    private void setRoot(N node, N min, N max)
+    {
+        if (node != this.nil)
+            node.parent = this.nil;
+        this.root = node;
+        this.min = (node == this.nil) ? this.nil : min;
+        this.max = (node == this.nil) ? this.nil : max;
+    }
+
+    //joins subtrees left < k < right (k a detached node) into one balanced subtree, returns its root.
+    //same algorithm as AVLTree.joinNodes
+    private N joinNodes(N left, N k, N right)
+    {
+        if (left.height > right.height + 1)
+            return joinRight(left, k, right);
+        if (right.height > left.height + 1)
+            return joinLeft(left, k, right);
+        return makeNode(left, k, right);
+    }
+
+    private N joinRight(N left, N k, N right)
+    {
+        N c = left.right;
+        if (c.height <= right.height + 1)
+        {
+            N t = makeNode(c, k, right);
+            if (t.height <= left.left.height + 1)
+                return makeNode(left.left, left, t);
+            return rotateLeftNode(makeNode(left.left, left, rotateRightNode(t)));
+        }
+        N t = joinRight(c, k, right);
+        makeNode(left.left, left, t);
+        if (t.height <= left.left.height + 1)
+            return left;
+        return rotateLeftNode(left);
+    }
+
+    private N joinLeft(N left, N k, N right)
+    {
+        N c = right.left;
+        if (c.height <= left.height + 1)
+        {
+            N t = makeNode(left, k, c);
+            if (t.height <= right.right.height + 1)
+                return makeNode(t, right, right.right);
+            return rotateRightNode(makeNode(rotateLeftNode(t), right, right.right));
+        }
+        N t = joinLeft(left, k, c);
+        makeNode(t, right, right.right);
+        if (t.height <= right.right.height + 1)
+            return right;
+        return rotateRightNode(right);
+    }
+
+    //left rotation of a subtree root (without touching the tree's root), returns the new subtree root
+    private N rotateLeftNode(N node)
+    {
+        N right = node.right;
+        makeNode(node.left, node, right.left);
+        return makeNode(node, right, right.right);
+    }
+
+    //right rotation of a subtree root (without touching the tree's root), returns the new subtree root
+    private N rotateRightNode(N node)
+    {
+        N left = node.left;
+        makeNode(left.right, node, node.right);
+        return makeNode(left.left, left, node);
+    }
+
+    //linking left and right as node's children and setting node's height and size from them
+    private N makeNode(N left, N node, N right)
+    {
+        node.left = left;
+        node.right = right;
+        if (left != this.nil)
+            left.parent = node;
+        if (right != this.nil)
+            right.parent = node;
+        update(node);
+        return node;
+    }
+
+    N leftmost(N node)
+    {
+        while (node.left != this.nil)
+            node = node.left;
+        return node;
+    }
+
+    N rightmost(N node)
+    {
+        while (node.right != this.nil)
+            node = node.right;
+        return node;
+    }
+
+    //returns the next node in-order, or the sentinel if node is the last one
+    N nextInOrder(N node)
+    {
+        if (node.right != this.nil)
+            return leftmost(node.right);
+        N parentNode = node.parent;
+        while (parentNode != this.nil && node == parentNode.right)
+        {
+            node = parentNode;
+            parentNode = node.parent;
+        }
+        return parentNode;
+    }
+
+    //returns the previous node in-order, or the sentinel if node is the first one
+    N prevInOrder(N node)
+    {
+        if (node.left != this.nil)
+            return rightmost(node.left);
+        N parentNode = node.parent;
+        while (parentNode != this.nil && node == parentNode.left)
+        {
+            node = parentNode;
+            parentNode = node.parent;
+        }
+        return parentNode;
+    }
+
+    /**
+     * Node
+     *
+     * The links and balance data of a node. Subclasses add the key and the value.
+     */
+    abstract static class Node<N extends Node<N>>
+    {
+        N left, right, parent;
+        int height;
+        int size;
+    }
+}
@@ -0,0 +1,948 @@
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ *
+ * ConcurrentAVLTree
+ *
+ * A thread-safe AVL tree with distinct integer keys and info, after Bronson, Casper,
+ * Chafi and Olukotun's relaxed-balance optimistic AVL tree ("A Practical Concurrent
+ * Binary Search Tree", PPoPP 2010).
+ *
+ * search and the range/ navigation queries take no locks. Every node has a version
+ * that a rotation bumps when it shrinks the node's subtree (moves keys out of it);
+ * a reader hops from node to child and checks that the version of the node it came
+ * from did not change, otherwise it backs up one level and tries again.
+ * insert and delete lock only the nodes they relink, and rebalancing locks a parent
+ * and the one or two nodes it rotates- writers in different parts of the tree don't wait for each other.
+ *
+ * delete of a node with two children only clears its info and leaves it as a routing node;
+ * routing nodes are spliced out by rebalancing once they have a missing child.
+ * Balance is relaxed while writers are in flight, and restored once they are done.
+ *
+ * Range queries are weakly consistent (like ConcurrentSkipListMap's)- they never throw
+ * ConcurrentModificationException and see every key that is in the tree for their whole run.
+ *
+ */
+public class ConcurrentAVLTree
+{
+    //version bits. a node's version changes only while its lock is held
+    private static final long UNLINKED = 1L; //the node was removed from the tree (final)
+    private static final long SHRINKING = 2L; //a rotation is moving keys out of the node's subtree
+    private static final long SHRINK_COUNT = 4L; //added by every completed shrink
+
+    //spins on a shrinking node before blocking on its lock
+    private static final int SPIN_COUNT = 100;
+
+    private static final int LEFT = -1, RIGHT = 1;
+
+    //nodeCondition results that are not a height
+    private static final int UNLINK_REQUIRED = -1, REBALANCE_REQUIRED = -2, NOTHING_REQUIRED = -3;
+
+    //results of the optimistic attempts
+    private static final int RETRY = -1, FAILED = 0, DONE = 1;
+    private static final Node RETRY_NODE = new Node(0, null, null);
+
+    //the tree's root is holder.right. the holder is never rotated, so its version never changes
+    private final Node holder = new Node(Integer.MIN_VALUE, null, null);
+    private final LongAdder size = new LongAdder();
+
+    //constructor for empty tree
+    public ConcurrentAVLTree()
+    {
+    }
+
+    /**
+     * public boolean empty()
+     *
+     * returns true if and only if the tree is empty
+     */
+    public boolean empty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of items in the tree. Exact when no writer is running.
+     */
+    public int size()
+    {
+        return (int) this.size.sum();
+    }
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null. takes no locks
+     */
+    public String search(int k)
+    {
+        Node node = attemptGet(k, this.holder, RIGHT, this.holder.version);
+        return (node == null) ? null : node.info;
+    }
+
+    /**
+     * public boolean contains(int k)
+     *
+     * returns true if and only if an item with key k exists in the tree
+     */
+    public boolean contains(int k)
+    {
+        return search(k) != null;
+    }
+
+    /**
+     * public String get(int k, String defaultValue)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns defaultValue
+     */
+    public String get(int k, String defaultValue)
+    {
+        String info = search(k);
+        return (info == null) ? defaultValue : info;
+    }
+
+    //optimistic descent below node towards k. node had version nodeOVL when its parent's read of it was valid.
+    //returns the node with key k (its info may be null- a routing node), null if there is none, or RETRY_NODE
+    //if node shrank and the caller has to read its child again
+    private static Node attemptGet(int k, Node node, int dirToC, long nodeOVL)
+    {
+        while (true)
+        {
+            Node child = node.child(dirToC);
+            if (child == null)
+            {
+                if (node.version != nodeOVL)
+                    return RETRY_NODE;
+                return null; //the child was read while node's range still held k
+            }
+            if (k == child.key)
+                return child; //keys never move between nodes- how we got here doesn't matter
+
+            long childOVL = child.version;
+            if (isShrinkingOrUnlinked(childOVL))
+            {
+                waitUntilNotShrinking(child);
+                if (node.version != nodeOVL)
+                    return RETRY_NODE;
+            }
+            else if (child != node.child(dirToC)) //this read validates childOVL
+            {
+                if (node.version != nodeOVL)
+                    return RETRY_NODE;
+            }
+            else
+            {
+                if (node.version != nodeOVL)
+                    return RETRY_NODE;
+                //the hop from node to child was valid- from here on only child's version matters
+                Node found = attemptGet(k, child, k < child.key ? LEFT : RIGHT, childOVL);
+                if (found != RETRY_NODE)
+                    return found;
+            }
+        }
+    }
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i to the tree.
+     * returns 0, or -1 if an item with key k already exists in the tree.
+     * (the rebalancing is shared with concurrent writers, so it isn't counted like in AVLTree.insert)
+     * throws NullPointerException if i is null- a null info marks a deleted key.
+     */
+    public int insert(int k, String i)
+    {
+        if (i == null)
+            throw new NullPointerException("info");
+        if (attemptInsert(k, i, this.holder, RIGHT, this.holder.version) == FAILED)
+            return -1;
+        this.size.increment();
+        return 0;
+    }
+
+    //optimistic descent like attemptGet. links a new leaf under the locked parent, or fills in a routing node
+    private int attemptInsert(int k, String i, Node node, int dirToC, long nodeOVL)
+    {
+        while (true)
+        {
+            Node child = node.child(dirToC);
+            if (node.version != nodeOVL)
+                return RETRY;
+            if (child == null)
+            {
+                Node damaged;
+                synchronized (node)
+                {
+                    if (node.version != nodeOVL) //node shrank before we got its lock
+                        return RETRY;
+                    if (node.child(dirToC) != null) //lost a race with another insert- read the child again
+                        continue;
+                    node.setChild(dirToC, new Node(k, i, node));
+                    damaged = fixHeightLocked(node);
+                }
+                fixHeightAndRebalance(damaged);
+                return DONE;
+            }
+            if (k == child.key)
+            {
+                int result = attemptInsertRouting(child, i);
+                if (result != RETRY)
+                    return result;
+                continue; //child was unlinked- node's version tells if we have to back up
+            }
+
+            long childOVL = child.version;
+            if (isShrinkingOrUnlinked(childOVL))
+                waitUntilNotShrinking(child);
+            else if (child == node.child(dirToC))
+            {
+                if (node.version != nodeOVL)
+                    return RETRY;
+                int result = attemptInsert(k, i, child, k < child.key ? LEFT : RIGHT, childOVL);
+                if (result != RETRY)
+                    return result;
+            }
+        }
+    }
+
+    //the key is already in a node- gives it info if it is a routing node
+    private static int attemptInsertRouting(Node node, String i)
+    {
+        if (node.info != null)
+            return FAILED;
+        synchronized (node)
+        {
+            if (isUnlinked(node.version))
+                return RETRY;
+            if (node.info != null)
+                return FAILED;
+            node.info = i;
+            return DONE;
+        }
+    }
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes an item with key k from the tree, if it is there.
+     * returns 0, or -1 if an item with key k was not found in the tree.
+     */
+    public int delete(int k)
+    {
+        if (attemptDelete(k, this.holder, RIGHT, this.holder.version) == FAILED)
+            return -1;
+        this.size.decrement();
+        return 0;
+    }
+
+    //optimistic descent like attemptGet, down to the node with key k
+    private int attemptDelete(int k, Node node, int dirToC, long nodeOVL)
+    {
+        while (true)
+        {
+            Node child = node.child(dirToC);
+            if (node.version != nodeOVL)
+                return RETRY;
+            if (child == null)
+                return FAILED;
+            if (k == child.key)
+            {
+                int result = attemptDeleteNode(node, child);
+                if (result != RETRY)
+                    return result;
+                continue;
+            }
+
+            long childOVL = child.version;
+            if (isShrinkingOrUnlinked(childOVL))
+                waitUntilNotShrinking(child);
+            else if (child == node.child(dirToC))
+            {
+                if (node.version != nodeOVL)
+                    return RETRY;
+                int result = attemptDelete(k, child, k < child.key ? LEFT : RIGHT, childOVL);
+                if (result != RETRY)
+                    return result;
+            }
+        }
+    }
+
+    //deletes node (a child of parent). a node with a missing child is spliced out under both locks,
+    //a node with two children becomes a routing node under its own lock
+    private int attemptDeleteNode(Node parent, Node node)
+    {
+        if (node.info == null)
+            return FAILED;
+        if (node.left != null && node.right != null)
+        {
+            synchronized (node)
+            {
+                if (isUnlinked(node.version) || node.left == null || node.right == null)
+                    return RETRY;
+                if (node.info == null)
+                    return FAILED;
+                node.info = null;
+                return DONE;
+            }
+        }
+
+        Node damaged;
+        synchronized (parent)
+        {
+            if (isUnlinked(parent.version) || node.parent != parent)
+                return RETRY;
+            synchronized (node)
+            {
+                if (node.info == null)
+                    return FAILED;
+                if (!unlinkLocked(parent, node)) //node got a second child- delete it as a routing node
+                    return RETRY;
+            }
+            damaged = fixHeightLocked(parent);
+        }
+        fixHeightAndRebalance(damaged);
+        return DONE;
+    }
+
+    //splices node (with at most one child) out from under parent. both are locked.
+    //returns false if node isn't parent's child anymore or has two children
+    private static boolean unlinkLocked(Node parent, Node node)
+    {
+        if (parent.left != node && parent.right != node)
+            return false;
+        Node left = node.left, right = node.right;
+        if (left != null && right != null)
+            return false;
+
+        Node splice = (left != null) ? left : right;
+        if (parent.left == node)
+            parent.left = splice;
+        else
+            parent.right = splice;
+        if (splice != null)
+            splice.parent = parent;
+
+        node.version = UNLINKED;
+        node.info = null;
+        return true;
+    }
+
+    /**
+     * public String min()
+     *
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     */
+    public String min()
+    {
+        return infoNear(Integer.MIN_VALUE, false, true);
+    }
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     */
+    public String max()
+    {
+        return infoNear(Integer.MAX_VALUE, true, true);
+    }
+
+    //info of the nearest key to k (see nearest), or null if there is none
+    private String infoNear(int k, boolean below, boolean inclusive)
+    {
+        while (true)
+        {
+            Node node = nearest(k, below, inclusive);
+            if (node == null)
+                return null;
+            String info = node.info;
+            if (info != null)
+                return info;
+            k = node.key; //deleted after nearest saw it- look past it
+            inclusive = false;
+        }
+    }
+
+    /**
+     * public IntStream keys(int lo, int hi)
+     *
+     * Returns a sequential stream of the keys in [lo, hi], in ascending order.
+     * Lock-free and weakly consistent- every step is one optimistic descent from the root for the next key,
+     * so a scan of k keys costs O(k log n), not the O(log n + k) of AVLTree's cursors. There are no successor
+     * links to follow- a rotation can move the next key out of the subtree a walk is in, and only a fresh
+     * descent can tell.
+     */
+    public IntStream keys(int lo, int hi)
+    {
+        return StreamSupport.intStream(new KeySpliterator(lo, hi), false);
+    }
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty. weakly consistent, like keys
+     */
+    public int[] keysToArray()
+    {
+        return keys(Integer.MIN_VALUE, Integer.MAX_VALUE).toArray();
+    }
+
+    //one pass over [lo, hi] with nearest(last key, above, exclusive) for every step
+    private class KeySpliterator extends Spliterators.AbstractIntSpliterator
+    {
+        private int next; //the next key to look up
+        private boolean inclusive = true; //next itself was not returned yet
+        private final int hi;
+        private boolean done;
+
+        KeySpliterator(int lo, int hi)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT
+                    | Spliterator.NONNULL | Spliterator.CONCURRENT);
+            this.next = lo;
+            this.hi = hi;
+            this.done = lo > hi;
+        }
+
+        public boolean tryAdvance(IntConsumer action)
+        {
+            if (this.done)
+                return false;
+            Node node = nearest(this.next, false, this.inclusive);
+            if (node == null || node.key > this.hi)
+            {
+                this.done = true;
+                return false;
+            }
+            this.next = node.key;
+            this.inclusive = false;
+            action.accept(node.key);
+            return true;
+        }
+
+        public Comparator<? super Integer> getComparator()
+        {
+            return null; //natural order
+        }
+    }
+
+    //the node with the closest key to k that has info- below k if below (else above it). inclusive- k itself counts
+    private Node nearest(int k, boolean below, boolean inclusive)
+    {
+        while (true)
+        {
+            Node node = attemptNearest(k, below, inclusive, this.holder, null, RIGHT, this.holder.version);
+            if (node == null || node.info != null)
+                return node;
+            k = node.key; //a routing node- the answer is past it
+            inclusive = false;
+        }
+    }
+
+    //optimistic descent like attemptGet, keeping the best candidate seen on the way down
+    private static Node attemptNearest(int k, boolean below, boolean inclusive, Node node, Node best, int dirToC, long nodeOVL)
+    {
+        while (true)
+        {
+            Node child = node.child(dirToC);
+            if (child == null)
+            {
+                if (node.version != nodeOVL)
+                    return RETRY_NODE;
+                return best;
+            }
+
+            long childOVL = child.version;
+            if (isShrinkingOrUnlinked(childOVL))
+            {
+                waitUntilNotShrinking(child);
+                if (node.version != nodeOVL)
+                    return RETRY_NODE;
+            }
+            else if (child != node.child(dirToC))
+            {
+                if (node.version != nodeOVL)
+                    return RETRY_NODE;
+            }
+            else
+            {
+                if (node.version != nodeOVL)
+                    return RETRY_NODE;
+                if (k == child.key && inclusive)
+                    return child;
+
+                //a candidate is on k's side, a closer one can only be between it and k
+                boolean candidate = below ? child.key < k : child.key > k;
+                int dir = below ? (child.key < k ? RIGHT : LEFT) : (child.key > k ? LEFT : RIGHT);
+                Node found = attemptNearest(k, below, inclusive, child, candidate ? child : best, dir, childOVL);
+                if (found != RETRY_NODE)
+                    return found;
+            }
+        }
+    }
+
+    //Returns tree's rank (-1 for an empty tree). exact when no writer is running
+    public int getTreeRank()
+    {
+        Node root = this.holder.right;
+        return height(root);
+    }
+
+    //the root (null for an empty tree), for the invariant checks of the tests. meaningful when no writer is running
+    Node getRoot()
+    {
+        return this.holder.right;
+    }
+
+    //returns true if version says that the node is in a rotation or out of the tree
+    private static boolean isShrinkingOrUnlinked(long version)
+    {
+        return (version & (SHRINKING | UNLINKED)) != 0;
+    }
+
+    private static boolean isUnlinked(long version)
+    {
+        return version == UNLINKED;
+    }
+
+    //waiting for a rotation on node to end. the rotating thread holds node's lock until it does
+    private static void waitUntilNotShrinking(Node node)
+    {
+        long version = node.version;
+        if ((version & SHRINKING) == 0)
+            return;
+        for (int i = 0; i < SPIN_COUNT; i++)
+        {
+            if (node.version != version)
+                return;
+            Thread.onSpinWait();
+        }
+        synchronized (node)
+        {
+            //nothing- only waiting for the lock
+        }
+    }
+
+    //height of node, -1 for a missing child
+    private static int height(Node node)
+    {
+        return (node == null) ? -1 : node.height;
+    }
+
+    //reads node and its children without locks. returns the height node should have,
+    //or what else it needs- a change by another thread comes with its own repair of node, so a stale read is harmless
+    private static int nodeCondition(Node node)
+    {
+        Node left = node.left, right = node.right;
+        if ((left == null || right == null) && node.info == null)
+            return UNLINK_REQUIRED;
+        int leftHeight = height(left), rightHeight = height(right);
+        int diff = leftHeight - rightHeight;
+        if (diff < -1 || diff > 1)
+            return REBALANCE_REQUIRED;
+        int newHeight = Math.max(leftHeight, rightHeight) + 1;
+        return (node.height != newHeight) ? newHeight : NOTHING_REQUIRED;
+    }
+
+    //repairing from node up until nothing is left to repair. locks a node to fix its height,
+    //or a node and its parent to rotate it or splice it out
+    private static void fixHeightAndRebalance(Node node)
+    {
+        ArrayDeque<Node> pending = null; //parents of rotations that handed back a deeper node- revisited after it
+        while (true)
+        {
+            if (node == null || node.parent == null //the holder needs no repair
+                    || isUnlinked(node.version) || nodeCondition(node) == NOTHING_REQUIRED)
+            {
+                if (pending == null || pending.isEmpty())
+                    return;
+                node = pending.pop();
+                continue;
+            }
+
+            int condition = nodeCondition(node);
+            if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED)
+            {
+                synchronized (node)
+                {
+                    node = fixHeightLocked(node);
+                }
+                continue;
+            }
+
+            Node parent = node.parent;
+            synchronized (parent)
+            {
+                if (!isUnlinked(parent.version) && node.parent == parent)
+                {
+                    Node next;
+                    synchronized (node)
+                    {
+                        next = rebalanceLocked(parent, node);
+                    }
+                    //the rotated subtree may have changed height under parent- come back to it
+                    if (next != null && next != parent && next != parent.parent)
+                    {
+                        if (pending == null)
+                            pending = new ArrayDeque<>();
+                        pending.push(parent);
+                    }
+                    node = next;
+                }
+                //else node moved- read its parent again
+            }
+        }
+    }
+
+    //fixing the height of a locked node. returns the next node to repair, or null if there is none
+    private static Node fixHeightLocked(Node node)
+    {
+        int condition = nodeCondition(node);
+        switch (condition)
+        {
+            case REBALANCE_REQUIRED:
+            case UNLINK_REQUIRED:
+                return node; //needs its parent's lock too
+            case NOTHING_REQUIRED:
+                return null;
+            default:
+                node.height = condition;
+                return node.parent;
+        }
+    }
+
+    //rotating or splicing out node. parent and node are locked. returns the next node to repair, or null
+    private static Node rebalanceLocked(Node parent, Node node)
+    {
+        Node left = node.left, right = node.right;
+        if ((left == null || right == null) && node.info == null)
+        {
+            if (unlinkLocked(parent, node))
+                return fixHeightLocked(parent);
+            return node;
+        }
+
+        int leftHeight = height(left), rightHeight = height(right);
+        int newHeight = Math.max(leftHeight, rightHeight) + 1;
+        int diff = leftHeight - rightHeight;
+        if (diff > 1)
+            return rebalanceToRight(parent, node, left, rightHeight);
+        if (diff < -1)
+            return rebalanceToLeft(parent, node, right, leftHeight);
+        if (node.height != newHeight)
+        {
+            node.height = newHeight;
+            return fixHeightLocked(parent);
+        }
+        return null;
+    }
+
+    //node's left child is too high- right rotation, or a double rotation if left's right child is the higher one
+    private static Node rebalanceToRight(Node parent, Node node, Node left, int rightHeight)
+    {
+        synchronized (left)
+        {
+            int leftHeight = left.height;
+            if (leftHeight - rightHeight <= 1) //changed before we got its lock
+                return node;
+            Node leftRight = left.right;
+            int leftLeftHeight = height(left.left);
+            int leftRightHeight = height(leftRight);
+            if (leftLeftHeight >= leftRightHeight)
+                return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+
+            synchronized (leftRight)
+            {
+                leftRightHeight = leftRight.height;
+                if (leftLeftHeight >= leftRightHeight)
+                    return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+
+                //double rotation only if it leaves left balanced- otherwise left is fixed on its own first
+                int leftRightLeftHeight = height(leftRight.left);
+                int diff = leftLeftHeight - leftRightLeftHeight;
+                if (diff >= -1 && diff <= 1)
+                    return rotateRightOverLeft(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightLeftHeight);
+            }
+            return rebalanceToLeft(node, left, leftRight, leftLeftHeight);
+        }
+    }
+
+    //mirror of rebalanceToRight
+    private static Node rebalanceToLeft(Node parent, Node node, Node right, int leftHeight)
+    {
+        synchronized (right)
+        {
+            int rightHeight = right.height;
+            if (rightHeight - leftHeight <= 1)
+                return node;
+            Node rightLeft = right.left;
+            int rightRightHeight = height(right.right);
+            int rightLeftHeight = height(rightLeft);
+            if (rightRightHeight >= rightLeftHeight)
+                return rotateLeft(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight);
+
+            synchronized (rightLeft)
+            {
+                rightLeftHeight = rightLeft.height;
+                if (rightRightHeight >= rightLeftHeight)
+                    return rotateLeft(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight);
+
+                int rightLeftRightHeight = height(rightLeft.right);
+                int diff = rightRightHeight - rightLeftRightHeight;
+                if (diff >= -1 && diff <= 1)
+                    return rotateLeftOverRight(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftRightHeight);
+            }
+            return rebalanceToRight(node, right, rightLeft, rightRightHeight);
+        }
+    }
+
+    //right rotation on node. parent, node and left are locked. node's subtree shrinks (loses left's left subtree).
+    //returns the deepest node that is still damaged, fixing what it can with the locks it has
+    private static Node rotateRight(Node parent, Node node, Node left, int rightHeight, int leftLeftHeight, Node leftRight, int leftRightHeight)
+    {
+        long nodeOVL = node.version;
+        Node parentLeft = parent.left;
+
+        node.version = beginShrink(nodeOVL);
+
+        node.left = leftRight;
+        if (leftRight != null)
+            leftRight.parent = node;
+        left.right = node;
+        node.parent = left;
+        if (parentLeft == node)
+            parent.left = left;
+        else
+            parent.right = left;
+        left.parent = parent;
+
+        int nodeHeight = Math.max(leftRightHeight, rightHeight) + 1;
+        node.height = nodeHeight;
+        left.height = Math.max(leftLeftHeight, nodeHeight) + 1;
+
+        node.version = endShrink(nodeOVL);
+
+        int nodeDiff = leftRightHeight - rightHeight;
+        if (nodeDiff < -1 || nodeDiff > 1) //node needs another rotation
+            return node;
+        if ((leftRight == null || node.right == null) && node.info == null) //node is a routing node to splice out
+            return node;
+        int leftDiff = leftLeftHeight - nodeHeight;
+        if (leftDiff < -1 || leftDiff > 1)
+            return left;
+        if (left.left == null && left.info == null)
+            return left;
+        return fixHeightLocked(parent);
+    }
+
+    //mirror of rotateRight
+    private static Node rotateLeft(Node parent, Node node, Node right, int leftHeight, int rightRightHeight, Node rightLeft, int rightLeftHeight)
+    {
+        long nodeOVL = node.version;
+        Node parentLeft = parent.left;
+
+        node.version = beginShrink(nodeOVL);
+
+        node.right = rightLeft;
+        if (rightLeft != null)
+            rightLeft.parent = node;
+        right.left = node;
+        node.parent = right;
+        if (parentLeft == node)
+            parent.left = right;
+        else
+            parent.right = right;
+        right.parent = parent;
+
+        int nodeHeight = Math.max(rightLeftHeight, leftHeight) + 1;
+        node.height = nodeHeight;
+        right.height = Math.max(rightRightHeight, nodeHeight) + 1;
+
+        node.version = endShrink(nodeOVL);
+
+        int nodeDiff = rightLeftHeight - leftHeight;
+        if (nodeDiff < -1 || nodeDiff > 1)
+            return node;
+        if ((rightLeft == null || node.left == null) && node.info == null)
+            return node;
+        int rightDiff = rightRightHeight - nodeHeight;
+        if (rightDiff < -1 || rightDiff > 1)
+            return right;
+        if (right.right == null && right.info == null)
+            return right;
+        return fixHeightLocked(parent);
+    }
+
+    //left rotation on left, then right rotation on node. parent, node, left and leftRight are locked.
+    //both node and left shrink
+    private static Node rotateRightOverLeft(Node parent, Node node, Node left, int rightHeight, int leftLeftHeight, Node leftRight, int leftRightLeftHeight)
+    {
+        long nodeOVL = node.version;
+        long leftOVL = left.version;
+        Node parentLeft = parent.left;
+        Node leftLeft = left.left;
+        Node leftRightLeft = leftRight.left;
+        Node leftRightRight = leftRight.right;
+        int leftRightRightHeight = height(leftRightRight);
+
+        node.version = beginShrink(nodeOVL);
+        left.version = beginShrink(leftOVL);
+
+        node.left = leftRightRight;
+        if (leftRightRight != null)
+            leftRightRight.parent = node;
+        left.right = leftRightLeft;
+        if (leftRightLeft != null)
+            leftRightLeft.parent = left;
+        leftRight.left = left;
+        left.parent = leftRight;
+        leftRight.right = node;
+        node.parent = leftRight;
+        if (parentLeft == node)
+            parent.left = leftRight;
+        else
+            parent.right = leftRight;
+        leftRight.parent = parent;
+
+        int nodeHeight = Math.max(leftRightRightHeight, rightHeight) + 1;
+        node.height = nodeHeight;
+        int leftNewHeight = Math.max(leftLeftHeight, leftRightLeftHeight) + 1;
+        left.height = leftNewHeight;
+        leftRight.height = Math.max(leftNewHeight, nodeHeight) + 1;
+
+        node.version = endShrink(nodeOVL);
+        left.version = endShrink(leftOVL);
+
+        //a routing left that lost a child is spliced out now- it is locked, and so is its new parent
+        if ((leftLeft == null || leftRightLeft == null) && left.info == null)
+        {
+            unlinkLocked(leftRight, left);
+            leftNewHeight = height(leftRight.left);
+            leftRight.height = Math.max(leftNewHeight, nodeHeight) + 1;
+        }
+
+        int nodeDiff = leftRightRightHeight - rightHeight;
+        if (nodeDiff < -1 || nodeDiff > 1)
+            return node;
+        if ((leftRightRight == null || node.right == null) && node.info == null)
+            return node;
+        int topDiff = leftNewHeight - nodeHeight;
+        if (topDiff < -1 || topDiff > 1)
+            return leftRight;
+        return fixHeightLocked(parent);
+    }
+
+    //mirror of rotateRightOverLeft
+    private static Node rotateLeftOverRight(Node parent, Node node, Node right, int leftHeight, int rightRightHeight, Node rightLeft, int rightLeftRightHeight)
+    {
+        long nodeOVL = node.version;
+        long rightOVL = right.version;
+        Node parentLeft = parent.left;
+        Node rightRight = right.right;
+        Node rightLeftLeft = rightLeft.left;
+        Node rightLeftRight = rightLeft.right;
+        int rightLeftLeftHeight = height(rightLeftLeft);
+
+        node.version = beginShrink(nodeOVL);
+        right.version = beginShrink(rightOVL);
+
+        node.right = rightLeftLeft;
+        if (rightLeftLeft != null)
+            rightLeftLeft.parent = node;
+        right.left = rightLeftRight;
+        if (rightLeftRight != null)
+            rightLeftRight.parent = right;
+        rightLeft.right = right;
+        right.parent = rightLeft;
+        rightLeft.left = node;
+        node.parent = rightLeft;
+        if (parentLeft == node)
+            parent.left = rightLeft;
+        else
+            parent.right = rightLeft;
+        rightLeft.parent = parent;
+
+        int nodeHeight = Math.max(rightLeftLeftHeight, leftHeight) + 1;
+        node.height = nodeHeight;
+        int rightNewHeight = Math.max(rightRightHeight, rightLeftRightHeight) + 1;
+        right.height = rightNewHeight;
+        rightLeft.height = Math.max(rightNewHeight, nodeHeight) + 1;
+
+        node.version = endShrink(nodeOVL);
+        right.version = endShrink(rightOVL);
+
+        if ((rightRight == null || rightLeftRight == null) && right.info == null)
+        {
+            unlinkLocked(rightLeft, right);
+            rightNewHeight = height(rightLeft.right);
+            rightLeft.height = Math.max(rightNewHeight, nodeHeight) + 1;
+        }
+
+        int nodeDiff = rightLeftLeftHeight - leftHeight;
+        if (nodeDiff < -1 || nodeDiff > 1)
+            return node;
+        if ((rightLeftLeft == null || node.left == null) && node.info == null)
+            return node;
+        int topDiff = rightNewHeight - nodeHeight;
+        if (topDiff < -1 || topDiff > 1)
+            return rightLeft;
+        return fixHeightLocked(parent);
+    }
+
+    private static long beginShrink(long version)
+    {
+        return version | SHRINKING;
+    }
+
+    //clears SHRINKING and counts the shrink, so readers that saw the old version retry
+    private static long endShrink(long version)
+    {
+        return (version & ~SHRINKING) + SHRINK_COUNT;
+    }
+
+    //a node of the concurrent tree. missing children are null (no shared virtual node- it would be a contended lock)
+    static final class Node
+    {
+        final int key;
+        volatile String info; //null for a routing node (deleted, still used as a separator)
+        volatile int height;
+        volatile long version;
+        volatile Node left, right, parent;
+
+        //constructor for a leaf under parent
+        Node(int key, String info, Node parent)
+        {
+            this.key = key;
+            this.info = info;
+            this.parent = parent;
+            this.height = 0;
+        }
+
+        Node child(int dir)
+        {
+            return (dir == LEFT) ? this.left : this.right;
+        }
+
+        void setChild(int dir, Node node)
+        {
+            if (dir == LEFT)
+                this.left = node;
+            else
+                this.right = node;
+        }
+    }
+}
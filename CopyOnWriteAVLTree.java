@@ -0,0 +1,226 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * CopyOnWriteAVLTree
+ *
+ * An AVL tree for read-mostly workloads. Writers change a private PersistentAVLTree- each write
+ * copies the O(log n) nodes on its path- and from time to time publish a snapshot of it with one
+ * volatile write; readers run on the last published snapshot, whose nodes are immutable- no locks.
+ *
+ * A snapshot is published after publishEvery writes, or on the first write that comes maxDelay
+ * or more after the oldest unpublished one, or on publish(). It shares the private tree's nodes,
+ * so publishing is O(1) and publishEvery only sets how stale the readers' view may get.
+ * When the writes stop, unpublished ones wait for publish()/ publishIfStale()- a scheduled
+ * publishIfStale bounds the staleness by maxDelay plus its period.
+ *
+ */
+public class CopyOnWriteAVLTree
+{
+    private final PersistentAVLTree primary = new PersistentAVLTree(); //the writers' tree, guarded by this
+    private volatile PersistentAVLTree replica = new PersistentAVLTree(); //the readers' snapshot, never changed once published
+
+    private final int publishEvery;
+    private final long maxDelayNanos;
+
+    //writes since the last publish, and when the first of them was made
+    private int pending;
+    private long firstPendingNanos;
+
+    //publish metrics, guarded by this
+    private long publishCount;
+    private long totalPublishNanos, maxPublishNanos, lastPublishNanos;
+    private volatile long lastPublishedAt = System.nanoTime();
+
+    //constructor for a tree that publishes after publishEvery writes, or once a write is maxDelay old (0- on every write).
+    //there is no default- publishEvery 1 (or maxDelay 0) shows every write at once, larger values batch them
+    public CopyOnWriteAVLTree(int publishEvery, long maxDelay, TimeUnit unit)
+    {
+        if (publishEvery < 1)
+            throw new IllegalArgumentException("publishEvery must be at least 1: " + publishEvery);
+        if (maxDelay < 0)
+            throw new IllegalArgumentException("maxDelay must not be negative: " + maxDelay);
+        this.publishEvery = publishEvery;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k in the published tree,
+     * otherwise, returns null
+     */
+    public String search(int k)
+    {
+        return this.replica.search(k);
+    }
+
+    /**
+     * public boolean contains(int k)
+     *
+     * returns true if and only if the published tree has an item with key k
+     */
+    public boolean contains(int k)
+    {
+        return this.replica.contains(k);
+    }
+
+    /**
+     * public String min()
+     *
+     * Returns the info of the item with the smallest key in the published tree,
+     * or null if it is empty
+     */
+    public String min()
+    {
+        return this.replica.min();
+    }
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the published tree,
+     * or null if it is empty
+     */
+    public String max()
+    {
+        return this.replica.max();
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of items in the published tree.
+     */
+    public int size()
+    {
+        return this.replica.size();
+    }
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array of the keys in the published tree.
+     */
+    public int[] keysToArray()
+    {
+        return this.replica.keysToArray();
+    }
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i to the private tree, and publishes it if it is due.
+     * returns PersistentAVLTree.insert's result- -1 if an item with key k already exists (published or not).
+     */
+    public synchronized int insert(int k, String i)
+    {
+        int result = this.primary.insert(k, i);
+        if (result != -1)
+            written();
+        return result;
+    }
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes an item with key k from the private tree, if it is there, and publishes it if it is due.
+     * returns PersistentAVLTree.delete's result- -1 if an item with key k was not found.
+     */
+    public synchronized int delete(int k)
+    {
+        int result = this.primary.delete(k);
+        if (result != -1)
+            written();
+        return result;
+    }
+
+    //counting a write and publishing if enough writes are waiting, or the oldest of them waited long enough
+    private void written()
+    {
+        long now = System.nanoTime();
+        if (this.pending == 0)
+            this.firstPendingNanos = now;
+        this.pending++;
+        if (this.pending >= this.publishEvery || now - this.firstPendingNanos >= this.maxDelayNanos)
+            publish();
+    }
+
+    /**
+     * public void publish()
+     *
+     * publishes the writes made so far, if there are any.
+     */
+    public synchronized void publish()
+    {
+        if (this.pending == 0)
+            return;
+        long start = System.nanoTime();
+        this.replica = this.primary.snapshot(); //O(1)- the nodes are immutable and shared, not copied
+        long end = System.nanoTime();
+
+        this.pending = 0;
+        this.lastPublishedAt = end;
+        this.publishCount++;
+        this.lastPublishNanos = end - start;
+        this.totalPublishNanos += this.lastPublishNanos;
+        this.maxPublishNanos = Math.max(this.maxPublishNanos, this.lastPublishNanos);
+    }
+
+    /**
+     * public boolean publishIfStale()
+     *
+     * publishes if the oldest unpublished write is maxDelay old or more. for a periodic task,
+     * so that the last writes before a pause don't stay unpublished.
+     * returns true if it published.
+     */
+    public synchronized boolean publishIfStale()
+    {
+        if (this.pending == 0 || System.nanoTime() - this.firstPendingNanos < this.maxDelayNanos)
+            return false;
+        publish();
+        return true;
+    }
+
+    //Returns the number of writes that readers don't see yet
+    public synchronized int pendingWrites()
+    {
+        return this.pending;
+    }
+
+    //Returns how long the oldest unpublished write has waited, in nanoseconds (0 if none is waiting)
+    public synchronized long stalenessNanos()
+    {
+        return (this.pending == 0) ? 0 : System.nanoTime() - this.firstPendingNanos;
+    }
+
+    //Returns the nanoseconds since the last publish (or since the tree was made)
+    public long nanosSinceLastPublish()
+    {
+        return System.nanoTime() - this.lastPublishedAt;
+    }
+
+    //Returns the number of publishes so far
+    public synchronized long publishCount()
+    {
+        return this.publishCount;
+    }
+
+    //Returns the time the last publish took (snapshot and swap), in nanoseconds
+    public synchronized long lastPublishNanos()
+    {
+        return this.lastPublishNanos;
+    }
+
+    //Returns the longest publish so far, in nanoseconds
+    public synchronized long maxPublishNanos()
+    {
+        return this.maxPublishNanos;
+    }
+
+    //Returns the average publish time, in nanoseconds (0 before the first publish)
+    public synchronized long averagePublishNanos()
+    {
+        return (this.publishCount == 0) ? 0 : this.totalPublishNanos / this.publishCount;
+    }
+}
@@ -0,0 +1,855 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * DurableAVLTree
+ *
+ * An AVLTree whose writes survive a crash. Every insert, delete, split and join is appended
+ * to a write-ahead log in the tree's directory, and opening the directory recovers the tree:
+ * the newest snapshot (an AVLTreeFile) is loaded and the log written after it is replayed.
+ * A record cut short by a crash (or failing its CRC) ends the log- it and anything after it
+ * are dropped.
+ *
+ * Group commit: a write is encoded into an in-memory buffer under the tree's lock, and
+ * one fsync makes every write buffered so far durable, so writers waiting at the same time
+ * share one fsync. With syncEvery 1 a write returns only when it is durable. With a larger
+ * syncEvery writes return once buffered, and the log is synced after syncEvery writes, or on
+ * the first write that comes maxDelay or more after the oldest unsynced one, or on sync()/
+ * syncIfStale()- a crash loses the unsynced writes. split and join always wait for the fsync.
+ * Readers see a write as soon as it is buffered, before it is durable.
+ *
+ * compact() folds the log into a new snapshot and starts an empty log; writers wait while
+ * the snapshot is written. Directory files: snapshot-g.avl and wal-g.log for generation g
+ * (generation 0 has no snapshot- the empty tree).
+ *
+ * After an IOException while logging, the tree's memory may be ahead of its log, so it refuses
+ * every write after it (with an IOException)- reopen the directory to recover.
+ *
+ */
+public class DurableAVLTree implements Closeable
+{
+    //log record types
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+    private static final byte SPLIT = 3; //keeps the keys below x
+    private static final byte JOIN = 4; //x, its info, and the joined tree in the AVLTreeFile format
+
+    private static final int RECORD_HEADER = 8; //payload length and CRC32, 4 bytes each
+
+    private static final AtomicLong ids = new AtomicLong(); //for the lock order of join
+    private final long id = ids.incrementAndGet();
+
+    private final Path dir;
+    private final int syncEvery;
+    private final long maxDelayNanos;
+
+    //guarded by this
+    private AVLTree tree;
+    private LogBuffer buffer = new LogBuffer(); //records not written to the log file yet
+    private long appended; //records appended since the tree was opened
+    private int unsynced;
+    private long firstUnsyncedNanos;
+    private long generation;
+    private boolean closed;
+
+    //taken before this, never after it. guards the log file and the spare buffer;
+    //the log/ generation are changed holding both
+    private final Object syncLock = new Object();
+    private LogBuffer spare = new LogBuffer();
+    private FileChannel log;
+    private long logLength;
+    private long syncCount;
+    private volatile long durable; //the last record known to be durable
+    private volatile IOException failure;
+
+    //constructor for a tree in dir that syncs on every write
+    public DurableAVLTree(Path dir) throws IOException
+    {
+        this(dir, 1, 0, TimeUnit.NANOSECONDS);
+    }
+
+    //constructor for a tree in dir (recovered from its files, or a new empty one) that syncs after
+    //syncEvery writes, or once an unsynced write is maxDelay old (0- on every write)
+    public DurableAVLTree(Path dir, int syncEvery, long maxDelay, TimeUnit unit) throws IOException
+    {
+        this(dir, syncEvery, maxDelay, unit, null);
+    }
+
+    private DurableAVLTree(Path dir, int syncEvery, long maxDelay, TimeUnit unit, AVLTree initial) throws IOException
+    {
+        if (syncEvery < 1)
+            throw new IllegalArgumentException("syncEvery must be at least 1: " + syncEvery);
+        if (maxDelay < 0)
+            throw new IllegalArgumentException("maxDelay must not be negative: " + maxDelay);
+        this.dir = dir;
+        this.syncEvery = syncEvery;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+
+        Files.createDirectories(dir);
+        if (initial == null)
+            recover();
+        else
+        {
+            checkNoTree(dir);
+            writeSnapshot(1, initial);
+            this.tree = initial;
+            this.generation = 1;
+        }
+        deleteOtherGenerations();
+        this.log = FileChannel.open(logPath(this.generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.logLength = this.log.size();
+        this.log.position(this.logLength);
+    }
+
+    /**
+     * public static DurableAVLTree create(Path dir, AVLTree tree, int syncEvery, long maxDelay, TimeUnit unit)
+     *
+     * returns a new durable tree in dir with tree's items, written as its first snapshot-
+     * O(n), no log records. tree is taken over and must not be used after the call.
+     * throws FileAlreadyExistsException if dir already holds a tree.
+     */
+    public static DurableAVLTree create(Path dir, AVLTree tree, int syncEvery, long maxDelay, TimeUnit unit) throws IOException
+    {
+        return new DurableAVLTree(dir, syncEvery, maxDelay, unit, tree);
+    }
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree,
+     * otherwise, returns null
+     */
+    public synchronized String search(int k)
+    {
+        return this.tree.search(k);
+    }
+
+    /**
+     * public boolean contains(int k)
+     *
+     * returns true if and only if the tree has an item with key k
+     */
+    public synchronized boolean contains(int k)
+    {
+        return this.tree.contains(k);
+    }
+
+    /**
+     * public String min()
+     *
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     */
+    public synchronized String min()
+    {
+        return this.tree.min();
+    }
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     */
+    public synchronized String max()
+    {
+        return this.tree.max();
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of items in the tree.
+     */
+    public synchronized int size()
+    {
+        return this.tree.size();
+    }
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     */
+    public synchronized int[] keysToArray()
+    {
+        return this.tree.keysToArray();
+    }
+
+    /**
+     * public String[] infoToArray()
+     *
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys, or an empty array if the tree is empty.
+     */
+    public synchronized String[] infoToArray()
+    {
+        return this.tree.infoToArray();
+    }
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i, and logs it.
+     * returns AVLTree.insert's result- -1 if an item with key k already exists (nothing is logged then).
+     */
+    public int insert(int k, String i) throws IOException
+    {
+        int result;
+        long record;
+        boolean due;
+        synchronized (this)
+        {
+            checkWritable();
+            result = this.tree.insert(k, i);
+            if (result == -1)
+                return -1;
+            int start = this.buffer.begin(INSERT);
+            this.buffer.writeKey(k);
+            this.buffer.writeInfo(i);
+            this.buffer.end(start);
+            record = ++this.appended;
+            due = written();
+        }
+        if (due)
+            syncUpTo(record);
+        return result;
+    }
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes an item with key k from the tree if it is there, and logs it.
+     * returns AVLTree.delete's result- -1 if an item with key k was not found (nothing is logged then).
+     */
+    public int delete(int k) throws IOException
+    {
+        int result;
+        long record;
+        boolean due;
+        synchronized (this)
+        {
+            checkWritable();
+            result = this.tree.delete(k);
+            if (result == -1)
+                return -1;
+            int start = this.buffer.begin(DELETE);
+            this.buffer.writeKey(k);
+            this.buffer.end(start);
+            record = ++this.appended;
+            due = written();
+        }
+        if (due)
+            syncUpTo(record);
+        return result;
+    }
+
+    /**
+     * public DurableAVLTree split(int x, Path dir)
+     *
+     * splits the tree by the key x: the items with smaller keys stay in this tree, the items with
+     * larger keys move to a new durable tree in dir (written as its snapshot), which is returned.
+     * x's item is dropped, as in AVLTree.split. returns once the split is durable.
+     * a crash before that may leave the larger items in both directories- never in neither.
+     * precondition: search(x) != null, and dir doesn't hold a tree
+     */
+    public DurableAVLTree split(int x, Path dir) throws IOException
+    {
+        DurableAVLTree bigger;
+        long record;
+        synchronized (this)
+        {
+            checkWritable();
+            if (!this.tree.contains(x))
+                throw new IllegalArgumentException("split key " + x + " is not in the tree");
+            checkNoTree(dir);
+            AVLTree[] parts = this.tree.split(x);
+            this.tree = parts[0];
+            try
+            {
+                bigger = new DurableAVLTree(dir, this.syncEvery, this.maxDelayNanos, TimeUnit.NANOSECONDS, parts[1]);
+            }
+            catch (IOException e)
+            {
+                this.failure = e; //the larger items are only in memory now- and in this tree's log
+                throw e;
+            }
+            int start = this.buffer.begin(SPLIT);
+            this.buffer.writeKey(x);
+            this.buffer.end(start);
+            record = ++this.appended;
+            written();
+        }
+        syncUpTo(record);
+        return bigger;
+    }
+
+    /**
+     * public int join(int x, String info, DurableAVLTree t)
+     *
+     * joins t and an item with key x and info info into this tree, as in AVLTree.join,
+     * and deletes t's files once the join is durable- t is closed.
+     * a crash before that may leave t's items in both directories- never in neither.
+     * Returns AVLTree.join's result.
+     * precondition: keys(x,t) < keys() or keys(x,t) > keys(), with x between t's keys and this tree's
+     */
+    public int join(int x, String info, DurableAVLTree t) throws IOException
+    {
+        if (t == this)
+            throw new IllegalArgumentException("cannot join a tree with itself");
+        DurableAVLTree first = (this.id < t.id) ? this : t; //one lock order for every pair of trees
+        DurableAVLTree second = (first == this) ? t : this;
+        int cost;
+        long record;
+        synchronized (first)
+        {
+            synchronized (second)
+            {
+                this.checkWritable();
+                t.checkWritable();
+                checkJoinable(x, this.tree, t.tree);
+                int start = this.buffer.begin(JOIN);
+                this.buffer.writeKey(x);
+                this.buffer.writeInfo(info);
+                AVLTreeFile.write(t.tree, this.buffer);
+                this.buffer.end(start);
+                record = ++this.appended;
+                written();
+
+                AVLTree.AVLNode node = new AVLTree.AVLNode(x, info, AVLTree.AVLNode.virtual, AVLTree.AVLNode.virtual, null);
+                cost = this.tree.join(node, t.tree);
+                t.closed = true;
+            }
+        }
+        syncUpTo(record);
+        t.deleteFiles();
+        return cost;
+    }
+
+    //throws IllegalArgumentException unless x fits between the keys of small and big, in one of their orders
+    private static void checkJoinable(int x, AVLTree a, AVLTree b)
+    {
+        int aSize = a.size();
+        int bSize = b.size();
+        boolean aBelow = (aSize == 0 || a.select(aSize - 1) < x) && (bSize == 0 || x < b.select(0));
+        boolean aAbove = (bSize == 0 || b.select(bSize - 1) < x) && (aSize == 0 || x < a.select(0));
+        if (!aBelow && !aAbove)
+            throw new IllegalArgumentException("join key " + x + " is not between the trees' keys");
+    }
+
+    //counting a write, returns true if the log is due to be synced
+    private boolean written()
+    {
+        long now = System.nanoTime();
+        if (this.unsynced == 0)
+            this.firstUnsyncedNanos = now;
+        this.unsynced++;
+        return this.unsynced >= this.syncEvery || now - this.firstUnsyncedNanos >= this.maxDelayNanos;
+    }
+
+    private void checkWritable() throws IOException
+    {
+        if (this.closed)
+            throw new IllegalStateException("the tree in " + this.dir + " is closed");
+        if (this.failure != null)
+            throw new IOException("the log in " + this.dir + " failed- reopen the tree to recover", this.failure);
+    }
+
+    /**
+     * public void sync()
+     *
+     * makes every write so far durable.
+     */
+    public void sync() throws IOException
+    {
+        long record;
+        synchronized (this)
+        {
+            record = this.appended;
+        }
+        syncUpTo(record);
+    }
+
+    /**
+     * public boolean syncIfStale()
+     *
+     * syncs if the oldest unsynced write is maxDelay old or more. for a periodic task,
+     * so that the last writes before a pause don't stay unsynced.
+     * returns true if it synced.
+     */
+    public boolean syncIfStale() throws IOException
+    {
+        long record;
+        synchronized (this)
+        {
+            if (this.unsynced == 0 || System.nanoTime() - this.firstUnsyncedNanos < this.maxDelayNanos)
+                return false;
+            record = this.appended;
+        }
+        syncUpTo(record);
+        return true;
+    }
+
+    //group commit- writes every buffered record to the log and fsyncs it, unless record is durable already.
+    //writers keep buffering into the other buffer meanwhile, and the next sync takes them all at once
+    private void syncUpTo(long record) throws IOException
+    {
+        synchronized (this.syncLock)
+        {
+            if (this.durable >= record)
+                return;
+            LogBuffer full;
+            long upTo;
+            synchronized (this)
+            {
+                if (this.closed) //closed by close() (synced then) or by a join (its records are in the other tree)
+                    return;
+                checkWritable();
+                full = this.buffer;
+                this.buffer = this.spare;
+                this.spare = full;
+                upTo = this.appended;
+                this.unsynced = 0;
+            }
+            try
+            {
+                ByteBuffer bytes = ByteBuffer.wrap(full.array(), 0, full.size());
+                while (bytes.hasRemaining())
+                    this.log.write(bytes);
+                this.log.force(false);
+            }
+            catch (IOException e)
+            {
+                this.failure = e;
+                throw e;
+            }
+            this.logLength += full.size();
+            full.reset();
+            this.syncCount++;
+            this.durable = upTo;
+        }
+    }
+
+    /**
+     * public void compact()
+     *
+     * writes the tree as a new snapshot and starts a new, empty log, then deletes the old files.
+     * writers wait until it is done. if writing the snapshot fails the old files stay in use.
+     */
+    public void compact() throws IOException
+    {
+        synchronized (this.syncLock)
+        {
+            synchronized (this)
+            {
+                checkWritable();
+                long next = this.generation + 1;
+                writeSnapshot(next, this.tree);
+
+                //the snapshot has every write- buffered ones included- so the old log is not needed any more
+                FileChannel newLog;
+                try
+                {
+                    newLog = FileChannel.open(logPath(next), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+                }
+                catch (IOException e)
+                {
+                    this.failure = e;
+                    throw e;
+                }
+                FileChannel oldLog = this.log;
+                long old = this.generation;
+                this.log = newLog;
+                this.logLength = 0;
+                this.generation = next;
+                this.buffer.reset();
+                this.unsynced = 0;
+                this.durable = this.appended;
+                oldLog.close();
+                Files.deleteIfExists(logPath(old));
+                Files.deleteIfExists(snapshotPath(old));
+            }
+        }
+    }
+
+    /**
+     * public void close()
+     *
+     * syncs the log and closes it. the tree refuses writes after it.
+     */
+    public void close() throws IOException
+    {
+        synchronized (this.syncLock)
+        {
+            try
+            {
+                if (this.failure == null)
+                    sync();
+            }
+            finally
+            {
+                synchronized (this)
+                {
+                    this.closed = true;
+                }
+                this.log.close();
+            }
+        }
+    }
+
+    //closing the log of a tree that was joined into another, and deleting its files
+    private void deleteFiles() throws IOException
+    {
+        synchronized (this.syncLock)
+        {
+            this.log.close();
+            Files.deleteIfExists(logPath(this.generation));
+            Files.deleteIfExists(snapshotPath(this.generation));
+        }
+    }
+
+    //Returns the number of writes that may not be durable yet
+    public synchronized int unsyncedWrites()
+    {
+        return this.unsynced;
+    }
+
+    //Returns the number of records appended since the tree was opened
+    public synchronized long appendedRecords()
+    {
+        return this.appended;
+    }
+
+    //Returns the number of fsyncs of the log since the tree was opened- appendedRecords() / syncCount() is the group size
+    public long syncCount()
+    {
+        synchronized (this.syncLock)
+        {
+            return this.syncCount;
+        }
+    }
+
+    //Returns the length of the current log file, in bytes
+    public long logLength()
+    {
+        synchronized (this.syncLock)
+        {
+            return this.logLength;
+        }
+    }
+
+    //Returns the generation of the current snapshot and log (0 before the first compaction)
+    public synchronized long generation()
+    {
+        return this.generation;
+    }
+
+    private Path snapshotPath(long generation)
+    {
+        return this.dir.resolve("snapshot-" + generation + ".avl");
+    }
+
+    private Path logPath(long generation)
+    {
+        return this.dir.resolve("wal-" + generation + ".log");
+    }
+
+    //returns the generation in a snapshot/ log file name, or -1 for other files
+    private static long generationOf(Path file)
+    {
+        String name = file.getFileName().toString();
+        String digits;
+        if (name.startsWith("snapshot-") && name.endsWith(".avl"))
+            digits = name.substring("snapshot-".length(), name.length() - ".avl".length());
+        else if (name.startsWith("wal-") && name.endsWith(".log"))
+            digits = name.substring("wal-".length(), name.length() - ".log".length());
+        else
+            return -1;
+        try
+        {
+            return Long.parseLong(digits);
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    private static void checkNoTree(Path dir) throws IOException
+    {
+        if (!Files.isDirectory(dir))
+            return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+        {
+            for (Path file : files)
+                if (generationOf(file) >= 0)
+                    throw new FileAlreadyExistsException(dir.toString(), null, "already holds a tree");
+        }
+    }
+
+    //loading the newest snapshot and replaying its log, cutting off a torn tail
+    private void recover() throws IOException
+    {
+        long newest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "snapshot-*.avl"))
+        {
+            for (Path file : files)
+                newest = Math.max(newest, generationOf(file));
+        }
+        this.generation = newest;
+        this.tree = (newest == 0) ? new AVLTree() : AVLTreeFile.read(snapshotPath(newest));
+
+        Path wal = logPath(newest);
+        if (!Files.exists(wal))
+            return;
+        long length = Files.size(wal);
+        long valid = replay(wal, length);
+        if (valid < length)
+            try (FileChannel channel = FileChannel.open(wal, StandardOpenOption.WRITE))
+            {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+    }
+
+    //applies the records of wal to the tree, returns the length of its valid prefix
+    private long replay(Path wal, long length) throws IOException
+    {
+        long valid = 0;
+        byte[] payload = new byte[256];
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(wal), 1 << 16)))
+        {
+            while (true)
+            {
+                int size, expected;
+                try
+                {
+                    size = in.readInt();
+                    expected = in.readInt();
+                    if (size < 1 || size > length - valid - RECORD_HEADER)
+                        return valid;
+                    if (payload.length < size)
+                        payload = new byte[Math.max(size, 2 * payload.length)];
+                    in.readFully(payload, 0, size);
+                }
+                catch (EOFException e)
+                {
+                    return valid;
+                }
+                crc.reset();
+                crc.update(payload, 0, size);
+                if ((int) crc.getValue() != expected)
+                    return valid;
+                apply(ByteBuffer.wrap(payload, 0, size), wal, valid);
+                valid += RECORD_HEADER + size;
+            }
+        }
+    }
+
+    //applies one record- a record that passed its CRC and doesn't decode is a bug or a newer format, not a torn write
+    private void apply(ByteBuffer record, Path wal, long offset) throws IOException
+    {
+        try
+        {
+            byte type = record.get();
+            int key = readKey(record);
+            switch (type)
+            {
+                case INSERT:
+                    this.tree.insert(key, readInfo(record));
+                    break;
+                case DELETE:
+                    this.tree.delete(key);
+                    break;
+                case SPLIT:
+                    this.tree = this.tree.split(key)[0];
+                    break;
+                case JOIN:
+                    String info = readInfo(record);
+                    AVLTree t = AVLTreeFile.read(record.slice(), wal + " at " + offset);
+                    this.tree.join(new AVLTree.AVLNode(key, info, AVLTree.AVLNode.virtual, AVLTree.AVLNode.virtual, null), t);
+                    break;
+                default:
+                    throw new IOException(wal + " has a record of unknown type " + type + " at " + offset);
+            }
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException(wal + " has a malformed record at " + offset, e);
+        }
+    }
+
+    private static int readKey(ByteBuffer record)
+    {
+        long zigzag = readVarLong(record);
+        return (int) ((zigzag >>> 1) ^ -(zigzag & 1));
+    }
+
+    private static String readInfo(ByteBuffer record)
+    {
+        int length = (int) readVarLong(record) - 1;
+        if (length < 0)
+            return null;
+        if (length > record.remaining())
+            throw new BufferUnderflowException();
+        String info = new String(record.array(), record.arrayOffset() + record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return info;
+    }
+
+    private static long readVarLong(ByteBuffer record)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = record.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new BufferUnderflowException(); //no varint is this long
+    }
+
+    //writing tree as generation's snapshot- to a temporary file that is fsynced and then renamed, so a
+    //snapshot file is always complete
+    private void writeSnapshot(long generation, AVLTree tree) throws IOException
+    {
+        Path snapshot = snapshotPath(generation);
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try
+        {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                AVLTreeFile.write(tree, Channels.newOutputStream(channel));
+                channel.force(true);
+            }
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        syncDirectory();
+    }
+
+    //making the directory's entries (the renamed snapshot) durable
+    private void syncDirectory()
+    {
+        try (FileChannel channel = FileChannel.open(this.dir, StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+        catch (IOException e)
+        {
+            //not every platform opens a directory as a file- the rename is atomic anyway
+        }
+    }
+
+    //deleting the files of every other generation- left by a crash during a compaction- and temporary files
+    private void deleteOtherGenerations() throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir))
+        {
+            for (Path file : files)
+            {
+                long g = generationOf(file);
+                if ((g >= 0 && g != this.generation) || file.getFileName().toString().endsWith(".avl.tmp"))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    //the log records, each a payload length and CRC32 followed by the payload
+    private static final class LogBuffer extends ByteArrayOutputStream
+    {
+        LogBuffer()
+        {
+            super(1 << 16);
+        }
+
+        byte[] array()
+        {
+            return this.buf;
+        }
+
+        //starts a record of type, returns where it starts
+        int begin(byte type)
+        {
+            int start = this.count;
+            for (int i = 0; i < RECORD_HEADER; i++)
+                write(0);
+            write(type);
+            return start;
+        }
+
+        //fills in the header of the record that starts at start
+        void end(int start)
+        {
+            int payload = start + RECORD_HEADER;
+            int size = this.count - payload;
+            CRC32 crc = new CRC32();
+            crc.update(this.buf, payload, size);
+            putInt(start, size);
+            putInt(start + 4, (int) crc.getValue());
+        }
+
+        private void putInt(int at, int value)
+        {
+            this.buf[at] = (byte) (value >>> 24);
+            this.buf[at + 1] = (byte) (value >>> 16);
+            this.buf[at + 2] = (byte) (value >>> 8);
+            this.buf[at + 3] = (byte) value;
+        }
+
+        void writeKey(int key)
+        {
+            writeVarLong(((long) key << 1) ^ ((long) key >> 63)); //zigzag
+        }
+
+        void writeInfo(String info)
+        {
+            if (info == null)
+            {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            write(bytes, 0, bytes.length);
+        }
+
+        private void writeVarLong(long value)
+        {
+            while ((value & ~0x7FL) != 0)
+            {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+}
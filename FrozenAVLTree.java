@@ -0,0 +1,303 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ *
+ * FrozenAVLTree
+ *
+ * A read-only copy of an AVLTree, laid out for the cache. The keys are kept in one sorted
+ * array, split into blocks of 16 (64 bytes- a cache line), and above them is an implicit
+ * 17-ary search tree of separator blocks: node i of a layer has the children
+ * 17i .. 17i + 16 in the layer below, and its 16 keys are the smallest keys of children 1..16.
+ * A search reads one block per layer- log17(n/16) + 1 cache lines, 6 for 10M keys, against
+ * a cache miss per level (~24) in the AVLTree- and ends on the key's position in the sorted
+ * array, which is its rank. Range scans are slices of that array.
+ *
+ * The copy is made in O(n) by FrozenAVLTree.of, and knows when the tree changed after it:
+ * refresh() returns a new copy after a burst of updates, or the same one if there was none.
+ *
+ */
+public final class FrozenAVLTree
+{
+    private static final int BLOCK = 16; //keys per block
+    private static final int FANOUT = BLOCK + 1; //children per separator block
+    private static final int PAD = Integer.MAX_VALUE; //fills the last block, and separates missing children
+
+    private final AVLTree source;
+    private final int sourceModCount;
+
+    private final int size;
+    private final int[] keys; //sorted, padded with PAD to whole blocks
+    private final String[] infos; //infos[i] is the info of keys[i]
+    private final int[] separators; //the separator layers, root first, BLOCK keys per node
+    private final int[] layerStart; //where each separator layer starts in separators, root first
+
+    private FrozenAVLTree(AVLTree source)
+    {
+        this.source = source;
+        this.sourceModCount = source.modCount;
+        this.size = source.size();
+
+        //one in-order walk fills both arrays
+        int leaves = (this.size + BLOCK - 1) / BLOCK;
+        this.keys = new int[leaves * BLOCK];
+        this.infos = new String[this.size];
+        int i = 0;
+        for (AVLTree.IAVLNode node : source)
+        {
+            this.keys[i] = node.getKey();
+            this.infos[i] = node.getValue();
+            i++;
+        }
+        Arrays.fill(this.keys, this.size, this.keys.length, PAD);
+
+        //layer sizes from the leaves up, until a layer has one node
+        int layers = 0;
+        for (int nodes = leaves; nodes > 1; nodes = (nodes + FANOUT - 1) / FANOUT)
+            layers++;
+        this.layerStart = new int[layers];
+        int[] layerNodes = new int[layers];
+        int total = 0;
+        int nodes = leaves;
+        for (int layer = layers - 1; layer >= 0; layer--)
+        {
+            nodes = (nodes + FANOUT - 1) / FANOUT;
+            layerNodes[layer] = nodes;
+        }
+        for (int layer = 0; layer < layers; layer++)
+        {
+            this.layerStart[layer] = total;
+            total += layerNodes[layer] * BLOCK;
+        }
+        this.separators = new int[total];
+
+        //a separator is the first key of its child's leftmost leaf- the leaf (child * 17^(levels below))
+        long leavesUnderChild = 1;
+        for (int layer = layers - 1; layer >= 0; layer--)
+        {
+            int start = this.layerStart[layer];
+            for (int node = 0; node < layerNodes[layer]; node++)
+                for (int j = 0; j < BLOCK; j++)
+                {
+                    long child = (long) node * FANOUT + j + 1;
+                    long first = child * leavesUnderChild * BLOCK;
+                    this.separators[start + node * BLOCK + j] = (first < this.size) ? this.keys[(int) first] : PAD;
+                }
+            leavesUnderChild *= FANOUT;
+        }
+    }
+
+    /**
+     * public static FrozenAVLTree of(AVLTree tree)
+     *
+     * returns a frozen copy of tree's items, built in O(n).
+     * the copy doesn't change when tree does- see isStale()/ refresh().
+     */
+    public static FrozenAVLTree of(AVLTree tree)
+    {
+        return new FrozenAVLTree(tree);
+    }
+
+    /**
+     * public boolean isStale()
+     *
+     * returns true if the tree this copy was made of changed since.
+     */
+    public boolean isStale()
+    {
+        return this.source.modCount != this.sourceModCount;
+    }
+
+    /**
+     * public FrozenAVLTree refresh()
+     *
+     * returns a new copy of the tree if it changed since this copy was made, or this copy if not.
+     * the tree must not change during the call.
+     */
+    public FrozenAVLTree refresh()
+    {
+        return isStale() ? new FrozenAVLTree(this.source) : this;
+    }
+
+    //returns the position of the first key >= k in the sorted keys (size if there is none)- the number of keys < k
+    private int lowerBound(int k)
+    {
+        int[] separators = this.separators;
+        int node = 0;
+        for (int start : this.layerStart)
+        {
+            int block = start + node * BLOCK;
+            int child = 0;
+            for (int j = 0; j < BLOCK; j++) //no early exit- the same 16 compares every time, no mispredicted branch
+                child += (separators[block + j] < k) ? 1 : 0;
+            node = node * FANOUT + child;
+        }
+        int[] keys = this.keys;
+        int block = node * BLOCK;
+        int below = 0;
+        for (int j = 0; j < BLOCK; j++)
+            below += (keys[block + j] < k) ? 1 : 0;
+        return Math.min(block + below, this.size); //a key == PAD is the only one the padding can hide
+    }
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the copy
+     * otherwise, returns null
+     */
+    public String search(int k)
+    {
+        if (this.size == 0)
+            return null;
+        int i = lowerBound(k);
+        return (i < this.size && this.keys[i] == k) ? this.infos[i] : null;
+    }
+
+    /**
+     * public boolean contains(int k)
+     *
+     * returns true if and only if an item with key k exists in the copy
+     */
+    public boolean contains(int k)
+    {
+        if (this.size == 0)
+            return false;
+        int i = lowerBound(k);
+        return i < this.size && this.keys[i] == k;
+    }
+
+    /**
+     * public int rank(int k)
+     *
+     * Returns the number of keys in the copy that are smaller than k
+     * (k itself doesn't have to be in the copy).
+     */
+    public int rank(int k)
+    {
+        return (this.size == 0) ? 0 : lowerBound(k);
+    }
+
+    /**
+     * public int select(int i)
+     *
+     * Returns the key of the i-th smallest item (i counts from 0),
+     * or -1 if i is out of range [0, size()).
+     */
+    public int select(int i)
+    {
+        return (i < 0 || i >= this.size) ? -1 : this.keys[i];
+    }
+
+    /**
+     * public int countInRange(int lo, int hi)
+     *
+     * Returns the number of keys x in the copy with lo <= x <= hi,
+     * or 0 if lo > hi.
+     */
+    public int countInRange(int lo, int hi)
+    {
+        if (lo > hi)
+            return 0;
+        return rankAfter(hi) - rank(lo);
+    }
+
+    //returns the number of keys <= k
+    private int rankAfter(int k)
+    {
+        return (k == Integer.MAX_VALUE) ? this.size : rank(k + 1);
+    }
+
+    /**
+     * public IntStream keys(int lo, int hi)
+     *
+     * Returns a sequential stream of the keys in [lo, hi], in ascending order- a slice of the sorted keys.
+     */
+    public IntStream keys(int lo, int hi)
+    {
+        int from = rank(lo);
+        int to = (lo > hi) ? from : rankAfter(hi);
+        return Arrays.stream(this.keys, from, to);
+    }
+
+    /**
+     * public String info(int i)
+     *
+     * Returns the info of the i-th smallest item (i counts from 0)- with rank, the info of a range scan.
+     * precondition: 0 <= i < size()
+     */
+    public String info(int i)
+    {
+        if (i < 0 || i >= this.size)
+            throw new IndexOutOfBoundsException("rank " + i + " is out of range [0, " + this.size + ")");
+        return this.infos[i];
+    }
+
+    /**
+     * public String min()
+     *
+     * Returns the info of the item with the smallest key in the copy,
+     * or null if it is empty
+     */
+    public String min()
+    {
+        return (this.size == 0) ? null : this.infos[0];
+    }
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the copy,
+     * or null if it is empty
+     */
+    public String max()
+    {
+        return (this.size == 0) ? null : this.infos[this.size - 1];
+    }
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array of the keys in the copy.
+     */
+    public int[] keysToArray()
+    {
+        return Arrays.copyOf(this.keys, this.size);
+    }
+
+    /**
+     * public String[] infoToArray()
+     *
+     * Returns an array of the infos in the copy, sorted by their respective keys.
+     */
+    public String[] infoToArray()
+    {
+        return this.infos.clone();
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of items in the copy.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * public boolean empty()
+     *
+     * returns true if and only if the copy is empty
+     */
+    public boolean empty()
+    {
+        return this.size == 0;
+    }
+
+    //Returns the number of blocks a search reads- the separator layers and a leaf
+    public int searchBlocks()
+    {
+        return this.layerStart.length + 1;
+    }
+}
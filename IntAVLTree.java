@@ -0,0 +1,873 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+ *
+ * IntAVLTree
+ *
+ * An AVL tree with distinct int keys and an optional long payload,
+ * stored as a struct of arrays instead of a node object per item.
+ * A node is an int index into parallel key/left/right/parent/height/size
+ * (and value) arrays; index 0 is the virtual node, so every int can be a key.
+ * Deleted nodes go to a free list and are reused by later inserts.
+ *
+ * insert/delete/search/split/join have the same semantics (and rebalance counts) as AVLTree's.
+ * About 21 bytes per node (29 with the payload column), against 80+ for an AVLNode.
+ *
+ */
+public class IntAVLTree
+{
+    //returned by search for a key that is not in the tree (or a tree without a payload column).
+    //a stored payload of Long.MIN_VALUE looks the same- tell them apart with contains, or get with another default
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final int VIRTUAL = 0; //index of the virtual node
+    private static final int DEFAULT_CAPACITY = 16;
+
+    Pool pool;
+    int root = VIRTUAL;
+    int min = VIRTUAL, max = VIRTUAL;
+
+    //constructor for empty tree without a payload column
+    public IntAVLTree()
+    {
+        this(DEFAULT_CAPACITY, false);
+    }
+
+    //constructor for empty tree. withValues- keep a long payload for every key
+    public IntAVLTree(boolean withValues)
+    {
+        this(DEFAULT_CAPACITY, withValues);
+    }
+
+    //constructor for empty tree with room for initialCapacity nodes before growing
+    public IntAVLTree(int initialCapacity, boolean withValues)
+    {
+        this.pool = new Pool(initialCapacity, withValues);
+    }
+
+    //constructor for a tree on an existing pool (the trees of split share their pool)
+    private IntAVLTree(Pool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * public boolean empty()
+     *
+     * returns true if and only if the tree is empty
+     */
+    public boolean empty()
+    {
+        return this.root == VIRTUAL;
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of nodes in the tree.
+     */
+    public int size()
+    {
+        return this.pool.size[this.root];
+    }
+
+    /**
+     * public boolean hasValues()
+     *
+     * returns true if the tree keeps a long payload for its keys
+     */
+    public boolean hasValues()
+    {
+        return this.pool.value != null;
+    }
+
+    /**
+     * public boolean contains(int k)
+     *
+     * returns true if and only if k is in the tree
+     */
+    public boolean contains(int k)
+    {
+        return lookup(k) != VIRTUAL;
+    }
+
+    /**
+     * public long search(int k)
+     *
+     * returns the payload of key k if it exists in the tree,
+     * otherwise (or if the tree has no payload column) returns NO_VALUE.
+     * a key stored with payload NO_VALUE (as insert(k) stores it) gives the same answer as a missing key- see contains
+     */
+    public long search(int k)
+    {
+        return get(k, NO_VALUE);
+    }
+
+    /**
+     * public long get(int k, long defaultValue)
+     *
+     * returns the payload of key k if it exists in the tree, otherwise defaultValue
+     */
+    public long get(int k, long defaultValue)
+    {
+        int node = lookup(k);
+        if (node == VIRTUAL || this.pool.value == null)
+            return defaultValue;
+        return this.pool.value[node];
+    }
+
+    //iterative search for the node with key k, or VIRTUAL if k is not in the tree
+    private int lookup(int k)
+    {
+        int[] key = this.pool.key, left = this.pool.left, right = this.pool.right;
+        int node = this.root;
+        while (node != VIRTUAL)
+        {
+            int nodeKey = key[node];
+            if (k == nodeKey)
+                return node;
+            node = (k < nodeKey) ? left[node] : right[node];
+        }
+        return VIRTUAL;
+    }
+
+    /**
+     * public int insert(int k)
+     *
+     * inserts key k (with payload NO_VALUE if the tree has a payload column).
+     * returns the number of rebalancing operations (counted as in AVLTree.insert),
+     * or -1 if k already exists in the tree.
+     */
+    public int insert(int k)
+    {
+        return insertNode(k, NO_VALUE);
+    }
+
+    /**
+     * public int insert(int k, long v)
+     *
+     * inserts key k with payload v. the tree must have a payload column.
+     * returns the number of rebalancing operations, or -1 if k already exists in the tree.
+     */
+    public int insert(int k, long v)
+    {
+        if (this.pool.value == null)
+            throw new UnsupportedOperationException("tree has no payload column");
+        return insertNode(k, v);
+    }
+
+    private int insertNode(int k, long v)
+    {
+        Pool p = this.pool;
+        //inserting for an empty tree- no need to rebalance
+        if (this.root == VIRTUAL)
+        {
+            this.root = p.allocate(k, v);
+            this.min = this.root;
+            this.max = this.root;
+            return 0;
+        }
+
+        //finding the node which the new node should be under
+        int insertAfter = this.root;
+        while (true)
+        {
+            int nodeKey = p.key[insertAfter];
+            if (k == nodeKey) //already in tree
+                return -1;
+            int next = (k < nodeKey) ? p.left[insertAfter] : p.right[insertAfter];
+            if (next == VIRTUAL)
+                break;
+            insertAfter = next;
+        }
+
+        int newNode = p.allocate(k, v);
+        p.parent[newNode] = insertAfter;
+        if (k < p.key[insertAfter])
+        {
+            p.left[insertAfter] = newNode;
+            if (k < p.key[this.min])
+                this.min = newNode;
+        }
+        else
+        {
+            p.right[insertAfter] = newNode;
+            if (k > p.key[this.max])
+                this.max = newNode;
+        }
+        return rebalance(insertAfter);
+    }
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes key k from the tree, if it is there.
+     * returns the number of rebalancing operations (counted as in AVLTree.delete),
+     * or -1 if k was not found in the tree.
+     */
+    public int delete(int k)
+    {
+        int node = lookup(k);
+        if (node == VIRTUAL)
+            return -1;
+        Pool p = this.pool;
+
+        //if k is min/ max- its neighbour becomes the new min/ max
+        int newMin = (node == this.min) ? nextInOrder(node) : this.min;
+        int newMax = (node == this.max) ? prevInOrder(node) : this.max;
+
+        int parentNode = p.parent[node];
+        int rebalanceFrom;
+        if (p.left[node] == VIRTUAL || p.right[node] == VIRTUAL) //leaf or unary- the only child (maybe virtual) takes node's place
+        {
+            int child = (p.left[node] != VIRTUAL) ? p.left[node] : p.right[node];
+            if (child != VIRTUAL)
+                p.parent[child] = parentNode;
+            replaceChild(parentNode, node, child);
+            rebalanceFrom = parentNode;
+        }
+        else //binary- the successor is relinked into node's place
+        {
+            int suc = leftmost(p.right[node]);
+            if (p.parent[suc] == node) //suc is node's right child and keeps its right subtree
+                rebalanceFrom = suc;
+            else
+            {
+                rebalanceFrom = p.parent[suc];
+                p.left[rebalanceFrom] = p.right[suc];
+                if (p.right[suc] != VIRTUAL)
+                    p.parent[p.right[suc]] = rebalanceFrom;
+                p.right[suc] = p.right[node];
+                p.parent[p.right[node]] = suc;
+            }
+            p.left[suc] = p.left[node];
+            p.parent[p.left[node]] = suc;
+            p.parent[suc] = parentNode;
+            replaceChild(parentNode, node, suc);
+            p.height[suc] = (byte) (Math.max(p.height[p.left[suc]], p.height[p.right[suc]]) + 1);
+        }
+        p.release(node);
+
+        int rebalanceCounter = rebalance(rebalanceFrom);
+        this.min = newMin;
+        this.max = newMax;
+        return rebalanceCounter;
+    }
+
+    //fixing the rank differences from node up to the root (sizes are maintained all the way up).
+    //same cases and counts as AVLTree.rebalance. returns the number of rebalancing operations
+    private int rebalance(int node)
+    {
+        Pool p = this.pool;
+        int rebalanceCounter = 0;
+        while (node != VIRTUAL)
+        {
+            int height = p.height[node];
+            int left = p.left[node], right = p.right[node];
+            int leftDiff = height - p.height[left];
+            int rightDiff = height - p.height[right];
+            int top = node; //root of node's subtree after fixing it
+
+            //case 0-1/ 1-0, promote
+            if ((leftDiff == 0 && rightDiff == 1) || (leftDiff == 1 && rightDiff == 0))
+            {
+                p.height[node]++;
+                rebalanceCounter++;
+            }
+            //case 0-2, rotations with the left child
+            else if (leftDiff == 0 && rightDiff == 2)
+            {
+                int childLeftDiff = leftDiff(left), childRightDiff = rightDiff(left);
+                if (childLeftDiff == 1 && childRightDiff == 2) //1 rotation 1 demote
+                {
+                    top = rotateRight(node);
+                    rebalanceCounter += 2;
+                }
+                else if (childLeftDiff == 2 && childRightDiff == 1) //double rotation
+                {
+                    rotateLeft(left);
+                    top = rotateRight(node);
+                    rebalanceCounter += 5;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 1) //after join- 1 rotation 1 promote
+                {
+                    top = rotateRight(node);
+                    rebalanceCounter += 2;
+                }
+            }
+            //case 2-0, rotations with the right child
+            else if (leftDiff == 2 && rightDiff == 0)
+            {
+                int childLeftDiff = leftDiff(right), childRightDiff = rightDiff(right);
+                if (childLeftDiff == 2 && childRightDiff == 1)
+                {
+                    top = rotateLeft(node);
+                    rebalanceCounter += 2;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 2)
+                {
+                    rotateRight(right);
+                    top = rotateLeft(node);
+                    rebalanceCounter += 5;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 1)
+                {
+                    top = rotateLeft(node);
+                    rebalanceCounter += 2;
+                }
+            }
+            //case 2-2, demote
+            else if (leftDiff == 2 && rightDiff == 2)
+            {
+                p.height[node]--;
+                rebalanceCounter++;
+            }
+            //case 3-1, rotations with the right child
+            else if (leftDiff == 3 && rightDiff == 1)
+            {
+                int childLeftDiff = leftDiff(right), childRightDiff = rightDiff(right);
+                if (childRightDiff == 1) //child 1-1 (1 rotation 1 demote 1 promote) or 2-1 (1 rotation 2 demote)
+                {
+                    top = rotateLeft(node);
+                    rebalanceCounter += 3;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 2) //double rotation
+                {
+                    rotateRight(right);
+                    top = rotateLeft(node);
+                    rebalanceCounter += 6;
+                }
+            }
+            //case 1-3, rotations with the left child
+            else if (leftDiff == 1 && rightDiff == 3)
+            {
+                int childLeftDiff = leftDiff(left), childRightDiff = rightDiff(left);
+                if (childLeftDiff == 1)
+                {
+                    top = rotateRight(node);
+                    rebalanceCounter += 3;
+                }
+                else if (childLeftDiff == 2 && childRightDiff == 1)
+                {
+                    rotateLeft(left);
+                    top = rotateRight(node);
+                    rebalanceCounter += 6;
+                }
+            }
+
+            p.size[top] = p.size[p.left[top]] + p.size[p.right[top]] + 1;
+            node = p.parent[top];
+        }
+        return rebalanceCounter;
+    }
+
+    private int leftDiff(int node)
+    {
+        return this.pool.height[node] - this.pool.height[this.pool.left[node]];
+    }
+
+    private int rightDiff(int node)
+    {
+        return this.pool.height[node] - this.pool.height[this.pool.right[node]];
+    }
+
+    //making left rotation on node, returns the node that took its place
+    private int rotateLeft(int node)
+    {
+        Pool p = this.pool;
+        int parentNode = p.parent[node];
+        int right = p.right[node];
+        int rightLeft = p.left[right];
+
+        p.right[node] = rightLeft;
+        if (rightLeft != VIRTUAL)
+            p.parent[rightLeft] = node;
+        p.left[right] = node;
+        p.parent[node] = right;
+        p.parent[right] = parentNode;
+        replaceChild(parentNode, node, right);
+
+        update(node);
+        update(right);
+        return right;
+    }
+
+    //making right rotation on node, returns the node that took its place
+    private int rotateRight(int node)
+    {
+        Pool p = this.pool;
+        int parentNode = p.parent[node];
+        int left = p.left[node];
+        int leftRight = p.right[left];
+
+        p.left[node] = leftRight;
+        if (leftRight != VIRTUAL)
+            p.parent[leftRight] = node;
+        p.right[left] = node;
+        p.parent[node] = left;
+        p.parent[left] = parentNode;
+        replaceChild(parentNode, node, left);
+
+        update(node);
+        update(left);
+        return left;
+    }
+
+    //pointing parentNode (or the root, if parentNode is virtual) at replacement instead of child
+    private void replaceChild(int parentNode, int child, int replacement)
+    {
+        if (parentNode == VIRTUAL)
+            this.root = replacement;
+        else if (this.pool.left[parentNode] == child)
+            this.pool.left[parentNode] = replacement;
+        else
+            this.pool.right[parentNode] = replacement;
+    }
+
+    //setting node's height and size from its children
+    private void update(int node)
+    {
+        Pool p = this.pool;
+        int left = p.left[node], right = p.right[node];
+        p.height[node] = (byte) (Math.max(p.height[left], p.height[right]) + 1);
+        p.size[node] = p.size[left] + p.size[right] + 1;
+    }
+
+    /**
+     * public IntAVLTree[] split(int x)
+     *
+     * splits the tree into 2 trees according to the key x.
+     * Returns an array [t1, t2] with two trees. keys(t1) < x < keys(t2). x itself is dropped
+     * and this tree is left empty. Both trees share this tree's node storage.
+     * precondition: contains(x)
+     */
+    public IntAVLTree[] split(int x)
+    {
+        Pool p = this.pool;
+        int node = lookup(x);
+        if (node == VIRTUAL)
+            throw new NoSuchElementException("split key " + x + " is not in the tree");
+
+        //min/ max of both trees are known before relinking anything
+        int smallMin = (node == this.min) ? VIRTUAL : this.min;
+        int smallMax = prevInOrder(node);
+        int bigMin = nextInOrder(node);
+        int bigMax = (node == this.max) ? VIRTUAL : this.max;
+
+        int small = p.left[node];
+        int big = p.right[node];
+        int child = node;
+        int parentNode = p.parent[node];
+
+        //going from node up until root. every ancestor is joined (as the middle node) with its other subtree
+        while (parentNode != VIRTUAL)
+        {
+            int grandParent = p.parent[parentNode];
+            if (child == p.right[parentNode])
+                small = joinNodes(p.left[parentNode], parentNode, small);
+            else
+                big = joinNodes(big, parentNode, p.right[parentNode]);
+            child = parentNode;
+            parentNode = grandParent;
+        }
+        p.release(node);
+
+        IntAVLTree tSmall = new IntAVLTree(p);
+        tSmall.setRoot(small, smallMin, smallMax);
+        IntAVLTree tBig = new IntAVLTree(p);
+        tBig.setRoot(big, bigMin, bigMax);
+        this.setRoot(VIRTUAL, VIRTUAL, VIRTUAL);
+        return new IntAVLTree[] {tSmall, tBig};
+    }
+
+    /**
+     * public int join(int x, IntAVLTree t)
+     *
+     * joins t and a new node with key x (payload NO_VALUE) with the tree.
+     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+     * precondition: keys(x,t) < keys() or keys(x,t) > keys().
+     * postcondition: t is empty. if t doesn't share this tree's storage, its items are copied (O(|t|)) and its nodes freed
+     */
+    public int join(int x, IntAVLTree t)
+    {
+        return join(x, NO_VALUE, t);
+    }
+
+    //join with payload v for x
+    public int join(int x, long v, IntAVLTree t)
+    {
+        int joinCost = Math.abs(this.getTreeRank() - t.getTreeRank()) + 1;
+        Pool p = this.pool;
+
+        int other, otherMin, otherMax;
+        if (t.pool == p)
+        {
+            other = t.root;
+            otherMin = t.min;
+            otherMax = t.max;
+        }
+        else //moving t's items into this tree's storage, and freeing their nodes in t's (which split siblings may share)
+        {
+            other = copyOf(t);
+            otherMin = (other == VIRTUAL) ? VIRTUAL : leftmost(other);
+            otherMax = (other == VIRTUAL) ? VIRTUAL : rightmost(other);
+            t.pool.releaseSubtree(t.root);
+        }
+        t.setRoot(VIRTUAL, VIRTUAL, VIRTUAL);
+
+        int pivot = p.allocate(x, v);
+        boolean thisIsBigger;
+        if (!this.empty())
+            thisIsBigger = x < p.key[this.root];
+        else
+            thisIsBigger = other != VIRTUAL && x > p.key[other];
+
+        if (thisIsBigger)
+            this.setRoot(joinNodes(other, pivot, this.root), (other == VIRTUAL) ? pivot : otherMin, this.empty() ? pivot : this.max);
+        else
+            this.setRoot(joinNodes(this.root, pivot, other), this.empty() ? pivot : this.min, (other == VIRTUAL) ? pivot : otherMax);
+        return joinCost;
+    }
+
+    //Returns tree's rank (-1 for an empty tree)
+    public int getTreeRank()
+    {
+        return this.pool.height[this.root];
+    }
+
+    //making node (a subtree root or virtual) the root of the tree, with the given min/ max nodes
+    private void setRoot(int node, int min, int max)
+    {
+        if (node != VIRTUAL)
+            this.pool.parent[node] = VIRTUAL;
+        this.root = node;
+        this.min = (node == VIRTUAL) ? VIRTUAL : min;
+        this.max = (node == VIRTUAL) ? VIRTUAL : max;
+    }
+
+    //joins subtrees left < k < right (k a detached node) into one balanced subtree, returns its root.
+    //same algorithm as AVLTree.joinNodes
+    private int joinNodes(int left, int k, int right)
+    {
+        byte[] height = this.pool.height;
+        if (height[left] > height[right] + 1)
+            return joinRight(left, k, right);
+        if (height[right] > height[left] + 1)
+            return joinLeft(left, k, right);
+        return makeNode(left, k, right);
+    }
+
+    private int joinRight(int left, int k, int right)
+    {
+        Pool p = this.pool;
+        int c = p.right[left];
+        if (p.height[c] <= p.height[right] + 1)
+        {
+            int t = makeNode(c, k, right);
+            if (p.height[t] <= p.height[p.left[left]] + 1)
+                return makeNode(p.left[left], left, t);
+            return rotateLeftNode(makeNode(p.left[left], left, rotateRightNode(t)));
+        }
+        int t = joinRight(c, k, right);
+        makeNode(p.left[left], left, t);
+        if (p.height[t] <= p.height[p.left[left]] + 1)
+            return left;
+        return rotateLeftNode(left);
+    }
+
+    private int joinLeft(int left, int k, int right)
+    {
+        Pool p = this.pool;
+        int c = p.left[right];
+        if (p.height[c] <= p.height[left] + 1)
+        {
+            int t = makeNode(left, k, c);
+            if (p.height[t] <= p.height[p.right[right]] + 1)
+                return makeNode(t, right, p.right[right]);
+            return rotateRightNode(makeNode(rotateLeftNode(t), right, p.right[right]));
+        }
+        int t = joinLeft(left, k, c);
+        makeNode(t, right, p.right[right]);
+        if (p.height[t] <= p.height[p.right[right]] + 1)
+            return right;
+        return rotateRightNode(right);
+    }
+
+    //left rotation of a subtree root (without touching the tree's root), returns the new subtree root
+    private int rotateLeftNode(int node)
+    {
+        int right = this.pool.right[node];
+        makeNode(this.pool.left[node], node, this.pool.left[right]);
+        return makeNode(node, right, this.pool.right[right]);
+    }
+
+    //right rotation of a subtree root (without touching the tree's root), returns the new subtree root
+    private int rotateRightNode(int node)
+    {
+        int left = this.pool.left[node];
+        makeNode(this.pool.right[left], node, this.pool.right[node]);
+        return makeNode(this.pool.left[left], left, node);
+    }
+
+    //linking left and right as node's children and setting node's height and size from them
+    private int makeNode(int left, int node, int right)
+    {
+        Pool p = this.pool;
+        p.left[node] = left;
+        p.right[node] = right;
+        if (left != VIRTUAL)
+            p.parent[left] = node;
+        if (right != VIRTUAL)
+            p.parent[right] = node;
+        update(node);
+        return node;
+    }
+
+    //a balanced copy of t's items in this tree's storage, returns its root
+    private int copyOf(IntAVLTree t)
+    {
+        int[] keys = t.keysToArray();
+        long[] values = t.valuesToArray();
+        return buildBalanced(keys, values, 0, keys.length);
+    }
+
+    //a new balanced subtree of the sorted items [from, to)
+    private int buildBalanced(int[] keys, long[] values, int from, int to)
+    {
+        if (from >= to)
+            return VIRTUAL;
+        int mid = (from + to) >>> 1;
+        int node = this.pool.allocate(keys[mid], (values == null) ? NO_VALUE : values[mid]);
+        int left = buildBalanced(keys, values, from, mid);
+        int right = buildBalanced(keys, values, mid + 1, to);
+        return makeNode(left, node, right);
+    }
+
+    /**
+     * public int minKey()
+     *
+     * Returns the smallest key in the tree.
+     * throws NoSuchElementException if the tree is empty
+     */
+    public int minKey()
+    {
+        if (this.empty())
+            throw new NoSuchElementException("tree is empty");
+        return this.pool.key[this.min];
+    }
+
+    /**
+     * public int maxKey()
+     *
+     * Returns the largest key in the tree.
+     * throws NoSuchElementException if the tree is empty
+     */
+    public int maxKey()
+    {
+        if (this.empty())
+            throw new NoSuchElementException("tree is empty");
+        return this.pool.key[this.max];
+    }
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     */
+    public int[] keysToArray()
+    {
+        int[] keys = new int[this.size()];
+        int node = this.min;
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = this.pool.key[node];
+            node = nextInOrder(node);
+        }
+        return keys;
+    }
+
+    /**
+     * public long[] valuesToArray()
+     *
+     * Returns an array which contains all payloads in the tree, sorted by their keys,
+     * or null if the tree has no payload column.
+     */
+    public long[] valuesToArray()
+    {
+        if (this.pool.value == null)
+            return null;
+        long[] values = new long[this.size()];
+        int node = this.min;
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = this.pool.value[node];
+            node = nextInOrder(node);
+        }
+        return values;
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, IntConsumer action)
+     *
+     * calls action with every key k in the tree with lo <= k <= hi, in ascending order
+     */
+    public void forEachInRange(int lo, int hi, IntConsumer action)
+    {
+        int[] key = this.pool.key;
+        //finding the first node with key >= lo
+        int first = VIRTUAL;
+        int node = this.root;
+        while (node != VIRTUAL)
+        {
+            if (key[node] >= lo)
+            {
+                first = node;
+                node = this.pool.left[node];
+            }
+            else
+                node = this.pool.right[node];
+        }
+        for (node = first; node != VIRTUAL && key[node] <= hi; node = nextInOrder(node))
+            action.accept(key[node]);
+    }
+
+    private int leftmost(int node)
+    {
+        while (this.pool.left[node] != VIRTUAL)
+            node = this.pool.left[node];
+        return node;
+    }
+
+    private int rightmost(int node)
+    {
+        while (this.pool.right[node] != VIRTUAL)
+            node = this.pool.right[node];
+        return node;
+    }
+
+    //returns the next node in-order, or VIRTUAL if node is the last one
+    private int nextInOrder(int node)
+    {
+        Pool p = this.pool;
+        if (p.right[node] != VIRTUAL)
+            return leftmost(p.right[node]);
+        int parentNode = p.parent[node];
+        while (parentNode != VIRTUAL && node == p.right[parentNode])
+        {
+            node = parentNode;
+            parentNode = p.parent[node];
+        }
+        return parentNode;
+    }
+
+    //returns the previous node in-order, or VIRTUAL if node is the first one
+    private int prevInOrder(int node)
+    {
+        Pool p = this.pool;
+        if (p.left[node] != VIRTUAL)
+            return rightmost(p.left[node]);
+        int parentNode = p.parent[node];
+        while (parentNode != VIRTUAL && node == p.left[parentNode])
+        {
+            node = parentNode;
+            parentNode = p.parent[node];
+        }
+        return parentNode;
+    }
+
+    /**
+     * Pool
+     *
+     * Node storage: parallel arrays indexed by node, grown by doubling.
+     * Index 0 is the virtual node (height -1, size 0).
+     * Released nodes are kept on a free list (linked through right) and reused first.
+     */
+    static final class Pool
+    {
+        int[] key, left, right, parent, size;
+        byte[] height; //AVL heights stay far below 128
+        long[] value; //null if the trees have no payload column
+        int next = 1; //first index that was never used
+        int free = VIRTUAL; //head of the free list
+
+        Pool(int capacity, boolean withValues)
+        {
+            capacity = Math.max(capacity, 1) + 1; //room for the virtual node
+            this.key = new int[capacity];
+            this.left = new int[capacity];
+            this.right = new int[capacity];
+            this.parent = new int[capacity];
+            this.size = new int[capacity];
+            this.height = new byte[capacity];
+            this.height[VIRTUAL] = -1;
+            if (withValues)
+                this.value = new long[capacity];
+        }
+
+        //returns a new leaf node with key k and payload v
+        int allocate(int k, long v)
+        {
+            int node;
+            if (this.free != VIRTUAL)
+            {
+                node = this.free;
+                this.free = this.right[node];
+            }
+            else
+            {
+                if (this.next == this.key.length)
+                    grow();
+                node = this.next++;
+            }
+            this.key[node] = k;
+            this.left[node] = VIRTUAL;
+            this.right[node] = VIRTUAL;
+            this.parent[node] = VIRTUAL;
+            this.height[node] = 0;
+            this.size[node] = 1;
+            if (this.value != null)
+                this.value[node] = v;
+            return node;
+        }
+
+        //putting every node of node's subtree on the free list
+        void releaseSubtree(int node)
+        {
+            if (node == VIRTUAL)
+                return;
+            int left = this.left[node], right = this.right[node]; //release overwrites both links
+            release(node);
+            releaseSubtree(left);
+            releaseSubtree(right);
+        }
+
+        //putting node on the free list
+        void release(int node)
+        {
+            this.left[node] = VIRTUAL;
+            this.parent[node] = VIRTUAL;
+            this.size[node] = 0;
+            this.right[node] = this.free;
+            this.free = node;
+        }
+
+        private void grow()
+        {
+            int capacity = this.key.length;
+            if (capacity == Integer.MAX_VALUE)
+                throw new IllegalStateException("node storage is full");
+            capacity = (int) Math.min(2L * capacity, Integer.MAX_VALUE);
+            this.key = Arrays.copyOf(this.key, capacity);
+            this.left = Arrays.copyOf(this.left, capacity);
+            this.right = Arrays.copyOf(this.right, capacity);
+            this.parent = Arrays.copyOf(this.parent, capacity);
+            this.size = Arrays.copyOf(this.size, capacity);
+            this.height = Arrays.copyOf(this.height, capacity);
+            if (this.value != null)
+                this.value = Arrays.copyOf(this.value, capacity);
+        }
+    }
+}
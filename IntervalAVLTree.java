@@ -0,0 +1,321 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * IntervalAVLTree
+ *
+ * A set of half-open intervals [start, end), keyed by start (one interval per start), kept in an
+ * AVLTree whose subtree aggregate is the largest end in the subtree. The aggregate lives in the
+ * tree's nodes and is updated by the same calcAndSetSize calls as the subtree size- so insert,
+ * delete, the rotations of rebalance, split and join all keep it right, with no code of their own.
+ *
+ * A query walks the tree in start order, skipping every subtree whose largest end is not after
+ * the query's start, and stops at the first start that is not before the query's end.
+ *
+ */
+public class IntervalAVLTree
+{
+    //the largest end of the subtree. the ends are given on insert/ join and kept in the nodes (AggregateNode.value)-
+    //the info has none, so an item added without its end (only AVLTree's own bulk paths, never used here) covers
+    //no point and counts as the identity
+    private static final SubtreeAggregate MAX_END = new SubtreeAggregate()
+    {
+        public long identity()
+        {
+            return Long.MIN_VALUE;
+        }
+
+        public long value(int key, String info)
+        {
+            return identity();
+        }
+
+        public long combine(long left, long right)
+        {
+            return Math.max(left, right);
+        }
+    };
+
+    private final AVLTree tree;
+
+    //constructor for an empty interval tree
+    public IntervalAVLTree()
+    {
+        this(new AVLTree(MAX_END));
+    }
+
+    private IntervalAVLTree(AVLTree tree)
+    {
+        this.tree = tree;
+    }
+
+    /**
+     * public class Interval
+     *
+     * An interval [start, end) of the tree and its info, as a query returns it.
+     */
+    public static final class Interval
+    {
+        private final int start, end;
+        private final String info;
+
+        Interval(int start, int end, String info)
+        {
+            this.start = start;
+            this.end = end;
+            this.info = info;
+        }
+
+        public int getStart()
+        {
+            return this.start;
+        }
+
+        public int getEnd()
+        {
+            return this.end;
+        }
+
+        public String getInfo()
+        {
+            return this.info;
+        }
+
+        public String toString()
+        {
+            return "[" + this.start + ", " + this.end + ")=" + this.info;
+        }
+    }
+
+    /**
+     * public int insert(int start, int end, String info)
+     *
+     * inserts the interval [start, end) with info to the tree.
+     * returns the number of rebalancing operations (like AVLTree.insert),
+     * or -1 if an interval with the same start already exists in the tree.
+     * throws IllegalArgumentException if end <= start, or if start is -1 (AVLTree's virtual key).
+     */
+    public int insert(int start, int end, String info)
+    {
+        checkInterval(start, end);
+        return this.tree.insert(start, info, end);
+    }
+
+    /**
+     * public int delete(int start)
+     *
+     * deletes the interval that starts at start, if it is there.
+     * returns the number of rebalancing operations, or -1 if there is no such interval.
+     */
+    public int delete(int start)
+    {
+        return this.tree.delete(start);
+    }
+
+    /**
+     * public String search(int start)
+     *
+     * returns the info of the interval that starts at start, or null if there is none
+     */
+    public String search(int start)
+    {
+        return this.tree.search(start);
+    }
+
+    /**
+     * public int end(int start)
+     *
+     * returns the end of the interval that starts at start.
+     * throws NoSuchElementException if there is none.
+     */
+    public int end(int start)
+    {
+        AVLTree.IAVLNode node = this.tree.floor(start);
+        if (node == null || node.getKey() != start)
+            throw new NoSuchElementException("no interval starts at " + start);
+        return endOf(node);
+    }
+
+    /**
+     * public List<Interval> overlapping(int lo, int hi)
+     *
+     * Returns the intervals that overlap [lo, hi)- start < hi and end > lo- in ascending start order.
+     * The intervals that start in [lo, hi) are a run of the start order, O(1) each. An interval that starts
+     * before lo is found by going down from the deepest node above it whose subtree's largest end is after lo-
+     * at most O(log n) per such interval, and far less when they cluster near lo, as short windows do.
+     * O(log n + k) when they do- O(log n + k log n) at worst, for k intervals returned.
+     */
+    public List<Interval> overlapping(int lo, int hi)
+    {
+        List<Interval> intervals = new ArrayList<>();
+        for (Iterator<Interval> it = new OverlapIterator(lo, hi); it.hasNext(); )
+            intervals.add(it.next());
+        return intervals;
+    }
+
+    /**
+     * public Iterator<Interval> stabbing(int point)
+     *
+     * Returns an iterator over the intervals that contain point- start <= point < end- in ascending start order.
+     * The intervals are found lazily, with the bounds of overlapping.
+     * Throws ConcurrentModificationException if the tree is modified during the iteration.
+     */
+    public Iterator<Interval> stabbing(int point)
+    {
+        return new OverlapIterator(point, (long) point + 1);
+    }
+
+    /**
+     * public IntervalAVLTree[] split(int start)
+     *
+     * splits the tree by the interval that starts at start (which is in neither part), like AVLTree.split.
+     * Returns [t1, t2]- the intervals that start before start, and after it. This tree is empty afterwards.
+     * precondition: an interval starts at start
+     */
+    public IntervalAVLTree[] split(int start)
+    {
+        AVLTree[] parts = this.tree.split(start);
+        return new IntervalAVLTree[] {new IntervalAVLTree(parts[0]), new IntervalAVLTree(parts[1])};
+    }
+
+    /**
+     * public int join(int start, int end, String info, IntervalAVLTree t)
+     *
+     * joins t and the interval [start, end) with the tree, like AVLTree.join.
+     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+     * precondition: the starts of t and start are all smaller, or all larger, than the tree's
+     * postcondition: t is empty (its intervals are now in the tree)
+     * throws IllegalArgumentException if end <= start, or if start is -1 (AVLTree's virtual key).
+     */
+    public int join(int start, int end, String info, IntervalAVLTree t)
+    {
+        checkInterval(start, end);
+        return this.tree.join(AVLTree.newNode(start, info, MAX_END, end), t.tree);
+    }
+
+    /**
+     * public int maxEnd()
+     *
+     * Returns the largest end of the intervals in the tree- O(1).
+     * throws NoSuchElementException if the tree is empty.
+     */
+    public int maxEnd()
+    {
+        if (this.tree.empty())
+            throw new NoSuchElementException("the tree is empty");
+        return (int) this.tree.aggregate();
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of intervals in the tree.
+     */
+    public int size()
+    {
+        return this.tree.size();
+    }
+
+    /**
+     * public boolean empty()
+     *
+     * returns true if and only if the tree has no intervals
+     */
+    public boolean empty()
+    {
+        return this.tree.empty();
+    }
+
+    //-1 is the key of AVLTree's virtual node, which AVLTree tells from a real one by the key alone
+    private static void checkInterval(int start, int end)
+    {
+        if (start == -1)
+            throw new IllegalArgumentException("an interval can't start at -1, AVLTree's virtual key");
+        if (end <= start)
+            throw new IllegalArgumentException("interval [" + start + ", " + end + ") is empty");
+    }
+
+    //the end of node's interval
+    private static int endOf(AVLTree.IAVLNode node)
+    {
+        return (int) ((AVLTree.AggregateNode) node).value;
+    }
+
+    //the largest end in node's subtree (Long.MIN_VALUE for virtual)
+    private static long maxEndOf(AVLTree.AVLNode node)
+    {
+        return (node != AVLTree.AVLNode.virtual) ? ((AVLTree.AggregateNode) node).aggregate : Long.MIN_VALUE;
+    }
+
+    //in-order walk over the intervals with start < hi and end > lo. the stack holds the nodes still to visit,
+    //each pushed only if its subtree has an end after lo. bounds are longs, so that a stabbing query at
+    //Integer.MAX_VALUE has an end to stop at
+    private final class OverlapIterator implements Iterator<Interval>
+    {
+        private final long lo, hi;
+        private final ArrayDeque<AVLTree.AVLNode> stack = new ArrayDeque<>();
+        private final int expectedModCount = IntervalAVLTree.this.tree.modCount;
+        private Interval next;
+
+        OverlapIterator(long lo, long hi)
+        {
+            this.lo = lo;
+            this.hi = hi;
+            if (lo < hi && !IntervalAVLTree.this.tree.empty())
+                pushLeft((AVLTree.AVLNode) IntervalAVLTree.this.tree.getRoot());
+            advance();
+        }
+
+        //pushing node and its left descendants, down to the first subtree with no end after lo
+        private void pushLeft(AVLTree.AVLNode node)
+        {
+            while (maxEndOf(node) > this.lo)
+            {
+                this.stack.push(node);
+                node = node.getLeft();
+            }
+        }
+
+        //finding the next overlapping interval, or null
+        private void advance()
+        {
+            this.next = null;
+            while (!this.stack.isEmpty())
+            {
+                AVLTree.AVLNode node = this.stack.pop();
+                if (node.getKey() >= this.hi) //every interval still to come starts at hi or later
+                {
+                    this.stack.clear();
+                    return;
+                }
+                pushLeft(node.getRight());
+                if (endOf(node) > this.lo)
+                {
+                    this.next = new Interval(node.getKey(), endOf(node), node.getValue());
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext()
+        {
+            return this.next != null;
+        }
+
+        public Interval next()
+        {
+            if (IntervalAVLTree.this.tree.modCount != this.expectedModCount)
+                throw new ConcurrentModificationException();
+            if (this.next == null)
+                throw new NoSuchElementException();
+            Interval interval = this.next;
+            advance();
+            return interval;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * LongAVLMap
+ *
+ * AVLMap specialized by hand for long keys: keys are compared directly,
+ * without boxing or a Comparator call. Every long is a valid key (no reserved -1).
+ * Same insert/delete/search/split/join semantics (and rebalance counts) as AVLTree.
+ *
+ */
+public class LongAVLMap<V> extends AbstractAVLMap<LongAVLMap.Node<V>>
+{
+    @SuppressWarnings("rawtypes")
+    private static final Node NIL = new Node<>(0, null);
+
+    static
+    {
+        NIL.height = -1;
+        NIL.size = 0;
+    }
+
+    //constructor for empty map
+    @SuppressWarnings("unchecked")
+    public LongAVLMap()
+    {
+        super((Node<V>) NIL);
+    }
+
+    /**
+     * public V search(long k)
+     *
+     * returns the value of an item with key k if it exists in the tree
+     * otherwise, returns null
+     */
+    public V search(long k)
+    {
+        return lookup(k).value;
+    }
+
+    /**
+     * public boolean contains(long k)
+     *
+     * returns true if and only if k is in the tree
+     */
+    public boolean contains(long k)
+    {
+        return lookup(k) != this.nil;
+    }
+
+    /**
+     * public V get(long k, V defaultValue)
+     *
+     * returns the value of key k if it exists in the tree, otherwise defaultValue
+     */
+    public V get(long k, V defaultValue)
+    {
+        Node<V> node = lookup(k);
+        return (node == this.nil) ? defaultValue : node.value;
+    }
+
+    //iterative search for the node with key k, or the sentinel if k is not in the tree
+    private Node<V> lookup(long k)
+    {
+        Node<V> node = this.root;
+        while (node != this.nil)
+        {
+            if (k == node.key)
+                return node;
+            node = (k < node.key) ? node.left : node.right;
+        }
+        return this.nil;
+    }
+
+    /**
+     * public int insert(long k, V v)
+     *
+     * inserts an item with key k and value v to the tree.
+     * returns the number of rebalancing operations (counted as in AVLTree.insert),
+     * or -1 if an item with key k already exists in the tree.
+     */
+    public int insert(long k, V v)
+    {
+        //finding the node which the new node should be under
+        Node<V> insertAfter = this.nil;
+        Node<V> node = this.root;
+        while (node != this.nil)
+        {
+            if (k == node.key) //already in tree
+                return -1;
+            insertAfter = node;
+            node = (k < node.key) ? node.left : node.right;
+        }
+        return insertLeaf(insertAfter, new Node<>(k, v), insertAfter != this.nil && k < insertAfter.key);
+    }
+
+    /**
+     * public int delete(long k)
+     *
+     * deletes an item with key k from the tree if it is there.
+     * returns the number of rebalancing operations (counted as in AVLTree.delete),
+     * or -1 if an item with key k was not found in the tree.
+     */
+    public int delete(long k)
+    {
+        Node<V> node = lookup(k);
+        if (node == this.nil)
+            return -1;
+        return deleteNode(node);
+    }
+
+    /**
+     * public V min()
+     *
+     * Returns the value of the item with the smallest key in the tree,
+     * or null if the tree is empty.
+     */
+    public V min()
+    {
+        return this.min.value;
+    }
+
+    /**
+     * public V max()
+     *
+     * Returns the value of the item with the largest key in the tree,
+     * or null if the tree is empty.
+     */
+    public V max()
+    {
+        return this.max.value;
+    }
+
+    //Returns the smallest key in the tree. throws NoSuchElementException if the tree is empty
+    public long minKey()
+    {
+        if (this.empty())
+            throw new NoSuchElementException("tree is empty");
+        return this.min.key;
+    }
+
+    //Returns the largest key in the tree. throws NoSuchElementException if the tree is empty
+    public long maxKey()
+    {
+        if (this.empty())
+            throw new NoSuchElementException("tree is empty");
+        return this.max.key;
+    }
+
+    /**
+     * public long[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     */
+    public long[] keysToArray()
+    {
+        long[] keys = new long[this.size()];
+        Node<V> node = this.min;
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = node.key;
+            node = nextInOrder(node);
+        }
+        return keys;
+    }
+
+    /**
+     * public List<V> values()
+     *
+     * Returns a list of all values in the tree, sorted by their keys.
+     */
+    public List<V> values()
+    {
+        List<V> values = new ArrayList<>(this.size());
+        for (Node<V> node = this.min; node != this.nil; node = nextInOrder(node))
+            values.add(node.value);
+        return values;
+    }
+
+    /**
+     * public LongAVLMap<V>[] split(long x)
+     *
+     * splits the tree into 2 trees according to the key x.
+     * Returns an array [t1, t2] with two trees. keys(t1) < x < keys(t2).
+     * x itself is dropped and this tree is left empty.
+     * precondition: contains(x)
+     */
+    public LongAVLMap<V>[] split(long x)
+    {
+        Node<V> node = lookup(x);
+        if (node == this.nil)
+            throw new NoSuchElementException("split key " + x + " is not in the tree");
+        LongAVLMap<V> small = new LongAVLMap<>();
+        LongAVLMap<V> big = new LongAVLMap<>();
+        splitAt(node, small, big);
+        return pair(small, big);
+    }
+
+    //the array [small, big] (there is no new LongAVLMap<V>[], so the cast is needed)
+    @SuppressWarnings("unchecked")
+    private static <V> LongAVLMap<V>[] pair(LongAVLMap<V> small, LongAVLMap<V> big)
+    {
+        return (LongAVLMap<V>[]) new LongAVLMap<?>[] {small, big};
+    }
+
+    /**
+     * public int join(long x, V v, LongAVLMap<V> t)
+     *
+     * joins t and an item with key x and value v with the tree.
+     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+     * precondition: keys(x,t) < keys() or keys(x,t) > keys().
+     * postcondition: t is empty
+     */
+    public int join(long x, V v, LongAVLMap<V> t)
+    {
+        boolean thisIsBigger;
+        if (!this.empty())
+            thisIsBigger = x < this.root.key;
+        else
+            thisIsBigger = !t.empty() && x > t.root.key;
+        return joinAt(new Node<>(x, v), t, thisIsBigger);
+    }
+
+    /**
+     * Node
+     *
+     * A node of a LongAVLMap: a long key, its value and the links of AbstractAVLMap.Node.
+     */
+    static final class Node<V> extends AbstractAVLMap.Node<Node<V>>
+    {
+        final long key;
+        V value;
+
+        Node(long key, V value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
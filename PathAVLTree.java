@@ -0,0 +1,456 @@
+import java.util.function.IntConsumer;
+
+/**
+ *
+ * PathAVLTree
+ *
+ * An AVL tree with distinct int keys and info, whose nodes have no parent pointers and no
+ * subtree sizes- a key, an info, a height and two children (32 bytes, against 48 for an AVLNode).
+ * insert and delete remember the search path in an explicit stack and retrace it bottom-up
+ * for as long as a subtree's height changes, instead of walking parent pointers back to the root-
+ * so a rotation writes the two children it moves and the one pointer above it, and nothing
+ * is written above the last node whose height changed.
+ *
+ * insert/delete/search have the same semantics (and rebalance counts) as AVLTree's.
+ * It is not a drop-in replacement for AVLTree- with no subtree sizes there is no split/ join,
+ * no rank/ select and no set operations.
+ * The path stack belongs to the tree, so like AVLTree it is not safe for concurrent updates.
+ *
+ */
+public class PathAVLTree
+{
+    //the longest path an insert/ delete can go down. an AVL tree of height 45 has more than 2^31 nodes
+    private static final int MAX_PATH = 48;
+
+    private Node root; //null for an empty tree
+    private Node min, max;
+    private int size;
+    private final Node[] path = new Node[MAX_PATH]; //path[0] is the root, reused by every insert/ delete
+
+    //a node of the tree. no parent- the way back up is the path stack
+    private static final class Node
+    {
+        int key;
+        String info;
+        int height; //0 for a leaf, a missing child counts as -1
+        Node left, right;
+
+        Node(int key, String info)
+        {
+            this.key = key;
+            this.info = info;
+        }
+    }
+
+    //constructor for empty tree
+    public PathAVLTree()
+    {
+    }
+
+    /**
+     * public boolean empty()
+     *
+     * returns true if and only if the tree is empty
+     */
+    public boolean empty()
+    {
+        return this.root == null;
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of nodes in the tree.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     */
+    public String search(int k)
+    {
+        Node node = this.root;
+        while (node != null)
+        {
+            if (k == node.key)
+                return node.info;
+            node = (k < node.key) ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * public boolean contains(int k)
+     *
+     * returns true if and only if an item with key k exists in the tree
+     */
+    public boolean contains(int k)
+    {
+        Node node = this.root;
+        while (node != null)
+        {
+            if (k == node.key)
+                return true;
+            node = (k < node.key) ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i to the tree.
+     * returns the number of rebalancing operations (counted as in AVLTree.insert),
+     * or -1 if an item with key k already exists in the tree.
+     */
+    public int insert(int k, String i)
+    {
+        if (this.root == null)
+        {
+            this.root = new Node(k, i);
+            this.min = this.root;
+            this.max = this.root;
+            this.size = 1;
+            return 0;
+        }
+
+        //going down to the node the new node should be under, pushing the path
+        Node[] path = this.path;
+        int depth = 0;
+        Node node = this.root;
+        while (node != null)
+        {
+            if (k == node.key) //already in tree
+                return -1;
+            path[depth++] = node;
+            node = (k < node.key) ? node.left : node.right;
+        }
+
+        Node newNode = new Node(k, i);
+        Node insertAfter = path[depth - 1];
+        if (k < insertAfter.key)
+        {
+            insertAfter.left = newNode;
+            if (k < this.min.key)
+                this.min = newNode;
+        }
+        else
+        {
+            insertAfter.right = newNode;
+            if (k > this.max.key)
+                this.max = newNode;
+        }
+        this.size++;
+        return retrace(depth, insertAfter.height);
+    }
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes an item with key k from the tree, if it is there.
+     * returns the number of rebalancing operations (counted as in AVLTree.delete),
+     * or -1 if an item with key k was not found in the tree.
+     */
+    public int delete(int k)
+    {
+        Node[] path = this.path;
+        int depth = 0;
+        Node node = this.root;
+        while (node != null && node.key != k)
+        {
+            path[depth++] = node;
+            node = (k < node.key) ? node.left : node.right;
+        }
+        if (node == null) //k is not in the tree
+            return -1;
+
+        boolean wasMin = node == this.min, wasMax = node == this.max;
+        Node holder = null; //the node that takes the successor's item, if node is binary
+        if (node.left != null && node.right != null)
+        {
+            //binary- the successor's item moves into node, and the successor (no left child) is removed instead
+            path[depth++] = node;
+            Node suc = node.right;
+            while (suc.left != null)
+            {
+                path[depth++] = suc;
+                suc = suc.left;
+            }
+            node.key = suc.key;
+            node.info = suc.info;
+            if (this.max == suc)
+                this.max = node;
+            holder = node;
+            node = suc;
+        }
+
+        //node has at most one child, which takes its place
+        Node child = (node.left != null) ? node.left : node.right;
+        if (depth == 0)
+            this.root = child;
+        else if (path[depth - 1].left == node)
+            path[depth - 1].left = child;
+        else
+            path[depth - 1].right = child;
+        this.size--;
+        int bottomHeight = (depth == 0) ? 0 : path[depth - 1].height;
+        //the successor was holder's right child- AVLTree relinks it in holder's place with a height
+        //from its new children, so holder gets that height too (uncounted)
+        if (holder != null && holder == path[depth - 1])
+            update(holder);
+
+        int rebalanceCounter = retrace(depth, bottomHeight);
+        if (wasMin)
+            this.min = leftmost(this.root);
+        if (wasMax)
+            this.max = rightmost(this.root);
+        return rebalanceCounter;
+    }
+
+    //fixing the rank differences of path[depth-1] .. path[0], bottom-up, until a subtree's height is unchanged-
+    //then every node above is as it was. bottomHeight- path[depth-1]'s height before the update.
+    //same cases and counts as IntAVLTree.rebalance. returns the number of rebalancing operations
+    private int retrace(int depth, int bottomHeight)
+    {
+        Node[] path = this.path;
+        int rebalanceCounter = 0;
+        for (int d = depth - 1; d >= 0; d--)
+        {
+            Node node = path[d];
+            int oldHeight = (d == depth - 1) ? bottomHeight : node.height; //the height the node above saw
+            Node left = node.left, right = node.right;
+            int leftDiff = node.height - height(left);
+            int rightDiff = node.height - height(right);
+            Node top = node; //root of node's subtree after fixing it
+
+            //case 0-1/ 1-0, promote
+            if ((leftDiff == 0 && rightDiff == 1) || (leftDiff == 1 && rightDiff == 0))
+            {
+                node.height++;
+                rebalanceCounter++;
+            }
+            //case 0-2, rotations with the left child
+            else if (leftDiff == 0 && rightDiff == 2)
+            {
+                int childLeftDiff = left.height - height(left.left), childRightDiff = left.height - height(left.right);
+                if (childLeftDiff == 1 && childRightDiff == 2) //1 rotation 1 demote
+                {
+                    top = rotateRight(node);
+                    rebalanceCounter += 2;
+                }
+                else if (childLeftDiff == 2 && childRightDiff == 1) //double rotation
+                {
+                    node.left = rotateLeft(left);
+                    top = rotateRight(node);
+                    rebalanceCounter += 5;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 1) //1 rotation 1 promote
+                {
+                    top = rotateRight(node);
+                    rebalanceCounter += 2;
+                }
+            }
+            //case 2-0, rotations with the right child
+            else if (leftDiff == 2 && rightDiff == 0)
+            {
+                int childLeftDiff = right.height - height(right.left), childRightDiff = right.height - height(right.right);
+                if (childLeftDiff == 2 && childRightDiff == 1)
+                {
+                    top = rotateLeft(node);
+                    rebalanceCounter += 2;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 2)
+                {
+                    node.right = rotateRight(right);
+                    top = rotateLeft(node);
+                    rebalanceCounter += 5;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 1)
+                {
+                    top = rotateLeft(node);
+                    rebalanceCounter += 2;
+                }
+            }
+            //case 2-2, demote
+            else if (leftDiff == 2 && rightDiff == 2)
+            {
+                node.height--;
+                rebalanceCounter++;
+            }
+            //case 3-1, rotations with the right child
+            else if (leftDiff == 3 && rightDiff == 1)
+            {
+                int childLeftDiff = right.height - height(right.left), childRightDiff = right.height - height(right.right);
+                if (childRightDiff == 1) //child 1-1 (1 rotation 1 demote 1 promote) or 2-1 (1 rotation 2 demote)
+                {
+                    top = rotateLeft(node);
+                    rebalanceCounter += 3;
+                }
+                else if (childLeftDiff == 1 && childRightDiff == 2) //double rotation
+                {
+                    node.right = rotateRight(right);
+                    top = rotateLeft(node);
+                    rebalanceCounter += 6;
+                }
+            }
+            //case 1-3, rotations with the left child
+            else if (leftDiff == 1 && rightDiff == 3)
+            {
+                int childLeftDiff = left.height - height(left.left), childRightDiff = left.height - height(left.right);
+                if (childLeftDiff == 1)
+                {
+                    top = rotateRight(node);
+                    rebalanceCounter += 3;
+                }
+                else if (childLeftDiff == 2 && childRightDiff == 1)
+                {
+                    node.left = rotateLeft(left);
+                    top = rotateRight(node);
+                    rebalanceCounter += 6;
+                }
+            }
+
+            if (top != node) //linking the rotated subtree to the node above it
+            {
+                if (d == 0)
+                    this.root = top;
+                else if (path[d - 1].left == node)
+                    path[d - 1].left = top;
+                else
+                    path[d - 1].right = top;
+            }
+            if (top.height == oldHeight) //the nodes above see the same height- nothing more to fix
+                break;
+        }
+        return rebalanceCounter;
+    }
+
+    //the height of node's subtree (-1 for a missing node)
+    private static int height(Node node)
+    {
+        return (node == null) ? -1 : node.height;
+    }
+
+    //setting node's height from its children
+    private static void update(Node node)
+    {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+    }
+
+    //left rotation on node, returns the node that took its place (the caller links it above)
+    private static Node rotateLeft(Node node)
+    {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    //right rotation on node, returns the node that took its place (the caller links it above)
+    private static Node rotateRight(Node node)
+    {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static Node leftmost(Node node)
+    {
+        if (node != null)
+            while (node.left != null)
+                node = node.left;
+        return node;
+    }
+
+    private static Node rightmost(Node node)
+    {
+        if (node != null)
+            while (node.right != null)
+                node = node.right;
+        return node;
+    }
+
+    /**
+     * public String min()
+     *
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     */
+    public String min()
+    {
+        return (this.min == null) ? null : this.min.info;
+    }
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     */
+    public String max()
+    {
+        return (this.max == null) ? null : this.max.info;
+    }
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     */
+    public int[] keysToArray()
+    {
+        int[] keys = new int[this.size];
+        int[] count = new int[1];
+        forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, k -> keys[count[0]++] = k);
+        return keys;
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, IntConsumer action)
+     *
+     * Performs action for every key in [lo, hi], in ascending order.
+     * O(log n + k)- subtrees outside the range are not entered.
+     */
+    public void forEachInRange(int lo, int hi, IntConsumer action)
+    {
+        forEachInRange(this.root, lo, hi, action);
+    }
+
+    private static void forEachInRange(Node node, int lo, int hi, IntConsumer action)
+    {
+        while (node != null)
+        {
+            if (node.key < lo) //all of node's left subtree is below lo
+            {
+                node = node.right;
+                continue;
+            }
+            if (node.key > hi) //all of node's right subtree is above hi
+            {
+                node = node.left;
+                continue;
+            }
+            forEachInRange(node.left, lo, hi, action);
+            action.accept(node.key);
+            node = node.right; //the right subtree continues the walk, without recursion
+        }
+    }
+
+    //Returns tree's rank
+    public int getTreeRank()
+    {
+        return height(this.root);
+    }
+}
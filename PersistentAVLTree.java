@@ -0,0 +1,525 @@
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ *
+ * PersistentAVLTree
+ *
+ * An AVL tree with distinct integer keys and info whose nodes are immutable.
+ * insert/delete/join never change a node- they copy the O(log n) nodes on the path
+ * they touch and share the rest, then publish the new root with one volatile write.
+ * split builds the two halves the same way and leaves this tree as it was.
+ *
+ * snapshot() is O(1): it hands out the current root, which stays a complete and
+ * valid tree forever. Snapshots (and all the reads of this tree) take no locks and
+ * can be used from any thread while writers go on. Writers are serialized on the tree.
+ *
+ */
+public class PersistentAVLTree
+{
+    private volatile Node root; //null for an empty tree
+
+    //constructor for empty tree
+    public PersistentAVLTree()
+    {
+    }
+
+    //constructor for a tree with the given root
+    private PersistentAVLTree(Node root)
+    {
+        this.root = root;
+    }
+
+    /**
+     * public PersistentAVLTree snapshot()
+     *
+     * Returns a tree with the items of this tree at the moment of the call, in O(1).
+     * Later changes to this tree don't show in the snapshot, and changes to the snapshot
+     * don't show in this tree- both share their nodes until one of them copies a path.
+     */
+    public PersistentAVLTree snapshot()
+    {
+        return new PersistentAVLTree(this.root);
+    }
+
+    /**
+     * public boolean empty()
+     *
+     * returns true if and only if the tree is empty
+     */
+    public boolean empty()
+    {
+        return this.root == null;
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of nodes in the tree.
+     */
+    public int size()
+    {
+        return size(this.root);
+    }
+
+    //Returns tree's rank (-1 for an empty tree)
+    public int getTreeRank()
+    {
+        return height(this.root);
+    }
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     */
+    public String search(int k)
+    {
+        Node node = lookup(this.root, k);
+        return (node == null) ? null : node.info;
+    }
+
+    /**
+     * public boolean contains(int k)
+     *
+     * returns true if and only if an item with key k exists in the tree
+     */
+    public boolean contains(int k)
+    {
+        return lookup(this.root, k) != null;
+    }
+
+    /**
+     * public String get(int k, String defaultValue)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns defaultValue
+     */
+    public String get(int k, String defaultValue)
+    {
+        Node node = lookup(this.root, k);
+        return (node == null) ? defaultValue : node.info;
+    }
+
+    //iterative search under node for the node with key k, or null if k is not there
+    private static Node lookup(Node node, int k)
+    {
+        while (node != null)
+        {
+            if (k == node.key)
+                return node;
+            node = (k < node.key) ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i to the tree, copying the nodes on k's path.
+     * returns the length of k's path- the number of copied nodes, rotations aside-
+     * or -1 if an item with key k already exists in the tree.
+     */
+    public synchronized int insert(int k, String i)
+    {
+        Node oldRoot = this.root;
+        if (lookup(oldRoot, k) != null)
+            return -1;
+        Node newRoot = insert(oldRoot, k, i);
+        this.root = newRoot;
+        return pathLength(newRoot, k);
+    }
+
+    //returns a new subtree with node's items and (k, i). k is not under node
+    private static Node insert(Node node, int k, String i)
+    {
+        if (node == null)
+            return new Node(null, k, i, null);
+        if (k < node.key)
+            return balance(insert(node.left, k, i), node, node.right);
+        return balance(node.left, node, insert(node.right, k, i));
+    }
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes an item with key k from the tree, if it is there, copying the nodes on k's path.
+     * returns the length of k's path (as in insert), or -1 if an item with key k was not found in the tree.
+     */
+    public synchronized int delete(int k)
+    {
+        Node oldRoot = this.root;
+        if (lookup(oldRoot, k) == null)
+            return -1;
+        int copied = pathLength(oldRoot, k);
+        this.root = delete(oldRoot, k);
+        return copied;
+    }
+
+    //returns a new subtree with node's items without k. k is under node
+    private static Node delete(Node node, int k)
+    {
+        if (k < node.key)
+            return balance(delete(node.left, k), node, node.right);
+        if (k > node.key)
+            return balance(node.left, node, delete(node.right, k));
+        if (node.left == null)
+            return node.right;
+        if (node.right == null)
+            return node.left;
+        //the successor takes node's place
+        Node suc = leftmost(node.right);
+        return balance(node.left, suc, deleteMin(node.right));
+    }
+
+    //returns a new subtree with node's items without its smallest one
+    private static Node deleteMin(Node node)
+    {
+        if (node.left == null)
+            return node.right;
+        return balance(deleteMin(node.left), node, node.right);
+    }
+
+    //number of nodes from the root down to the node with key k (or to where it would be)
+    private static int pathLength(Node node, int k)
+    {
+        int length = 0;
+        while (node != null)
+        {
+            length++;
+            if (k == node.key)
+                break;
+            node = (k < node.key) ? node.left : node.right;
+        }
+        return length;
+    }
+
+    /**
+     * public PersistentAVLTree[] split(int x)
+     *
+     * Returns an array [t1, t2] with two trees. keys(t1) < x < keys(t2).
+     * This tree is not changed- the halves copy O(log n) nodes and share the rest with it.
+     * precondition: none (x doesn't have to be in the tree)
+     */
+    public PersistentAVLTree[] split(int x)
+    {
+        Split parts = new Split();
+        split(this.root, x, parts);
+        return new PersistentAVLTree[] {new PersistentAVLTree(parts.left), new PersistentAVLTree(parts.right)};
+    }
+
+    //the two halves of a split
+    private static final class Split
+    {
+        Node left, right;
+    }
+
+    //splits node's subtree by k into parts- every ancestor on k's path is joined (copied) into its side
+    private static void split(Node node, int k, Split parts)
+    {
+        if (node == null)
+        {
+            parts.left = null;
+            parts.right = null;
+            return;
+        }
+        if (k == node.key)
+        {
+            parts.left = node.left;
+            parts.right = node.right;
+        }
+        else if (k < node.key)
+        {
+            split(node.left, k, parts);
+            parts.right = join(parts.right, node, node.right);
+        }
+        else
+        {
+            split(node.right, k, parts);
+            parts.left = join(node.left, node, parts.left);
+        }
+    }
+
+    /**
+     * public int join(int x, String info, PersistentAVLTree t)
+     *
+     * makes this tree the join of this tree, the item (x, info) and t.
+     * t is not changed- it shares its nodes with this tree.
+     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+     * precondition: keys(x,t) < keys() or keys(x,t) > keys(). t/tree might be empty (rank = -1).
+     */
+    public synchronized int join(int x, String info, PersistentAVLTree t)
+    {
+        Node mine = this.root;
+        Node other = t.root;
+        int joinCost = Math.abs(height(mine) - height(other)) + 1;
+
+        //finding which of the trees holds the bigger keys
+        boolean thisIsBigger = (mine != null) ? x < mine.key : (other != null && x > other.key);
+        Node pivot = new Node(null, x, info, null);
+        this.root = thisIsBigger ? join(other, pivot, mine) : join(mine, pivot, other);
+        return joinCost;
+    }
+
+    //a new subtree of left < k < right (k's children are ignored). copies the spine of the higher
+    //subtree down to the height of the lower one- O(|rank difference| + 1) new nodes
+    private static Node join(Node left, Node k, Node right)
+    {
+        if (height(left) > height(right) + 1)
+            return balance(left.left, left, join(left.right, k, right));
+        if (height(right) > height(left) + 1)
+            return balance(join(left, k, right.left), right, right.right);
+        return new Node(left, k.key, k.info, right);
+    }
+
+    //a new node with k's item over left and right, rotated if their heights differ by 2.
+    //left and right are valid AVL subtrees whose heights differ by at most 2
+    private static Node balance(Node left, Node k, Node right)
+    {
+        int diff = height(left) - height(right);
+        if (diff > 1)
+        {
+            if (height(left.left) >= height(left.right)) //single rotation
+                return new Node(left.left, left.key, left.info, new Node(left.right, k.key, k.info, right));
+            Node lr = left.right; //double rotation
+            return new Node(new Node(left.left, left.key, left.info, lr.left), lr.key, lr.info,
+                    new Node(lr.right, k.key, k.info, right));
+        }
+        if (diff < -1)
+        {
+            if (height(right.right) >= height(right.left))
+                return new Node(new Node(left, k.key, k.info, right.left), right.key, right.info, right.right);
+            Node rl = right.left;
+            return new Node(new Node(left, k.key, k.info, rl.left), rl.key, rl.info,
+                    new Node(rl.right, right.key, right.info, right.right));
+        }
+        return new Node(left, k.key, k.info, right);
+    }
+
+    /**
+     * public String min()
+     *
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     */
+    public String min()
+    {
+        Node node = this.root;
+        return (node == null) ? null : leftmost(node).info;
+    }
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     */
+    public String max()
+    {
+        Node node = this.root;
+        if (node == null)
+            return null;
+        while (node.right != null)
+            node = node.right;
+        return node.info;
+    }
+
+    //returns the leftmost node of node's subtree
+    private static Node leftmost(Node node)
+    {
+        while (node.left != null)
+            node = node.left;
+        return node;
+    }
+
+    /**
+     * public int select(int i)
+     *
+     * Returns the key of the i-th smallest item (i counts from 0),
+     * or -1 if i is out of range [0, size()).
+     */
+    public int select(int i)
+    {
+        Node node = this.root;
+        if (i < 0 || i >= size(node))
+            return -1;
+        while (true)
+        {
+            int leftSize = size(node.left);
+            if (i == leftSize)
+                return node.key;
+            if (i < leftSize)
+                node = node.left;
+            else
+            {
+                i -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * public int rank(int k)
+     *
+     * Returns the number of keys in the tree that are smaller than k.
+     */
+    public int rank(int k)
+    {
+        int count = 0;
+        Node node = this.root;
+        while (node != null)
+        {
+            if (k <= node.key)
+                node = node.left;
+            else
+            {
+                count += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     */
+    public int[] keysToArray()
+    {
+        Node node = this.root; //one read- the array is a consistent picture of one version
+        int[] keys = new int[size(node)];
+        fillKeys(node, keys, 0);
+        return keys;
+    }
+
+    //writes node's keys in order from keys[from], returns the position after the last one
+    private static int fillKeys(Node node, int[] keys, int from)
+    {
+        while (node != null)
+        {
+            from = fillKeys(node.left, keys, from);
+            keys[from++] = node.key;
+            node = node.right; //the right subtree in the loop- recursion only goes left
+        }
+        return from;
+    }
+
+    /**
+     * public String[] infoToArray()
+     *
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     */
+    public String[] infoToArray()
+    {
+        Node node = this.root;
+        String[] infos = new String[size(node)];
+        fillInfos(node, infos, 0);
+        return infos;
+    }
+
+    private static int fillInfos(Node node, String[] infos, int from)
+    {
+        while (node != null)
+        {
+            from = fillInfos(node.left, infos, from);
+            infos[from++] = node.info;
+            node = node.right;
+        }
+        return from;
+    }
+
+    /**
+     * public IntStream keys(int lo, int hi)
+     *
+     * Returns a sequential stream of the keys in [lo, hi], in ascending order,
+     * as they were when the stream was made- later writes don't show in it.
+     */
+    public IntStream keys(int lo, int hi)
+    {
+        return StreamSupport.intStream(new KeySpliterator(this.root, lo, hi), false);
+    }
+
+    //in-order walk with an explicit stack of the ancestors still to visit (at most the tree's height)
+    private static final class KeySpliterator extends Spliterators.AbstractIntSpliterator
+    {
+        private final ArrayDeque<Node> stack = new ArrayDeque<>();
+        private final int hi;
+
+        KeySpliterator(Node root, int lo, int hi)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT
+                    | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+            this.hi = hi;
+            //pushing the path to lo- only nodes >= lo, so the walk starts at the first key in range
+            Node node = root;
+            while (node != null)
+            {
+                if (node.key >= lo)
+                {
+                    this.stack.push(node);
+                    node = node.left;
+                }
+                else
+                    node = node.right;
+            }
+        }
+
+        public boolean tryAdvance(IntConsumer action)
+        {
+            Node node = this.stack.poll();
+            if (node == null || node.key > this.hi)
+            {
+                this.stack.clear();
+                return false;
+            }
+            for (Node child = node.right; child != null; child = child.left)
+                this.stack.push(child);
+            action.accept(node.key);
+            return true;
+        }
+
+        public Comparator<? super Integer> getComparator()
+        {
+            return null; //natural order
+        }
+    }
+
+    private static int height(Node node)
+    {
+        return (node == null) ? -1 : node.height;
+    }
+
+    private static int size(Node node)
+    {
+        return (node == null) ? 0 : node.size;
+    }
+
+    //an immutable node. final fields- a node handed to another thread is seen fully built without locks
+    static final class Node
+    {
+        final int key;
+        final String info;
+        final Node left, right;
+        final int height, size;
+
+        Node(Node left, int key, String info, Node right)
+        {
+            this.key = key;
+            this.info = info;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(PersistentAVLTree.height(left), PersistentAVLTree.height(right)) + 1;
+            this.size = PersistentAVLTree.size(left) + PersistentAVLTree.size(right) + 1;
+        }
+    }
+}
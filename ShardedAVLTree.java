@@ -0,0 +1,589 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ *
+ * ShardedAVLTree
+ *
+ * A thread-safe tree with distinct integer keys and info, made of N shards. Each shard is an
+ * AVLTree with its own lock that holds one range of keys; the ranges partition all ints.
+ * insert/delete/search lock only the shard of their key, so writers on different shards don't wait for each other.
+ *
+ * The ranges follow the keys: when a shard gets much bigger than a neighbour, the upper
+ * (or lower) part of it moves to the neighbour with AVLTree's split and join- O(log n)-
+ * and the boundary between them moves with it. So the shards keep about the same size
+ * whatever the key distribution is.
+ *
+ * size/ min/ max and keys(lo, hi) are weakly consistent (they lock one shard at a time);
+ * select/ rank/ countInRange/ keysToArray/ infoToArray lock all the shards for a consistent answer.
+ *
+ */
+public class ShardedAVLTree
+{
+    //two neighbour shards are evened out once one has more than 1/REBALANCE_RATIO + REBALANCE_SLACK items over the other.
+    //a small ratio keeps the sizes close along the whole row of shards- every move is only O(log n)
+    private static final int REBALANCE_RATIO = 8;
+    private static final int REBALANCE_SLACK = 64;
+
+    private final Shard[] shards;
+
+    //constructor for empty tree with four shards per processor
+    public ShardedAVLTree()
+    {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    //constructor for empty tree with the given number of shards, over equal ranges of the ints
+    public ShardedAVLTree(int shardCount)
+    {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("shardCount must be at least 1: " + shardCount);
+        this.shards = new Shard[shardCount];
+        long width = (1L << 32) / shardCount;
+        for (int s = 0; s < shardCount; s++)
+        {
+            int lo = (int) (Integer.MIN_VALUE + s * width);
+            int hi = (s == shardCount - 1) ? Integer.MAX_VALUE : (int) (Integer.MIN_VALUE + (s + 1) * width - 1);
+            this.shards[s] = new Shard(s, lo, hi);
+        }
+    }
+
+    /**
+     * public int getShardCount()
+     *
+     * Returns the number of shards
+     */
+    public int getShardCount()
+    {
+        return this.shards.length;
+    }
+
+    /**
+     * public int[] shardSizes()
+     *
+     * Returns the number of items in every shard, in key order
+     */
+    public int[] shardSizes()
+    {
+        int[] sizes = new int[this.shards.length];
+        for (int s = 0; s < sizes.length; s++)
+            sizes[s] = this.shards[s].count;
+        return sizes;
+    }
+
+    /**
+     * public boolean empty()
+     *
+     * returns true if and only if the tree is empty
+     */
+    public boolean empty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * public int size()
+     *
+     * Returns the number of items in the tree. Exact when no writer is running.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Shard shard : this.shards)
+            size += shard.count;
+        return size;
+    }
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     */
+    public String search(int k)
+    {
+        Shard shard = lockShardOf(k);
+        try
+        {
+            return shard.tree.search(k);
+        }
+        finally
+        {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * public boolean contains(int k)
+     *
+     * returns true if and only if an item with key k exists in the tree
+     */
+    public boolean contains(int k)
+    {
+        Shard shard = lockShardOf(k);
+        try
+        {
+            return shard.tree.contains(k);
+        }
+        finally
+        {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i to k's shard.
+     * returns the shard's AVLTree.insert result- -1 if an item with key k already exists in the tree.
+     */
+    public int insert(int k, String i)
+    {
+        Shard shard = lockShardOf(k);
+        int result;
+        try
+        {
+            result = shard.tree.insert(k, i);
+            shard.count = shard.tree.size();
+        }
+        finally
+        {
+            shard.lock.unlock();
+        }
+        if (result != -1)
+            rebalanceAround(shard.index);
+        return result;
+    }
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes an item with key k from k's shard, if it is there.
+     * returns the shard's AVLTree.delete result- -1 if an item with key k was not found in the tree.
+     */
+    public int delete(int k)
+    {
+        Shard shard = lockShardOf(k);
+        int result;
+        try
+        {
+            result = shard.tree.delete(k);
+            shard.count = shard.tree.size();
+        }
+        finally
+        {
+            shard.lock.unlock();
+        }
+        if (result != -1)
+            rebalanceAround(shard.index);
+        return result;
+    }
+
+    //returns k's shard, locked. the ranges are read without locks, so a shard whose range
+    //moved away from k before we got its lock is let go and k is looked up again
+    private Shard lockShardOf(int k)
+    {
+        while (true)
+        {
+            Shard shard = this.shards[shardIndexOf(k)];
+            shard.lock.lock();
+            if (shard.lo <= k && k <= shard.hi)
+                return shard;
+            shard.lock.unlock();
+        }
+    }
+
+    //binary search for the last shard whose range starts at or below k
+    private int shardIndexOf(int k)
+    {
+        int low = 0, high = this.shards.length - 1;
+        while (low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+            if (this.shards[mid].lo <= k)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    //evening out shard s with its neighbours after a write changed its size
+    private void rebalanceAround(int s)
+    {
+        if (s > 0)
+            rebalancePair(s - 1);
+        if (s < this.shards.length - 1)
+            rebalancePair(s);
+    }
+
+    //moving items between shards s and s+1 if their sizes are too far apart
+    private void rebalancePair(int s)
+    {
+        Shard low = this.shards[s], high = this.shards[s + 1];
+        if (!needsRebalance(low.count, high.count)) //unlocked read- the check is repeated under the locks
+            return;
+        low.lock.lock();
+        high.lock.lock();
+        try
+        {
+            int lowSize = low.tree.size(), highSize = high.tree.size();
+            if (!needsRebalance(lowSize, highSize))
+                return;
+            if (lowSize > highSize)
+                moveUp(low, high, (lowSize - highSize) / 2);
+            else
+                moveDown(low, high, (highSize - lowSize) / 2);
+            low.count = low.tree.size();
+            high.count = high.tree.size();
+        }
+        finally
+        {
+            high.lock.unlock();
+            low.lock.unlock();
+        }
+    }
+
+    private static boolean needsRebalance(int a, int b)
+    {
+        return a > b + b / REBALANCE_RATIO + REBALANCE_SLACK || b > a + a / REBALANCE_RATIO + REBALANCE_SLACK;
+    }
+
+    //moving the m largest items of low to high (both locked)- split at the first key to move, join the rest to high
+    private static void moveUp(Shard low, Shard high, int m)
+    {
+        int pivot = low.tree.select(low.tree.size() - m);
+        String info = low.tree.search(pivot);
+        AVLTree[] parts = low.tree.split(pivot); //split drops pivot's own node
+        parts[1].insert(pivot, info);
+        low.tree = parts[0];
+        high.tree = concat(parts[1], high.tree);
+        low.hi = pivot - 1;
+        high.lo = pivot;
+    }
+
+    //moving the m smallest items of high to low (both locked)
+    private static void moveDown(Shard low, Shard high, int m)
+    {
+        int pivot = high.tree.select(m - 1);
+        String info = high.tree.search(pivot);
+        AVLTree[] parts = high.tree.split(pivot);
+        parts[0].insert(pivot, info);
+        low.tree = concat(low.tree, parts[0]);
+        high.tree = parts[1];
+        low.hi = pivot;
+        high.lo = pivot + 1;
+    }
+
+    //joins smaller < bigger into one tree and returns it. bigger's smallest item is the middle node of the join
+    private static AVLTree concat(AVLTree smaller, AVLTree bigger)
+    {
+        if (smaller.empty())
+            return bigger;
+        if (bigger.empty())
+            return smaller;
+        int k = bigger.select(0);
+        String info = bigger.search(k);
+        bigger.delete(k);
+        smaller.join(new AVLTree.AVLNode(k, info, AVLTree.AVLNode.virtual, AVLTree.AVLNode.virtual, null), bigger);
+        return smaller;
+    }
+
+    /**
+     * public String min()
+     *
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     */
+    public String min()
+    {
+        for (Shard shard : this.shards)
+        {
+            shard.lock.lock();
+            try
+            {
+                if (!shard.tree.empty())
+                    return shard.tree.min();
+            }
+            finally
+            {
+                shard.lock.unlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     */
+    public String max()
+    {
+        for (int s = this.shards.length - 1; s >= 0; s--)
+        {
+            Shard shard = this.shards[s];
+            shard.lock.lock();
+            try
+            {
+                if (!shard.tree.empty())
+                    return shard.tree.max();
+            }
+            finally
+            {
+                shard.lock.unlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * public int select(int i)
+     *
+     * Returns the key of the i-th smallest item (i counts from 0),
+     * or -1 if i is out of range [0, size()).
+     */
+    public int select(int i)
+    {
+        lockAll();
+        try
+        {
+            if (i < 0)
+                return -1;
+            for (Shard shard : this.shards)
+            {
+                int size = shard.tree.size();
+                if (i < size)
+                    return shard.tree.select(i);
+                i -= size;
+            }
+            return -1;
+        }
+        finally
+        {
+            unlockAll();
+        }
+    }
+
+    /**
+     * public int rank(int k)
+     *
+     * Returns the number of keys in the tree that are smaller than k
+     */
+    public int rank(int k)
+    {
+        lockAll();
+        try
+        {
+            return rankLocked(k);
+        }
+        finally
+        {
+            unlockAll();
+        }
+    }
+
+    /**
+     * public int countInRange(int lo, int hi)
+     *
+     * Returns the number of keys x in the tree with lo <= x <= hi,
+     * or 0 if lo > hi.
+     */
+    public int countInRange(int lo, int hi)
+    {
+        if (lo > hi)
+            return 0;
+        lockAll();
+        try
+        {
+            int below = rankLocked(lo);
+            int upTo = (hi == Integer.MAX_VALUE) ? sizeLocked() : rankLocked(hi + 1);
+            return upTo - below;
+        }
+        finally
+        {
+            unlockAll();
+        }
+    }
+
+    //rank of k with all shards locked- the whole shards below k's shard, and k's rank in it
+    private int rankLocked(int k)
+    {
+        int rank = 0;
+        for (Shard shard : this.shards)
+        {
+            if (k <= shard.hi)
+                return rank + shard.tree.rank(k);
+            rank += shard.tree.size();
+        }
+        return rank;
+    }
+
+    private int sizeLocked()
+    {
+        int size = 0;
+        for (Shard shard : this.shards)
+            size += shard.tree.size();
+        return size;
+    }
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     */
+    public int[] keysToArray()
+    {
+        lockAll();
+        try
+        {
+            int[] keys = new int[sizeLocked()];
+            int from = 0;
+            for (Shard shard : this.shards)
+            {
+                int[] part = shard.tree.keysToArray();
+                System.arraycopy(part, 0, keys, from, part.length);
+                from += part.length;
+            }
+            return keys;
+        }
+        finally
+        {
+            unlockAll();
+        }
+    }
+
+    /**
+     * public String[] infoToArray()
+     *
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     */
+    public String[] infoToArray()
+    {
+        lockAll();
+        try
+        {
+            String[] infos = new String[sizeLocked()];
+            int from = 0;
+            for (Shard shard : this.shards)
+            {
+                String[] part = shard.tree.infoToArray();
+                System.arraycopy(part, 0, infos, from, part.length);
+                from += part.length;
+            }
+            return infos;
+        }
+        finally
+        {
+            unlockAll();
+        }
+    }
+
+    /**
+     * public IntStream keys(int lo, int hi)
+     *
+     * Returns a sequential stream of the keys in [lo, hi], in ascending order.
+     * Locks one shard at a time and copies its part of the range- weakly consistent:
+     * it sees every key that is in the tree for its whole run, once, even if shard ranges move.
+     */
+    public IntStream keys(int lo, int hi)
+    {
+        return StreamSupport.intStream(new KeySpliterator(lo, hi), false);
+    }
+
+    //copies the keys of one shard at a time, from the shard that holds next up to the end of its range
+    private class KeySpliterator extends Spliterators.AbstractIntSpliterator
+    {
+        private long next; //the next key to look up (long- it passes Integer.MAX_VALUE at the end)
+        private final int hi;
+        private int[] chunk = new int[0];
+        private int position;
+
+        KeySpliterator(int lo, int hi)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT
+                    | Spliterator.NONNULL);
+            this.next = lo;
+            this.hi = hi;
+        }
+
+        public boolean tryAdvance(IntConsumer action)
+        {
+            while (this.position == this.chunk.length)
+            {
+                if (this.next > this.hi)
+                    return false;
+                nextChunk();
+            }
+            action.accept(this.chunk[this.position++]);
+            return true;
+        }
+
+        //the keys in [next, min(hi, shard's end)] of next's shard, under its lock
+        private void nextChunk()
+        {
+            Shard shard = lockShardOf((int) this.next);
+            try
+            {
+                int end = Math.min(this.hi, shard.hi);
+                int count = shard.tree.countInRange((int) this.next, end);
+                int[] keys = new int[count];
+                Iterator<AVLTree.IAVLNode> nodes = shard.tree.iterator((int) this.next, end);
+                for (int j = 0; j < count; j++)
+                    keys[j] = nodes.next().getKey();
+                this.chunk = keys;
+                this.position = 0;
+                this.next = (long) end + 1;
+            }
+            finally
+            {
+                shard.lock.unlock();
+            }
+        }
+
+        public Comparator<? super Integer> getComparator()
+        {
+            return null; //natural order
+        }
+    }
+
+    //locking all shards in key order- the same order as rebalancePair, so they can't deadlock
+    private void lockAll()
+    {
+        for (Shard shard : this.shards)
+            shard.lock.lock();
+    }
+
+    private void unlockAll()
+    {
+        for (int s = this.shards.length - 1; s >= 0; s--)
+            this.shards[s].lock.unlock();
+    }
+
+    //one shard- the keys in [lo, hi]. tree, lo and hi change only under the lock (lo and hi under both neighbours' locks)
+    private static final class Shard
+    {
+        final int index;
+        final ReentrantLock lock = new ReentrantLock();
+        AVLTree tree = new AVLTree();
+        volatile int lo, hi;
+        volatile int count; //tree's size, readable without the lock
+
+        Shard(int index, int lo, int hi)
+        {
+            this.index = index;
+            this.lo = lo;
+            this.hi = hi;
+        }
+    }
+}
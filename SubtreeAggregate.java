@@ -0,0 +1,67 @@
+import java.util.function.ToLongFunction;
+
+/**
+ *
+ * SubtreeAggregate
+ *
+ * A monoid over a numeric payload of the items, kept by an AVLTree in every node for its subtree
+ * (like the subtree size)- see AVLTree(SubtreeAggregate) and AVLTree.aggregate(lo, hi).
+ * combine must be associative with identity() as its identity. It doesn't have to be commutative-
+ * the aggregate of a range combines the items' values in ascending key order.
+ *
+ */
+public interface SubtreeAggregate
+{
+    //the aggregate of no items
+    long identity();
+
+    //the payload of the item (key, info)
+    long value(int key, String info);
+
+    //the aggregate of the items of left followed by the items of right
+    long combine(long left, long right);
+
+    //the sum of payload over the items
+    static SubtreeAggregate sum(ToLongFunction<String> payload)
+    {
+        return new SubtreeAggregate()
+        {
+            public long identity() { return 0; }
+            public long value(int key, String info) { return payload.applyAsLong(info); }
+            public long combine(long left, long right) { return left + right; }
+        };
+    }
+
+    //the smallest payload of the items (Long.MAX_VALUE for none)
+    static SubtreeAggregate min(ToLongFunction<String> payload)
+    {
+        return new SubtreeAggregate()
+        {
+            public long identity() { return Long.MAX_VALUE; }
+            public long value(int key, String info) { return payload.applyAsLong(info); }
+            public long combine(long left, long right) { return Math.min(left, right); }
+        };
+    }
+
+    //the largest payload of the items (Long.MIN_VALUE for none)
+    static SubtreeAggregate max(ToLongFunction<String> payload)
+    {
+        return new SubtreeAggregate()
+        {
+            public long identity() { return Long.MIN_VALUE; }
+            public long value(int key, String info) { return payload.applyAsLong(info); }
+            public long combine(long left, long right) { return Math.max(left, right); }
+        };
+    }
+
+    //the sum of the keys of the items
+    static SubtreeAggregate sumOfKeys()
+    {
+        return new SubtreeAggregate()
+        {
+            public long identity() { return 0; }
+            public long value(int key, String info) { return key; }
+            public long combine(long left, long right) { return left + right; }
+        };
+    }
+}
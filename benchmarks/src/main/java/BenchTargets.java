@@ -0,0 +1,478 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import benchmarks.BatchOps;
+import benchmarks.ScanOps;
+import benchmarks.SetOps;
+import benchmarks.SplitJoinOps;
+import benchmarks.TreeOps;
+
+/**
+ * BenchTargets
+ *
+ * Adapters from the default-package trees to benchmarks.TreeOps, each with the
+ * capability interfaces its tree really has. Looked up by name through TreeOps.create(String).
+ */
+public class BenchTargets {
+
+    public static TreeOps create(String name) {
+        switch (name) {
+            case "avl":
+                return new AVLTreeOps();
+            case "wavl":
+                return new WeakAVLTreeOps();
+            case "finger":
+                return new FingerAVLTreeOps();
+            case "int":
+                return new IntTreeOps();
+            case "locked":
+                return new LockedTreeOps();
+            case "concurrent":
+                return new ConcurrentTreeOps();
+            case "sharded":
+                return new ShardedTreeOps();
+            case "frozen":
+                return new FrozenTreeOps();
+            case "path":
+                return new PathTreeOps();
+            default:
+                if (name.startsWith("durable-")) //durable-<syncEvery>
+                    return new DurableTreeOps(Integer.parseInt(name.substring("durable-".length())));
+                throw new IllegalArgumentException("unknown benchmark target: " + name);
+        }
+    }
+
+    static class AVLTreeOps implements ScanOps, BatchOps, SetOps, SplitJoinOps {
+        AVLTree tree = new AVLTree();
+
+        public int insert(int k, String i) {
+            return tree.insert(k, i);
+        }
+
+        public int delete(int k) {
+            return tree.delete(k);
+        }
+
+        public String search(int k) {
+            return tree.search(k);
+        }
+
+        public boolean contains(int k) {
+            return tree.contains(k);
+        }
+
+        public int size() {
+            return tree.size();
+        }
+
+        public int insertAll(int[] keys, String[] infos) {
+            return tree.insertAll(keys, infos);
+        }
+
+        public int deleteAll(int[] keys) {
+            return tree.deleteAll(keys);
+        }
+
+        public void union(SetOps other, ForkJoinPool pool) {
+            tree.union(((AVLTreeOps) other).tree, pool);
+        }
+
+        public void difference(SetOps other, ForkJoinPool pool) {
+            tree.difference(((AVLTreeOps) other).tree, pool);
+        }
+
+        public int putAllSorted(int[] keys, String[] infos) {
+            return tree.putAllSorted(keys, infos);
+        }
+
+        public int[] keysToArray() {
+            return tree.keysToArray();
+        }
+
+        public long scan(int lo, int hi) {
+            long sum = 0;
+            Iterator<AVLTree.IAVLNode> it = tree.iterator(lo, hi);
+            while (it.hasNext())
+                sum += it.next().getKey();
+            return sum;
+        }
+
+        public int splitJoin(int k) {
+            String info = tree.search(k);
+            AVLTree[] parts = tree.split(k);
+            AVLTree.IAVLNode x = new AVLTree.AVLNode(k, info, AVLTree.AVLNode.virtual, AVLTree.AVLNode.virtual, null);
+            int cost = parts[0].join(x, parts[1]);
+            tree = parts[0];
+            return cost;
+        }
+    }
+
+    //AVLTree with WAVL rebalancing- split keeps it, so splitJoin stays on WAVL trees
+    static class WeakAVLTreeOps extends AVLTreeOps {
+        WeakAVLTreeOps() {
+            tree.setBalance(AVLTree.Balance.WAVL);
+        }
+    }
+
+    //AVLTree with finger search- split keeps it, so splitJoin stays on finger-search trees
+    static class FingerAVLTreeOps extends AVLTreeOps {
+        FingerAVLTreeOps() {
+            tree.setFingerSearch(true);
+        }
+    }
+
+    //IntAVLTree with a payload column. infos are not stored- search answers with a shared string
+    static class IntTreeOps implements ScanOps, SplitJoinOps {
+        private static final String FOUND = "info";
+        IntAVLTree tree = new IntAVLTree(true);
+        long sum;
+        IntConsumer adder = k -> sum += k;
+
+        public int insert(int k, String i) {
+            return tree.insert(k, k);
+        }
+
+        public int delete(int k) {
+            return tree.delete(k);
+        }
+
+        public String search(int k) {
+            return tree.contains(k) ? FOUND : null;
+        }
+
+        public boolean contains(int k) {
+            return tree.contains(k);
+        }
+
+        public int size() {
+            return tree.size();
+        }
+
+        public int[] keysToArray() {
+            return tree.keysToArray();
+        }
+
+        public long scan(int lo, int hi) {
+            sum = 0;
+            tree.forEachInRange(lo, hi, adder);
+            return sum;
+        }
+
+        public int splitJoin(int k) {
+            long v = tree.get(k, 0);
+            IntAVLTree[] parts = tree.split(k);
+            int cost = parts[0].join(k, v, parts[1]);
+            tree = parts[0];
+            return cost;
+        }
+    }
+
+    //AVLTree behind one lock- every operation, reads included, waits for the one before it
+    static class LockedTreeOps implements ScanOps, BatchOps, SplitJoinOps {
+        final AVLTreeOps ops = new AVLTreeOps();
+
+        public synchronized int insert(int k, String i) {
+            return ops.insert(k, i);
+        }
+
+        public synchronized int delete(int k) {
+            return ops.delete(k);
+        }
+
+        public synchronized String search(int k) {
+            return ops.search(k);
+        }
+
+        public synchronized boolean contains(int k) {
+            return ops.contains(k);
+        }
+
+        public synchronized int size() {
+            return ops.size();
+        }
+
+        public synchronized int insertAll(int[] keys, String[] infos) {
+            return ops.insertAll(keys, infos);
+        }
+
+        public synchronized int deleteAll(int[] keys) {
+            return ops.deleteAll(keys);
+        }
+
+        public synchronized int putAllSorted(int[] keys, String[] infos) {
+            return ops.putAllSorted(keys, infos);
+        }
+
+        public synchronized int[] keysToArray() {
+            return ops.keysToArray();
+        }
+
+        public synchronized long scan(int lo, int hi) {
+            return ops.scan(lo, hi);
+        }
+
+        public synchronized int splitJoin(int k) {
+            return ops.splitJoin(k);
+        }
+    }
+
+    static class ConcurrentTreeOps implements ScanOps {
+        final ConcurrentAVLTree tree = new ConcurrentAVLTree();
+
+        public int insert(int k, String i) {
+            return tree.insert(k, i);
+        }
+
+        public int delete(int k) {
+            return tree.delete(k);
+        }
+
+        public String search(int k) {
+            return tree.search(k);
+        }
+
+        public boolean contains(int k) {
+            return tree.contains(k);
+        }
+
+        public int size() {
+            return tree.size();
+        }
+
+        public int[] keysToArray() {
+            return tree.keysToArray();
+        }
+
+        public long scan(int lo, int hi) {
+            return tree.keys(lo, hi).asLongStream().sum();
+        }
+    }
+
+    static class ShardedTreeOps implements ScanOps {
+        final ShardedAVLTree tree = new ShardedAVLTree();
+
+        public int insert(int k, String i) {
+            return tree.insert(k, i);
+        }
+
+        public int delete(int k) {
+            return tree.delete(k);
+        }
+
+        public String search(int k) {
+            return tree.search(k);
+        }
+
+        public boolean contains(int k) {
+            return tree.contains(k);
+        }
+
+        public int size() {
+            return tree.size();
+        }
+
+        public int[] keysToArray() {
+            return tree.keysToArray();
+        }
+
+        public long scan(int lo, int hi) {
+            return tree.keys(lo, hi).asLongStream().sum();
+        }
+    }
+
+    //DurableAVLTree in a temporary directory, deleted on close. putAllSorted on the empty tree is its first snapshot
+    static class DurableTreeOps implements TreeOps {
+        final int syncEvery;
+        final Path dir;
+        DurableAVLTree tree;
+
+        DurableTreeOps(int syncEvery) {
+            this.syncEvery = syncEvery;
+            try {
+                dir = Files.createTempDirectory("avl-durable");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        //opened on first use- the benchmarks' setup (one thread) makes it
+        DurableAVLTree tree() throws IOException {
+            if (tree == null)
+                tree = new DurableAVLTree(dir, syncEvery, 10, TimeUnit.MILLISECONDS);
+            return tree;
+        }
+
+        public int insert(int k, String i) {
+            try {
+                return tree().insert(k, i);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public int delete(int k) {
+            try {
+                return tree().delete(k);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public String search(int k) {
+            return tree == null ? null : tree.search(k);
+        }
+
+        public boolean contains(int k) {
+            return tree != null && tree.contains(k);
+        }
+
+        public int size() {
+            return tree == null ? 0 : tree.size();
+        }
+
+        public int putAllSorted(int[] keys, String[] infos) {
+            if (tree != null) //only a new tree can start from a snapshot- an opened one logs every insert
+                return TreeOps.super.putAllSorted(keys, infos);
+            try {
+                tree = DurableAVLTree.create(dir, new AVLTree(keys, infos), syncEvery, 10, TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return keys.length;
+        }
+
+        public int[] keysToArray() {
+            return tree == null ? new int[0] : tree.keysToArray();
+        }
+
+        public void close() {
+            try {
+                if (tree != null)
+                    tree.close();
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                    for (Path file : files)
+                        Files.delete(file);
+                }
+                Files.delete(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    //AVLTree for the updates, and a FrozenAVLTree of it for the reads- remade on the first read after updates
+    static class FrozenTreeOps implements ScanOps, BatchOps, SplitJoinOps {
+        final AVLTreeOps ops = new AVLTreeOps();
+        FrozenAVLTree frozen;
+
+        FrozenAVLTree frozen() {
+            if (frozen == null || frozen.isStale())
+                frozen = FrozenAVLTree.of(ops.tree);
+            return frozen;
+        }
+
+        public int insert(int k, String i) {
+            return ops.insert(k, i);
+        }
+
+        public int delete(int k) {
+            return ops.delete(k);
+        }
+
+        public String search(int k) {
+            return frozen().search(k);
+        }
+
+        public boolean contains(int k) {
+            return frozen().contains(k);
+        }
+
+        public int size() {
+            return ops.size();
+        }
+
+        public int insertAll(int[] keys, String[] infos) {
+            return ops.insertAll(keys, infos);
+        }
+
+        public int deleteAll(int[] keys) {
+            return ops.deleteAll(keys);
+        }
+
+        public int putAllSorted(int[] keys, String[] infos) {
+            return ops.putAllSorted(keys, infos);
+        }
+
+        public int[] keysToArray() {
+            return frozen().keysToArray();
+        }
+
+        public long scan(int lo, int hi) {
+            return frozen().keys(lo, hi).asLongStream().sum();
+        }
+
+        public int splitJoin(int k) {
+            return ops.splitJoin(k);
+        }
+    }
+
+    //PathAVLTree- no parent pointers, so no split/ join and no set operations
+    static class PathTreeOps implements ScanOps, BatchOps {
+        PathAVLTree tree = new PathAVLTree();
+        long sum;
+        IntConsumer adder = k -> sum += k;
+
+        public int insert(int k, String i) {
+            return tree.insert(k, i);
+        }
+
+        public int delete(int k) {
+            return tree.delete(k);
+        }
+
+        public String search(int k) {
+            return tree.search(k);
+        }
+
+        public boolean contains(int k) {
+            return tree.contains(k);
+        }
+
+        public int size() {
+            return tree.size();
+        }
+
+        public int insertAll(int[] keys, String[] infos) {
+            int added = 0;
+            for (int j = 0; j < keys.length; j++)
+                if (tree.insert(keys[j], infos[j]) >= 0)
+                    added++;
+            return added;
+        }
+
+        public int deleteAll(int[] keys) {
+            int deleted = 0;
+            for (int k : keys)
+                if (tree.delete(k) >= 0)
+                    deleted++;
+            return deleted;
+        }
+
+        public int[] keysToArray() {
+            return tree.keysToArray();
+        }
+
+        public long scan(int lo, int hi) {
+            sum = 0;
+            tree.forEachInRange(lo, hi, adder);
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AVLTreeBenchmark
+ *
+ * Single-operation costs of insert, delete, search, split and join on a tree
+ * holding the keys 0, 2, 4, ..., 2(size-1). Operations pick their key from a
+ * pre-generated access sequence, so random/sequential/zipfian workloads only
+ * differ in which part of the tree they touch.
+ *
+ * Throughput mode reports ops/s, sample mode reports p50/p99 latency.
+ * Run with "-prof gc" for the allocation rate per operation (gc.alloc.rate.norm).
+ * insertDelete and deleteInsert keep the tree at a steady size by undoing their
+ * first operation, so they report the cost of the pair.
+ * "wavl" is the AVLTree with setBalance(WAVL)- same inserts, deletes with O(1) amortized rebalancing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AVLTreeBenchmark {
+    //length of the pre-generated access sequence (a power of two)
+    private static final int ACCESSES = 1 << 20;
+    private static final String INFO = "info";
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"RANDOM", "SEQUENTIAL", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"avl", "wavl", "int"})
+    String impl;
+
+    TreeOps tree;
+    int[] accesses;
+    int cursor;
+
+    @Setup
+    public void setUp() {
+        tree = TreeOps.create(impl);
+
+        //inserting in shuffled order so the tree has the shape of a typical random build
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        SplittableRandom rnd = new SplittableRandom(17);
+        for (int i = size - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        for (int index : order)
+            tree.insert(2 * index, INFO);
+
+        accesses = distribution.indices(size, ACCESSES, 42);
+    }
+
+    //next index from the access sequence
+    private int next() {
+        return accesses[cursor++ & (ACCESSES - 1)];
+    }
+
+    //the tree as a SplitJoinOps- set up only for splitJoin, so a target without split/ join fails that benchmark alone
+    @State(Scope.Thread)
+    public static class SplitJoinTarget {
+        SplitJoinOps tree;
+
+        @Setup
+        public void setUp(AVLTreeBenchmark benchmark) {
+            tree = TreeOps.as(benchmark.tree, SplitJoinOps.class);
+        }
+    }
+
+    //the tree as a ScanOps, for scan100
+    @State(Scope.Thread)
+    public static class ScanTarget {
+        ScanOps tree;
+
+        @Setup
+        public void setUp(AVLTreeBenchmark benchmark) {
+            tree = TreeOps.as(benchmark.tree, ScanOps.class);
+        }
+    }
+
+    @Benchmark
+    public String search() {
+        return tree.search(2 * next());
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return tree.contains(2 * next());
+    }
+
+    @Benchmark
+    public int insertDelete() {
+        int k = 2 * next() + 1;
+        return tree.insert(k, INFO) + tree.delete(k);
+    }
+
+    @Benchmark
+    public int deleteInsert() {
+        int k = 2 * next();
+        return tree.delete(k) + tree.insert(k, INFO);
+    }
+
+    @Benchmark
+    public int splitJoin(SplitJoinTarget target) {
+        return target.tree.splitJoin(2 * next());
+    }
+
+    //an in-order scan over the (up to) 100 keys following the next access
+    @Benchmark
+    public long scan100(ScanTarget target) {
+        int lo = 2 * next();
+        return target.tree.scan(lo, lo + 198);
+    }
+
+    //a full in-order snapshot, reported per snapshot (not per key)
+    @Benchmark
+    public int[] keysToArray() {
+        return tree.keysToArray();
+    }
+}
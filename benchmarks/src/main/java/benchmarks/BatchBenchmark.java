@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BatchBenchmark
+ *
+ * Applying a batch of batchSize new keys (unsorted) to a tree of size keys and
+ * removing it again: one insert/delete per key versus insertAll/deleteAll.
+ * Each invocation leaves the tree as it found it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BatchBenchmark {
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"10000"})
+    int batchSize;
+
+    @Param({"RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"avl"})
+    String impl;
+
+    BatchOps tree; //perKey is batched's baseline, so both run on a target with batches
+    int[] batch;
+    String[] infos;
+
+    @Setup
+    public void setUp() {
+        tree = TreeOps.create(impl, BatchOps.class);
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = 2 * i;
+        String[] values = new String[size];
+        Arrays.fill(values, "info");
+        tree.putAllSorted(keys, values);
+
+        //odd keys are not in the tree- distinct, so the batch really adds batchSize items
+        int[] indices = distribution.indices(size, batchSize * 4, 7);
+        int[] distinct = Arrays.stream(indices).distinct().limit(batchSize).toArray();
+        batch = new int[distinct.length];
+        for (int i = 0; i < distinct.length; i++)
+            batch[i] = 2 * distinct[i] + 1;
+        SplittableRandom rnd = new SplittableRandom(3);
+        for (int i = batch.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = batch[i];
+            batch[i] = batch[j];
+            batch[j] = tmp;
+        }
+        infos = new String[batch.length];
+        Arrays.fill(infos, "batch");
+    }
+
+    @Benchmark
+    public int perKey() {
+        int result = 0;
+        for (int i = 0; i < batch.length; i++)
+            result += tree.insert(batch[i], infos[i]);
+        for (int key : batch)
+            result += tree.delete(key);
+        return result;
+    }
+
+    @Benchmark
+    public int batched() {
+        return tree.insertAll(batch, infos) + tree.deleteAll(batch);
+    }
+}
@@ -0,0 +1,12 @@
+package benchmarks;
+
+/**
+ * BatchOps
+ *
+ * A target with batch versions of insert/delete.
+ */
+public interface BatchOps extends TreeOps {
+    //keys in any order. return the number of items added/ removed
+    int insertAll(int[] keys, String[] infos);
+    int deleteAll(int[] keys);
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BuildBenchmark
+ *
+ * Building a tree of size keys from already-sorted input:
+ * one insert per key versus a single putAllSorted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BuildBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({"avl"})
+    String impl;
+
+    int[] keys;
+    String[] infos;
+
+    @Setup
+    public void setUp() {
+        keys = new int[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = 2 * i;
+        infos = new String[size];
+        Arrays.fill(infos, "info");
+    }
+
+    @Benchmark
+    public TreeOps insertSorted() {
+        TreeOps tree = TreeOps.create(impl);
+        for (int i = 0; i < size; i++)
+            tree.insert(keys[i], infos[i]);
+        return tree;
+    }
+
+    @Benchmark
+    public TreeOps putAllSorted() {
+        TreeOps tree = TreeOps.create(impl);
+        tree.putAllSorted(keys, infos);
+        return tree;
+    }
+}
@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * ConcurrentBenchmark
+ *
+ * A read/write mix on one tree shared by all benchmark threads: AVLTree behind a
+ * single lock ("locked") against ConcurrentAVLTree ("concurrent") and ShardedAVLTree ("sharded").
+ * Reads are contains on the keys 0, 2, 4, ..., writes are an insert/delete pair
+ * on an odd key, so the tree stays at size keys.
+ *
+ * The thread count is JMH's -t option; run once per count for the scaling curve,
+ * for example: for t in 1 2 4 8 16 32 64; do java -jar benchmarks.jar ConcurrentBenchmark -t $t; done
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConcurrentBenchmark {
+    //length of every thread's pre-generated access sequence (a power of two)
+    private static final int ACCESSES = 1 << 20;
+    private static final String INFO = "info";
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"100", "90", "50"})
+    int readPercent;
+
+    @Param({"RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"locked", "concurrent", "sharded"})
+    String impl;
+
+    TreeOps tree;
+
+    @Setup
+    public void setUp() {
+        tree = TreeOps.create(impl);
+        for (int i = 0; i < size; i++)
+            tree.insert(2 * i, INFO);
+    }
+
+    //every thread walks its own access sequence, and decides read or write from its own counter
+    @State(Scope.Thread)
+    public static class Accesses {
+        int[] indices;
+        int cursor;
+
+        @Setup
+        public void setUp(ConcurrentBenchmark shared, ThreadParams threads) {
+            indices = shared.distribution.indices(shared.size, ACCESSES, 42 + threads.getThreadIndex());
+        }
+
+        int op; //position in the current period of 100 operations
+
+        int next() {
+            return indices[cursor++ & (ACCESSES - 1)];
+        }
+
+        //readPercent of every 100 operations are reads, spread evenly over the period
+        boolean nextIsRead(int readPercent) {
+            if (++op == 100)
+                op = 0;
+            return (op * 37) % 100 < readPercent;
+        }
+    }
+
+    //the shared tree as a ScanOps- set up only for scan100
+    @State(Scope.Benchmark)
+    public static class ScanTarget {
+        ScanOps tree;
+
+        @Setup
+        public void setUp(ConcurrentBenchmark shared) {
+            tree = TreeOps.as(shared.tree, ScanOps.class);
+        }
+    }
+
+    @Benchmark
+    public int mixed(Accesses accesses) {
+        int index = accesses.next();
+        if (accesses.nextIsRead(readPercent))
+            return tree.contains(2 * index) ? 1 : 0;
+        int k = 2 * index + 1;
+        return tree.insert(k, INFO) + tree.delete(k);
+    }
+
+    //an in-order scan over the (up to) 100 keys following the next access, on every thread
+    @Benchmark
+    public long scan100(Accesses accesses, ScanTarget target) {
+        int lo = 2 * accesses.next();
+        return target.tree.scan(lo, lo + 198);
+    }
+}
@@ -0,0 +1,55 @@
+package benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ConcurrentScaling
+ *
+ * The scaling curve of ConcurrentBenchmark.mixed: one JMH run per thread count (1, 2, 4, ..., 64),
+ * then a table of ops/us for every impl, read percentage and distribution against the thread count.
+ * JMH has no thread-count @Param, so the count is set on the Runner's options here.
+ * The arguments are JMH's command line options, for example
+ * java -cp benchmarks/target/benchmarks.jar benchmarks.ConcurrentScaling -p impl=locked,concurrent -p readPercent=90
+ * -t in the arguments is overridden; the counts are the system property threads (default 1,2,4,8,16,32,64).
+ */
+public class ConcurrentScaling {
+    public static void main(String[] args) throws Exception {
+        Options commandLine = new CommandLineOptions(args);
+        String[] counts = System.getProperty("threads", "1,2,4,8,16,32,64").split(",");
+
+        //one row per parameter combination, one column per thread count
+        Map<String, double[]> rows = new LinkedHashMap<>();
+        for (int column = 0; column < counts.length; column++) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(ConcurrentBenchmark.class.getSimpleName() + ".mixed")
+                    .threads(Integer.parseInt(counts[column].trim()))
+                    .build();
+            for (RunResult result : new Runner(options).run()) {
+                BenchmarkParams params = result.getParams();
+                String row = String.format("%-12s %5s %-10s", params.getParam("impl"),
+                        params.getParam("readPercent"), params.getParam("distribution"));
+                rows.computeIfAbsent(row, r -> new double[counts.length])[column] = result.getPrimaryResult().getScore();
+            }
+        }
+
+        System.out.printf("%n%-12s %5s %-10s", "impl", "read%", "keys");
+        for (String count : counts)
+            System.out.printf(" %9s", count.trim() + "t");
+        System.out.println();
+        for (Map.Entry<String, double[]> row : rows.entrySet()) {
+            System.out.print(row.getKey());
+            for (double score : row.getValue())
+                System.out.printf(" %9.2f", score);
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * DurableBenchmark
+ *
+ * Sustained write throughput of DurableAVLTree against the in-memory baseline,
+ * AVLTree behind a single lock ("locked"). "durable-N" syncs the log every N writes
+ * (durable-1: every write returns durable, concurrent writers share fsyncs).
+ * Every operation is an insert/delete pair on an odd key- two log records- so the tree
+ * stays at size keys. The log is on the default temporary directory (java.io.tmpdir),
+ * so point that at the disk to measure, for example -Djava.io.tmpdir=/data/tmp in jvmArgs.
+ *
+ * The thread count is JMH's -t option- more writers put more records in every fsync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DurableBenchmark {
+    //length of every thread's pre-generated access sequence (a power of two)
+    private static final int ACCESSES = 1 << 20;
+    private static final String INFO = "info";
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"RANDOM"})
+    KeyDistribution distribution;
+
+    @Param({"locked", "durable-1", "durable-64", "durable-4096"})
+    String impl;
+
+    TreeOps tree;
+
+    @Setup
+    public void setUp() {
+        int[] keys = new int[size];
+        String[] infos = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * i;
+            infos[i] = INFO;
+        }
+        tree = TreeOps.create(impl);
+        tree.putAllSorted(keys, infos);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tree.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Accesses {
+        int[] indices;
+        int cursor;
+
+        @Setup
+        public void setUp(DurableBenchmark shared, ThreadParams threads) {
+            indices = shared.distribution.indices(shared.size, ACCESSES, 42 + threads.getThreadIndex());
+        }
+
+        int next() {
+            return indices[cursor++ & (ACCESSES - 1)];
+        }
+    }
+
+    @Benchmark
+    public int write(Accesses accesses) {
+        int k = 2 * accesses.next() + 1;
+        return tree.insert(k, INFO) + tree.delete(k);
+    }
+}
@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FingerBenchmark
+ *
+ * Locality-heavy workloads on the AVLTree ("avl", every search from the root) against the AVLTree
+ * with finger search ("finger", searches start from the node the previous one ended on),
+ * on a tree holding the keys 0, 2, 4, ..., 2(size-1).
+ * appendExpire is a sliding window of timestamps- insert after max, delete min- which takes the
+ * O(1) max/ min path in both; insertDelete and search follow the access distribution
+ * (CLUSTERED- bursts of 64 neighbouring keys).
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FingerBenchmark {
+    //length of the pre-generated access sequence (a power of two)
+    private static final int ACCESSES = 1 << 20;
+    private static final String INFO = "info";
+
+    @Param({"100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"CLUSTERED", "SEQUENTIAL", "RANDOM"})
+    KeyDistribution distribution;
+
+    @Param({"avl", "finger"})
+    String impl;
+
+    TreeOps tree;
+    int[] accesses;
+    int cursor;
+    int head, tail; //the window of appendExpire- keys tail, tail + 2, ..., head - 2
+
+    @Setup
+    public void setUp() {
+        int[] keys = new int[size];
+        String[] infos = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * i;
+            infos[i] = INFO;
+        }
+        tree = TreeOps.create(impl);
+        tree.putAllSorted(keys, infos);
+        head = 2 * size;
+        tail = 0;
+
+        accesses = distribution.indices(size, ACCESSES, 42);
+    }
+
+    //next index from the access sequence
+    private int next() {
+        return accesses[cursor++ & (ACCESSES - 1)];
+    }
+
+    @Benchmark
+    public int appendExpire() {
+        int inserted = tree.insert(head, INFO);
+        head += 2;
+        int deleted = tree.delete(tail);
+        tail += 2;
+        return inserted + deleted;
+    }
+
+    //keys between the tree's keys, shifted with the window of appendExpire
+    @Benchmark
+    public int insertDelete() {
+        int k = tail + 2 * next() + 1;
+        return tree.insert(k, INFO) + tree.delete(k);
+    }
+
+    @Benchmark
+    public String search() {
+        return tree.search(tail + 2 * next());
+    }
+}
@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FrozenBenchmark
+ *
+ * Reads on the AVLTree ("avl") against its cache-blocked copy ("frozen", FrozenAVLTree)
+ * on the keys 0, 2, 4, ..., 2(size-1). The copy is made once, in the setup, so this is the
+ * read cost alone- the copy costs O(n) after every burst of updates.
+ * Run with "-prof perfnorm" for the cache misses per search.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FrozenBenchmark {
+    //length of the pre-generated access sequence (a power of two)
+    private static final int ACCESSES = 1 << 20;
+    private static final String INFO = "info";
+
+    @Param({"100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"avl", "frozen"})
+    String impl;
+
+    TreeOps tree;
+    int[] accesses;
+    int cursor;
+
+    @Setup
+    public void setUp() {
+        int[] keys = new int[size];
+        String[] infos = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * i;
+            infos[i] = INFO;
+        }
+        tree = TreeOps.create(impl);
+        tree.putAllSorted(keys, infos);
+        tree.contains(0); //makes the frozen copy before the measurement
+
+        accesses = distribution.indices(size, ACCESSES, 42);
+    }
+
+    //next index from the access sequence
+    private int next() {
+        return accesses[cursor++ & (ACCESSES - 1)];
+    }
+
+    //the tree as a ScanOps- set up only for scan100
+    @State(Scope.Thread)
+    public static class ScanTarget {
+        ScanOps tree;
+
+        @Setup
+        public void setUp(FrozenBenchmark benchmark) {
+            tree = TreeOps.as(benchmark.tree, ScanOps.class);
+        }
+    }
+
+    @Benchmark
+    public String search() {
+        return tree.search(2 * next());
+    }
+
+    @Benchmark
+    public String searchMiss() {
+        return tree.search(2 * next() + 1);
+    }
+
+    //an in-order scan over the (up to) 100 keys from the next access
+    @Benchmark
+    public long scan100(ScanTarget target) {
+        int lo = 2 * next();
+        return target.tree.scan(lo, lo + 198);
+    }
+}
@@ -0,0 +1,94 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+
+/**
+ * KeyDistribution
+ *
+ * Access patterns over the n keys of a benchmark tree.
+ * Each distribution produces a sequence of indices in [0, n), which the
+ * benchmarks map to keys (index 2i is a key in the tree, 2i+1 is not).
+ */
+public enum KeyDistribution {
+    //uniformly random indices
+    RANDOM {
+        @Override
+        void fill(int[] indices, int n, SplittableRandom rnd) {
+            for (int i = 0; i < indices.length; i++)
+                indices[i] = rnd.nextInt(n);
+        }
+    },
+
+    //0, 1, 2, ... wrapping around at n
+    SEQUENTIAL {
+        @Override
+        void fill(int[] indices, int n, SplittableRandom rnd) {
+            for (int i = 0; i < indices.length; i++)
+                indices[i] = i % n;
+        }
+    },
+
+    //bursts of 64 consecutive indices, each from a uniformly random start- clustered arrivals
+    CLUSTERED {
+        @Override
+        void fill(int[] indices, int n, SplittableRandom rnd) {
+            int start = 0;
+            for (int i = 0; i < indices.length; i++) {
+                if ((i & 63) == 0)
+                    start = rnd.nextInt(n);
+                indices[i] = (start + (i & 63)) % n;
+            }
+        }
+    },
+
+    //zipfian popularity (theta = 0.99, as in YCSB), hot indices scattered over the key space
+    ZIPFIAN {
+        @Override
+        void fill(int[] indices, int n, SplittableRandom rnd) {
+            final double theta = 0.99;
+            double zetan = zeta(n, theta);
+            double zeta2 = zeta(2, theta);
+            double alpha = 1.0 / (1.0 - theta);
+            double eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+
+            for (int i = 0; i < indices.length; i++) {
+                double u = rnd.nextDouble();
+                double uz = u * zetan;
+                long rank;
+                if (uz < 1.0)
+                    rank = 0;
+                else if (uz < 1.0 + Math.pow(0.5, theta))
+                    rank = 1;
+                else
+                    rank = (long) (n * Math.pow(eta * u - eta + 1, alpha));
+                indices[i] = scramble(Math.min(rank, n - 1), n);
+            }
+        }
+    };
+
+    abstract void fill(int[] indices, int n, SplittableRandom rnd);
+
+    //returns count indices in [0, n) following this distribution
+    public int[] indices(int n, int count, long seed) {
+        int[] indices = new int[count];
+        fill(indices, n, new SplittableRandom(seed));
+        return indices;
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++)
+            sum += 1.0 / Math.pow(i, theta);
+        return sum;
+    }
+
+    //spreads popular ranks over the key space (FNV-1a over the rank's bytes)
+    private static int scramble(long rank, int n) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= (rank >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return (int) Math.floorMod(hash, (long) n);
+    }
+}
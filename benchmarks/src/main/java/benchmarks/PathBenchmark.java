@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PathBenchmark
+ *
+ * insert and delete on the AVLTree ("avl", parent pointers, rebalance walks up to the root)
+ * against PathAVLTree ("path", no parent pointers, retraces its path stack only while heights change),
+ * on a tree holding the keys 0, 2, 4, ..., 2(size-1) built in shuffled order.
+ * insertDelete and deleteInsert keep the tree at a steady size, so they report the cost of the pair.
+ * Run with "-prof gc" for the bytes allocated per insert- one node each, 48 against 32.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PathBenchmark {
+    //length of the pre-generated access sequence (a power of two)
+    private static final int ACCESSES = 1 << 20;
+    private static final String INFO = "info";
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"RANDOM", "SEQUENTIAL", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"avl", "path"})
+    String impl;
+
+    TreeOps tree;
+    int[] accesses;
+    int cursor;
+
+    @Setup
+    public void setUp() {
+        tree = TreeOps.create(impl);
+
+        //inserting in shuffled order so the tree has the shape of a typical random build
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        SplittableRandom rnd = new SplittableRandom(17);
+        for (int i = size - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        for (int index : order)
+            tree.insert(2 * index, INFO);
+
+        accesses = distribution.indices(size, ACCESSES, 42);
+    }
+
+    //next index from the access sequence
+    private int next() {
+        return accesses[cursor++ & (ACCESSES - 1)];
+    }
+
+    @Benchmark
+    public int insertDelete() {
+        int k = 2 * next() + 1;
+        return tree.insert(k, INFO) + tree.delete(k);
+    }
+
+    @Benchmark
+    public int deleteInsert() {
+        int k = 2 * next();
+        return tree.delete(k) + tree.insert(k, INFO);
+    }
+
+    @Benchmark
+    public String search() {
+        return tree.search(2 * next());
+    }
+}
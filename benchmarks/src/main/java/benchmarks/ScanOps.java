@@ -0,0 +1,11 @@
+package benchmarks;
+
+/**
+ * ScanOps
+ *
+ * A target with an in-order range walk.
+ */
+public interface ScanOps extends TreeOps {
+    //visits the keys in [lo, hi] in order and returns their sum
+    long scan(int lo, int hi);
+}
@@ -0,0 +1,106 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SetOperationBenchmark
+ *
+ * Merging a tree of otherSize random keys into a tree of size random keys
+ * (half of the keys are shared): union on all cores, union on one thread,
+ * and one insert per key. Also difference on all cores.
+ * The set operations consume their input, so both trees are rebuilt before every invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SetOperationBenchmark {
+    @Param({"1000000"})
+    int size;
+
+    @Param({"10000", "1000000"})
+    int otherSize;
+
+    @Param({"avl"})
+    String impl;
+
+    int[] keys, otherKeys;
+    String[] infos, otherInfos;
+    ForkJoinPool sequential;
+
+    SetOps tree, other; //unionPerKey is the baseline of the set operations, on the same target
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        SplittableRandom rnd = new SplittableRandom(11);
+        keys = randomSortedKeys(rnd, size);
+        otherKeys = randomSortedKeys(rnd, otherSize);
+        infos = new String[keys.length];
+        otherInfos = new String[otherKeys.length];
+        Arrays.fill(infos, "info");
+        Arrays.fill(otherInfos, "other");
+        sequential = new ForkJoinPool(1);
+    }
+
+    //n distinct sorted keys out of [0, 2n)
+    private static int[] randomSortedKeys(SplittableRandom rnd, int n) {
+        return rnd.ints(0, 2 * n).distinct().limit(n).sorted().toArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpTrees() {
+        tree = TreeOps.create(impl, SetOps.class);
+        tree.putAllSorted(keys, infos);
+        other = TreeOps.create(impl, SetOps.class);
+        other.putAllSorted(otherKeys, otherInfos);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sequential.shutdown();
+    }
+
+    @Benchmark
+    public int unionParallel() {
+        tree.union(other, ForkJoinPool.commonPool());
+        return tree.size();
+    }
+
+    @Benchmark
+    public int unionSequential() {
+        tree.union(other, sequential);
+        return tree.size();
+    }
+
+    @Benchmark
+    public int unionPerKey() {
+        for (int i = 0; i < otherKeys.length; i++)
+            tree.insert(otherKeys[i], otherInfos[i]);
+        return tree.size();
+    }
+
+    @Benchmark
+    public int differenceParallel() {
+        tree.difference(other, ForkJoinPool.commonPool());
+        return tree.size();
+    }
+}
@@ -0,0 +1,14 @@
+package benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * SetOps
+ *
+ * A target with set operations on two of its trees.
+ */
+public interface SetOps extends TreeOps {
+    //other must come from the same target, and is emptied
+    void union(SetOps other, ForkJoinPool pool);
+    void difference(SetOps other, ForkJoinPool pool);
+}
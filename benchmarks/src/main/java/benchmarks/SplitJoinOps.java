@@ -0,0 +1,11 @@
+package benchmarks;
+
+/**
+ * SplitJoinOps
+ *
+ * A target that can split a tree and join the halves back.
+ */
+public interface SplitJoinOps extends TreeOps {
+    //splits the tree at k (which must be in the tree) and joins both halves back on k. returns the join's cost
+    int splitJoin(int k);
+}
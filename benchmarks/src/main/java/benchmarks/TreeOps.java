@@ -0,0 +1,60 @@
+package benchmarks;
+
+/**
+ * TreeOps
+ *
+ * The operations every benchmark target has. The trees live in the default package,
+ * which cannot be imported from here (and JMH refuses benchmarks in the default
+ * package), so every implementation is reached through this interface.
+ * The implementations are in the default-package class BenchTargets.
+ *
+ * What only some targets can do is in the capability interfaces that extend this one-
+ * ScanOps, BatchOps, SetOps and SplitJoinOps. A benchmark that needs one asks for it with
+ * create(name, capability) or as(tree, capability), in its setup, so a target without it
+ * fails before the measurement starts.
+ */
+public interface TreeOps {
+    int insert(int k, String i);
+    int delete(int k);
+    String search(int k);
+    boolean contains(int k);
+    int size();
+    int[] keysToArray();
+
+    //adds the sorted items (to an empty tree)- one bulk operation where the target has one, one insert per item otherwise
+    default int putAllSorted(int[] keys, String[] infos) {
+        int added = 0;
+        for (int j = 0; j < keys.length; j++)
+            if (insert(keys[j], infos[j]) >= 0)
+                added++;
+        return added;
+    }
+
+    //releases what the implementation holds outside the heap (files)- most hold nothing
+    default void close() {
+    }
+
+    //returns the implementation registered under name in BenchTargets
+    static TreeOps create(String name) {
+        try {
+            return (TreeOps) Class.forName("BenchTargets")
+                    .getMethod("create", String.class)
+                    .invoke(null, name);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot create benchmark target " + name, e);
+        }
+    }
+
+    //returns the implementation registered under name, which must have capability
+    static <T extends TreeOps> T create(String name, Class<T> capability) {
+        return as(create(name), capability);
+    }
+
+    //returns tree as capability, or throws IllegalArgumentException if its target doesn't have it
+    static <T extends TreeOps> T as(TreeOps tree, Class<T> capability) {
+        if (!capability.isInstance(tree))
+            throw new IllegalArgumentException("benchmark target " + tree.getClass().getSimpleName()
+                    + " has no " + capability.getSimpleName());
+        return capability.cast(tree);
+    }
+}
@@ -0,0 +1,190 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ *
+ * ConcurrentAVLTreeTest
+ *
+ * A single-threaded check of ConcurrentAVLTree against TreeMap, and a stress test- writer threads
+ * that own disjoint keys, while a reader scans and searches keys that no writer touches.
+ * Once the writers are done, the tree has to be a strict AVL tree again (checkTree).
+ *
+ */
+public class ConcurrentAVLTreeTest
+{
+    private static final int WRITERS = 8;
+    private static final int WRITER_OPS = 200_000;
+    private static final int WRITER_KEYS = 4096; //keys per writer
+    private static final int STABLE_KEYS = 2048; //-1 .. -STABLE_KEYS, inserted before the writers start
+
+    @Test
+    public void sequentialMatchesTreeMap()
+    {
+        ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        TreeMap<Integer, String> reference = new TreeMap<>();
+        Random random = new Random(1);
+        for (int op = 0; op < 200_000; op++)
+        {
+            int k = random.nextInt(2000) - 1000;
+            if (random.nextBoolean())
+            {
+                assertEquals(reference.containsKey(k) ? -1 : 0, tree.insert(k, "v" + k));
+                reference.putIfAbsent(k, "v" + k);
+            }
+            else
+            {
+                assertEquals(reference.containsKey(k) ? 0 : -1, tree.delete(k));
+                reference.remove(k);
+            }
+            assertEquals(reference.get(k), tree.search(k));
+
+            if (op % 1000 == 0)
+            {
+                checkTree(tree);
+                int lo = random.nextInt(2000) - 1000, hi = lo + random.nextInt(300);
+                assertArrayEquals(toArray(reference.subMap(lo, true, hi, true).keySet()), tree.keys(lo, hi).toArray());
+                assertEquals(reference.size(), tree.size());
+                assertEquals(reference.isEmpty() ? null : reference.firstEntry().getValue(), tree.min());
+                assertEquals(reference.isEmpty() ? null : reference.lastEntry().getValue(), tree.max());
+            }
+        }
+        checkTree(tree);
+    }
+
+    @Test
+    @Timeout(value = 5, unit = TimeUnit.MINUTES)
+    public void writersAndScannerStress() throws Exception
+    {
+        ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        for (int k = -1; k >= -STABLE_KEYS; k--)
+            tree.insert(k, "stable");
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writersDone = new AtomicBoolean();
+        try
+        {
+            //writer id owns the keys k with k % WRITERS == id, and checks every result against its own set
+            List<Future<TreeSet<Integer>>> writers = new ArrayList<>();
+            for (int id = 0; id < WRITERS; id++)
+            {
+                int writer = id;
+                writers.add(executor.submit(() ->
+                {
+                    Random random = new Random(writer);
+                    TreeSet<Integer> mine = new TreeSet<>();
+                    start.await();
+                    for (int op = 0; op < WRITER_OPS; op++)
+                    {
+                        int k = random.nextInt(WRITER_KEYS) * WRITERS + writer;
+                        if (random.nextInt(3) > 0)
+                            assertEquals(mine.add(k) ? 0 : -1, tree.insert(k, "w" + k));
+                        else
+                            assertEquals(mine.remove(k) ? 0 : -1, tree.delete(k));
+                        assertEquals(mine.contains(k), tree.contains(k));
+                    }
+                    return mine;
+                }));
+            }
+
+            //the scanner's ranges straddle the stable keys and the writers' keys. a scan has to be strictly
+            //ascending, stay in its range, and see every stable key in it
+            Future<Integer> scanner = executor.submit(() ->
+            {
+                Random random = new Random(-1);
+                int scans = 0;
+                start.await();
+                while (!writersDone.get() || scans < 100)
+                {
+                    int lo = -STABLE_KEYS - 100 + random.nextInt(STABLE_KEYS + 200);
+                    int hi = lo + random.nextInt(STABLE_KEYS);
+                    int[] keys = tree.keys(lo, hi).toArray();
+                    int stableSeen = 0;
+                    for (int j = 0; j < keys.length; j++)
+                    {
+                        assertTrue(keys[j] >= lo && keys[j] <= hi, "key out of range");
+                        assertTrue(j == 0 || keys[j - 1] < keys[j], "keys not ascending");
+                        if (keys[j] < 0)
+                            stableSeen++;
+                    }
+                    int stableInRange = Math.max(0, Math.min(hi, -1) - Math.max(lo, -STABLE_KEYS) + 1);
+                    assertEquals(stableInRange, stableSeen, "a scan missed a key that was in the tree all along");
+                    assertNotNull(tree.search(-1 - random.nextInt(STABLE_KEYS)));
+                    scans++;
+                }
+                return scans;
+            });
+
+            start.countDown();
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int k = -1; k >= -STABLE_KEYS; k--)
+                expected.add(k);
+            for (Future<TreeSet<Integer>> writer : writers)
+                expected.addAll(writer.get());
+            writersDone.set(true);
+            assertTrue(scanner.get() > 0);
+
+            checkTree(tree);
+            assertEquals(expected.size(), tree.size());
+            assertArrayEquals(toArray(expected), tree.keysToArray());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    //checks that the tree is a strict AVL tree- keys in order, parent pointers, heights and balance,
+    //and no routing node left with a missing child. only when no writer is running
+    private static void checkTree(ConcurrentAVLTree tree)
+    {
+        ConcurrentAVLTree.Node root = tree.getRoot();
+        int height = checkSubtree(root, (root == null) ? null : root.parent, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(height, tree.getTreeRank());
+        //an AVL tree of n nodes (routing nodes included) has height < 1.4405 log2(n + 2)
+        assertTrue(height < 1.4405 * Math.log(countNodes(root) + 2) / Math.log(2), "tree too high: " + height);
+    }
+
+    private static int countNodes(ConcurrentAVLTree.Node node)
+    {
+        return (node == null) ? 0 : 1 + countNodes(node.left) + countNodes(node.right);
+    }
+
+    //returns the height of node's subtree. every key of it is in (lo, hi)
+    private static int checkSubtree(ConcurrentAVLTree.Node node, ConcurrentAVLTree.Node parent, long lo, long hi)
+    {
+        if (node == null)
+            return -1;
+        assertTrue(node.parent == parent, "wrong parent of " + node.key);
+        assertTrue(node.key > lo && node.key < hi, "key out of order: " + node.key);
+        int left = checkSubtree(node.left, node, lo, node.key);
+        int right = checkSubtree(node.right, node, node.key, hi);
+        assertTrue(Math.abs(left - right) <= 1, "unbalanced at " + node.key + ": " + left + ", " + right);
+        assertEquals(Math.max(left, right) + 1, node.height, "wrong height at " + node.key);
+        assertTrue(node.info != null || (node.left != null && node.right != null), "routing node not spliced out: " + node.key);
+        return node.height;
+    }
+
+    private static int[] toArray(Collection<Integer> keys)
+    {
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
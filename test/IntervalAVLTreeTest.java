@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * IntervalAVLTreeTest
+ *
+ * IntervalAVLTree's queries against a scan of a TreeMap of the same intervals, under random inserts
+ * and deletes, and around -1- the key of AVLTree's virtual node, which no interval may start at.
+ *
+ */
+public class IntervalAVLTreeTest
+{
+    @Test
+    public void startAtMinusOneIsRejected()
+    {
+        IntervalAVLTree tree = new IntervalAVLTree();
+        assertThrows(IllegalArgumentException.class, () -> tree.insert(-1, 1000, "x"));
+        assertThrows(IllegalArgumentException.class, () -> tree.join(-1, 1000, "x", new IntervalAVLTree()));
+        assertTrue(tree.empty());
+    }
+
+    @Test
+    public void negativeStartsAroundMinusOne()
+    {
+        IntervalAVLTree tree = new IntervalAVLTree();
+        int[] starts = {-2, -5, 3, -7, -3, 1, 5, 0};
+        for (int start : starts)
+            assertTrue(tree.insert(start, 1000, "s" + start) >= 0);
+        assertEquals(starts.length, tree.size());
+        assertEquals(1000, tree.maxEnd());
+
+        List<Integer> expected = List.of(-7, -5, -3, -2, 0, 1, 3, 5);
+        assertEquals(expected, startsOf(tree.overlapping(500, 501)));
+        assertEquals(expected, startsOf(tree.stabbing(500)));
+        assertEquals("s-2", tree.search(-2));
+        assertEquals(null, tree.search(-1));
+    }
+
+    @Test
+    public void randomMatchesScan()
+    {
+        IntervalAVLTree tree = new IntervalAVLTree();
+        TreeMap<Integer, Integer> reference = new TreeMap<>(); //start -> end
+        Random random = new Random(22);
+        for (int op = 0; op < 20_000; op++)
+        {
+            int start = random.nextInt(1000) - 500;
+            if (start == -1)
+                continue;
+            if (random.nextInt(3) > 0)
+            {
+                int end = start + 1 + random.nextInt((random.nextInt(10) == 0) ? 400 : 20);
+                assertEquals(reference.containsKey(start), tree.insert(start, end, "i" + start) == -1);
+                reference.putIfAbsent(start, end);
+            }
+            else
+            {
+                assertEquals(reference.containsKey(start), tree.delete(start) != -1);
+                reference.remove(start);
+            }
+
+            if (op % 100 == 0)
+            {
+                int lo = random.nextInt(1200) - 600, hi = lo + 1 + random.nextInt(50);
+                assertEquals(scan(reference, lo, hi), startsOf(tree.overlapping(lo, hi)), "overlapping(" + lo + ", " + hi + ")");
+                assertEquals(scan(reference, lo, lo + 1), startsOf(tree.stabbing(lo)), "stabbing(" + lo + ")");
+                assertEquals(reference.size(), tree.size());
+                if (!reference.isEmpty())
+                    assertEquals(reference.values().stream().mapToInt(Integer::intValue).max().getAsInt(), tree.maxEnd());
+            }
+        }
+        assertFalse(tree.empty());
+    }
+
+    //the starts of the intervals of reference that overlap [lo, hi), by a scan of them all
+    private static List<Integer> scan(TreeMap<Integer, Integer> reference, int lo, int hi)
+    {
+        List<Integer> starts = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> interval : reference.entrySet())
+            if (interval.getKey() < hi && interval.getValue() > lo)
+                starts.add(interval.getKey());
+        return starts;
+    }
+
+    private static List<Integer> startsOf(List<IntervalAVLTree.Interval> intervals)
+    {
+        return startsOf(intervals.iterator());
+    }
+
+    private static List<Integer> startsOf(Iterator<IntervalAVLTree.Interval> intervals)
+    {
+        List<Integer> starts = new ArrayList<>();
+        while (intervals.hasNext())
+            starts.add(intervals.next().getStart());
+        return starts;
+    }
+}